@@ -0,0 +1,330 @@
+package plugins;
+
+import org.mybatis.generator.api.GeneratedJavaFile;
+import org.mybatis.generator.api.IntrospectedColumn;
+import org.mybatis.generator.api.IntrospectedTable;
+import org.mybatis.generator.api.PluginAdapter;
+import org.mybatis.generator.api.dom.java.*;
+import org.mybatis.generator.codegen.mybatis3.ListUtilities;
+import org.mybatis.generator.codegen.mybatis3.MyBatis3FormattingUtilities;
+import org.mybatis.generator.config.PropertyRegistry;
+import org.mybatis.generator.internal.util.JavaBeansUtil;
+
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * テーブル毎にPostgresのCOPYで一括登録するクラス(&lt;Model&gt;CopyLoader)を作成する
+ * <p>
+ * Modelを COPY table (cols) FROM STDIN のテキスト形式に変換し、CopyManagerへ逐次書き込む。
+ * 大量データ(数千万件)の登録はINSERTよりも高速。
+ * AutoIncrement項目(autoIncrementTypeに一致する型、identity)は対象外とし、DBで採番させる。
+ * <p>
+ * 出力先はMapperインタフェースと同じパッケージ。
+ *
+ * <pre>
+ * {@code
+ * try (Cursor<Model> cursor = ...) {
+ *     long count = new ModelCopyLoader(connection).load(cursor);
+ * }
+ * }
+ * </pre>
+ * <p>
+ * バイナリ形式はnumeric等の型毎のエンコードが必要になるため対応せず、テキスト形式のみとする。
+ * <p>
+ * (プロパティ)
+ * autoIncrementType: AutoIncrement項目を特定するDBのデータ型(SqlInsertBatchMethodPluginと同じ)
+ * bufferSize: CopyManagerへまとめて書き込む文字数(デフォルト 65536)
+ */
+public class CopyLoaderClassPlugin extends PluginAdapter {
+
+    /**
+     * プロパティ名
+     */
+    private static final String PROPERTY_AUTOINCREMENT_TYPE = "autoIncrementType";
+    private static final String PROPERTY_BUFFER_SIZE = "bufferSize";
+
+    private static final int DEFAULT_BUFFER_SIZE = 65536;
+
+    private List<String> autoIncrementTypeList;
+    private int bufferSize = DEFAULT_BUFFER_SIZE;
+
+    @Override
+    public boolean validate(List<String> warnings) {
+        autoIncrementTypeList = PluginUtil.parseAutoIncrementType(
+                properties.getProperty(PROPERTY_AUTOINCREMENT_TYPE));
+
+        String size = properties.getProperty(PROPERTY_BUFFER_SIZE);
+        if (size != null) {
+            bufferSize = Integer.parseInt(size.trim());
+        }
+        if (bufferSize <= 0) {
+            warnings.add("Property bufferSize must be positive for plugin " + this.getClass().getSimpleName());
+            return false;
+        }
+
+        return true;
+    }
+
+    @Override
+    public List<GeneratedJavaFile> contextGenerateAdditionalJavaFiles(IntrospectedTable introspectedTable) {
+
+        List<GeneratedJavaFile> answer = new ArrayList<>();
+
+        List<IntrospectedColumn> columns =
+                ListUtilities.removeGeneratedAlwaysColumns(introspectedTable.getAllColumns()).stream()
+                        .filter(c -> !PluginUtil.isAutoIncrement(c, autoIncrementTypeList))
+                        .collect(Collectors.toList());
+        if (columns.isEmpty()) {
+            return answer;
+        }
+
+        FullyQualifiedJavaType recordType = introspectedTable.getRules().calculateAllFieldsClass();
+        String packageName = new FullyQualifiedJavaType(introspectedTable.getMyBatis3JavaMapperType()).getPackageName();
+        FullyQualifiedJavaType loaderType = new FullyQualifiedJavaType(packageName + "."
+                + introspectedTable.getFullyQualifiedTable().getDomainObjectName() + "CopyLoader");
+
+        TopLevelClass topLevelClass = new TopLevelClass(loaderType);
+        topLevelClass.setVisibility(JavaVisibility.PUBLIC);
+        context.getCommentGenerator().addJavaFileComment(topLevelClass);
+        topLevelClass.addImportedType(recordType);
+        topLevelClass.addImportedType("java.io.IOException");
+        topLevelClass.addImportedType("java.nio.charset.StandardCharsets");
+        topLevelClass.addImportedType("java.sql.Connection");
+        topLevelClass.addImportedType("java.sql.SQLException");
+        topLevelClass.addImportedType("org.postgresql.PGConnection");
+        topLevelClass.addImportedType("org.postgresql.copy.CopyIn");
+        topLevelClass.addImportedType("org.postgresql.copy.CopyManager");
+
+        // COPY命令
+        Field sql = new Field("COPY_SQL", FullyQualifiedJavaType.getStringInstance());
+        sql.setVisibility(JavaVisibility.PUBLIC);
+        sql.setStatic(true);
+        sql.setFinal(true);
+        sql.setInitializationString("\"copy " + introspectedTable.getFullyQualifiedTableNameAtRuntime() + " ("
+                + columns.stream()
+                .map(MyBatis3FormattingUtilities::getEscapedColumnName)
+                .collect(Collectors.joining(", ")) + ") from stdin\"");
+        topLevelClass.addField(sql);
+
+        Field buffer = new Field("BUFFER_SIZE", FullyQualifiedJavaType.getIntInstance());
+        buffer.setVisibility(JavaVisibility.PRIVATE);
+        buffer.setStatic(true);
+        buffer.setFinal(true);
+        buffer.setInitializationString(String.valueOf(bufferSize));
+        topLevelClass.addField(buffer);
+
+        Field copyManager = new Field("copyManager", new FullyQualifiedJavaType("org.postgresql.copy.CopyManager"));
+        copyManager.setVisibility(JavaVisibility.PRIVATE);
+        copyManager.setFinal(true);
+        topLevelClass.addField(copyManager);
+
+        // コンストラクタ
+        Method constructor = new Method(loaderType.getShortName());
+        constructor.setConstructor(true);
+        constructor.setVisibility(JavaVisibility.PUBLIC);
+        constructor.addParameter(new Parameter(new FullyQualifiedJavaType("java.sql.Connection"), "connection"));
+        constructor.addException(new FullyQualifiedJavaType("java.sql.SQLException"));
+        constructor.addBodyLine("this.copyManager = connection.unwrap(PGConnection.class).getCopyAPI();");
+        topLevelClass.addMethod(constructor);
+
+        // public long load(Iterable<? extends Model> rows)
+        Method load = new Method("load");
+        load.setVisibility(JavaVisibility.PUBLIC);
+        load.setReturnType(new FullyQualifiedJavaType("long"));
+        load.addParameter(new Parameter(new FullyQualifiedJavaType(
+                "java.lang.Iterable<? extends " + recordType.getFullyQualifiedName() + ">"), "rows"));
+        load.addException(new FullyQualifiedJavaType("java.sql.SQLException"));
+        load.addException(new FullyQualifiedJavaType("java.io.IOException"));
+        context.getCommentGenerator().addGeneralMethodComment(load, introspectedTable);
+        load.addBodyLine("CopyIn copyIn = copyManager.copyIn(COPY_SQL);");
+        load.addBodyLine("try {");
+        load.addBodyLine("StringBuilder sb = new StringBuilder(BUFFER_SIZE + 1024);");
+        load.addBodyLine("for (" + recordType.getShortName() + " row : rows) {");
+        Set<String> usedMethods = new HashSet<>();
+        for (int i = 0; i < columns.size(); i++) {
+            IntrospectedColumn column = columns.get(i);
+            if (i != 0) {
+                load.addBodyLine("sb.append('\\t');");
+            }
+            String appendMethod = getAppendMethod(column);
+            usedMethods.add(appendMethod);
+            load.addBodyLine(appendMethod + "(sb, row."
+                    + JavaBeansUtil.getGetterMethodName(column.getJavaProperty(), column.getFullyQualifiedJavaType()) + "());");
+        }
+        load.addBodyLine("sb.append('\\n');");
+        load.addBodyLine("if (sb.length() >= BUFFER_SIZE) {");
+        load.addBodyLine("write(copyIn, sb);");
+        load.addBodyLine("}");
+        load.addBodyLine("}");
+        load.addBodyLine("write(copyIn, sb);");
+        load.addBodyLine("return copyIn.endCopy();");
+        load.addBodyLine("} finally {");
+        load.addBodyLine("if (copyIn.isActive()) {");
+        load.addBodyLine("copyIn.cancelCopy();");
+        load.addBodyLine("}");
+        load.addBodyLine("}");
+        topLevelClass.addMethod(load);
+
+        addHelperMethods(topLevelClass, usedMethods);
+
+        answer.add(new GeneratedJavaFile(topLevelClass,
+                context.getJavaClientGeneratorConfiguration().getTargetProject(),
+                context.getProperty(PropertyRegistry.CONTEXT_JAVA_FILE_ENCODING),
+                context.getJavaFormatter()));
+
+        return answer;
+    }
+
+    /**
+     * カラムの型に応じたテキスト形式への変換メソッド名
+     *
+     * @param column column
+     * @return メソッド名
+     */
+    private String getAppendMethod(IntrospectedColumn column) {
+        String type = column.getFullyQualifiedJavaType().getFullyQualifiedName();
+        switch (type) {
+            case "byte[]":
+                return "appendBytes";
+            case "java.lang.Boolean":
+                return "appendBoolean";
+            case "java.lang.Byte":
+            case "java.lang.Short":
+            case "java.lang.Integer":
+            case "java.lang.Long":
+            case "java.lang.Float":
+            case "java.lang.Double":
+            case "java.math.BigDecimal":
+                return "appendNumber";
+            case "java.util.Date":
+                // java.util.DateはJDBCの型に応じて書式を変える
+                switch (column.getJdbcType()) {
+                    case Types.DATE:
+                        return "appendSqlDate";
+                    case Types.TIME:
+                        return "appendSqlTime";
+                    default:
+                        return "appendSqlTimestamp";
+                }
+            default:
+                // String、java.time.*(ISO-8601)、Object(uuid、interval等)は toString() をエスケープする
+                return "appendText";
+        }
+    }
+
+    /**
+     * テキスト形式への変換メソッドを追加する(利用するもののみ)
+     */
+    private void addHelperMethods(TopLevelClass topLevelClass, Set<String> usedMethods) {
+        FullyQualifiedJavaType sbType = new FullyQualifiedJavaType("java.lang.StringBuilder");
+
+        Method write = helper("write", sbType);
+        write.addParameter(0, new Parameter(new FullyQualifiedJavaType("org.postgresql.copy.CopyIn"), "copyIn"));
+        write.addException(new FullyQualifiedJavaType("java.sql.SQLException"));
+        write.addBodyLine("if (sb.length() == 0) {");
+        write.addBodyLine("return;");
+        write.addBodyLine("}");
+        write.addBodyLine("byte[] bytes = sb.toString().getBytes(StandardCharsets.UTF_8);");
+        write.addBodyLine("copyIn.writeToCopy(bytes, 0, bytes.length);");
+        write.addBodyLine("sb.setLength(0);");
+        topLevelClass.addMethod(write);
+
+        // null は \N、\ タブ 改行 はエスケープ
+        Method text = helper("appendText", sbType, new FullyQualifiedJavaType("java.lang.Object"));
+        text.addBodyLine("if (value == null) {");
+        text.addBodyLine("sb.append(\"\\\\N\");");
+        text.addBodyLine("return;");
+        text.addBodyLine("}");
+        text.addBodyLine("String s = value.toString();");
+        text.addBodyLine("for (int i = 0; i < s.length(); i++) {");
+        text.addBodyLine("char c = s.charAt(i);");
+        text.addBodyLine("switch (c) {");
+        text.addBodyLine("case '\\\\':");
+        text.addBodyLine("sb.append(\"\\\\\\\\\");");
+        text.addBodyLine("break;");
+        text.addBodyLine("case '\\t':");
+        text.addBodyLine("sb.append(\"\\\\t\");");
+        text.addBodyLine("break;");
+        text.addBodyLine("case '\\n':");
+        text.addBodyLine("sb.append(\"\\\\n\");");
+        text.addBodyLine("break;");
+        text.addBodyLine("case '\\r':");
+        text.addBodyLine("sb.append(\"\\\\r\");");
+        text.addBodyLine("break;");
+        text.addBodyLine("default:");
+        text.addBodyLine("sb.append(c);");
+        text.addBodyLine("}");
+        text.addBodyLine("}");
+        addIfUsed(topLevelClass, text, usedMethods);
+
+        // 数値はエスケープ不要(BigDecimalは指数表記にしない)
+        Method number = helper("appendNumber", sbType, new FullyQualifiedJavaType("java.lang.Number"));
+        number.addBodyLine("if (value == null) {");
+        number.addBodyLine("sb.append(\"\\\\N\");");
+        number.addBodyLine("} else if (value instanceof java.math.BigDecimal) {");
+        number.addBodyLine("sb.append(((java.math.BigDecimal) value).toPlainString());");
+        number.addBodyLine("} else {");
+        number.addBodyLine("sb.append(value);");
+        number.addBodyLine("}");
+        addIfUsed(topLevelClass, number, usedMethods);
+
+        Method bool = helper("appendBoolean", sbType, new FullyQualifiedJavaType("java.lang.Boolean"));
+        bool.addBodyLine("if (value == null) {");
+        bool.addBodyLine("sb.append(\"\\\\N\");");
+        bool.addBodyLine("} else {");
+        bool.addBodyLine("sb.append(value ? 't' : 'f');");
+        bool.addBodyLine("}");
+        addIfUsed(topLevelClass, bool, usedMethods);
+
+        // byteaはhex形式(\x...)、COPYのエスケープで \ を重ねる
+        Method bytes = helper("appendBytes", sbType, new FullyQualifiedJavaType("byte[]"));
+        bytes.addBodyLine("if (value == null) {");
+        bytes.addBodyLine("sb.append(\"\\\\N\");");
+        bytes.addBodyLine("return;");
+        bytes.addBodyLine("}");
+        bytes.addBodyLine("sb.append(\"\\\\\\\\x\");");
+        bytes.addBodyLine("for (byte b : value) {");
+        bytes.addBodyLine("sb.append(Character.forDigit((b >> 4) & 0xF, 16));");
+        bytes.addBodyLine("sb.append(Character.forDigit(b & 0xF, 16));");
+        bytes.addBodyLine("}");
+        addIfUsed(topLevelClass, bytes, usedMethods);
+
+        // java.util.Date はJDBCドライバと同じくJVMのタイムゾーンで書式化する
+        FullyQualifiedJavaType dateType = new FullyQualifiedJavaType("java.util.Date");
+        String[][] dates = {
+                {"appendSqlDate", "java.sql.Date"},
+                {"appendSqlTime", "java.sql.Time"},
+                {"appendSqlTimestamp", "java.sql.Timestamp"}};
+        for (String[] d : dates) {
+            Method date = helper(d[0], sbType, dateType);
+            date.addBodyLine("if (value == null) {");
+            date.addBodyLine("sb.append(\"\\\\N\");");
+            date.addBodyLine("} else {");
+            date.addBodyLine("sb.append(new " + d[1] + "(value.getTime()));");
+            date.addBodyLine("}");
+            addIfUsed(topLevelClass, date, usedMethods);
+        }
+    }
+
+    private void addIfUsed(TopLevelClass topLevelClass, Method method, Set<String> usedMethods) {
+        if (usedMethods.contains(method.getName())) {
+            topLevelClass.addMethod(method);
+        }
+    }
+
+    private Method helper(String name, FullyQualifiedJavaType sbType, FullyQualifiedJavaType... valueType) {
+        Method method = new Method(name);
+        method.setVisibility(JavaVisibility.PRIVATE);
+        method.setStatic(true);
+        method.addParameter(new Parameter(sbType, "sb"));
+        for (FullyQualifiedJavaType type : valueType) {
+            method.addParameter(new Parameter(type, "value"));
+        }
+        return method;
+    }
+}
@@ -0,0 +1,338 @@
+package plugins;
+
+import org.mybatis.generator.api.GeneratedJavaFile;
+import org.mybatis.generator.api.IntrospectedColumn;
+import org.mybatis.generator.api.IntrospectedTable;
+import org.mybatis.generator.api.PluginAdapter;
+import org.mybatis.generator.api.dom.java.*;
+import org.mybatis.generator.api.dom.xml.Attribute;
+import org.mybatis.generator.api.dom.xml.TextElement;
+import org.mybatis.generator.api.dom.xml.VisitableElement;
+import org.mybatis.generator.api.dom.xml.XmlElement;
+import org.mybatis.generator.codegen.mybatis3.MyBatis3FormattingUtilities;
+import org.mybatis.generator.config.PropertyRegistry;
+import org.mybatis.generator.internal.util.StringUtility;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+
+import static plugins.CreateGenericInterfacePlugin.capitalize;
+
+/**
+ * Exampleクラスに配列を1個のパラメータで渡す条件(= any、&lt;&gt; all)を追加する(Postgres)
+ * <p>
+ * andXxxIn(List) は foreach で IN (?, ?, ...) に展開するため、件数毎に異なるSQL文になり、32767件を超えるとエラーになる。
+ * andXxxAnyOf(Collection) は件数に関係なく xxx = any(#{配列}) の1個のパラメータで渡す。
+ * 配列はカラムのPostgresの型名と値を SqlArray に詰め、作成した SqlArrayTypeHandler で Connection.createArrayOf(型名, 値) に変換する。
+ * (MyBatis の ArrayTypeHandler は JdbcType の名前を型名に使うため、timestamptz、timetz、float4 等の配列を作成できない)
+ *
+ * <pre>
+ * {@code public Criteria andXxxAnyOf(Collection<Type> values);}      -- xxx = any(?)
+ * {@code public Criteria andXxxNotAnyOf(Collection<Type> values);}   -- xxx <> all(?)
+ * </pre>
+ * <pre>
+ * {@code
+ * <when test="criterion.arrayValue">
+ *   and ${criterion.condition} (#{criterion.value,typeHandler=SqlArrayTypeHandler})
+ * </when>
+ * }
+ * </pre>
+ * 対象は文字列、数値、日付等のカラムのみ。(typeHandler を指定したカラムは除く)
+ * <p>
+ * (プロパティ)
+ * typeHandlerPackage: SqlArrayTypeHandlerの出力先パッケージ(デフォルト Modelと同じパッケージ、SqlArray は Modelと同じパッケージに作成する)
+ *
+ * @code <plugin type="plugins.ExampleAnyOfCriteriaPlugin">
+ * <property name="typeHandlerPackage" value="com.example.typehandler"/>
+ * </plugin>
+ */
+public class ExampleAnyOfCriteriaPlugin extends PluginAdapter {
+
+    /**
+     * プロパティ名
+     */
+    private static final String PROPERTY_TYPE_HANDLER_PACKAGE = "typeHandlerPackage";
+
+    private static final String SQL_ARRAY = "SqlArray";
+    private static final String SQL_ARRAY_TYPE_HANDLER = "SqlArrayTypeHandler";
+
+    /**
+     * 対象のJavaの型(pgjdbc が配列の要素を文字列に変換できる型)
+     */
+    private static final List<String> SUPPORTED_TYPES = Arrays.asList(
+            "java.lang.String", "java.lang.Short", "java.lang.Integer", "java.lang.Long", "java.lang.Byte",
+            "java.lang.Boolean", "java.lang.Float", "java.lang.Double", "java.math.BigDecimal", "java.math.BigInteger",
+            "java.util.Date", "java.sql.Date", "java.sql.Time", "java.sql.Timestamp",
+            "java.time.LocalDate", "java.time.LocalTime", "java.time.LocalDateTime",
+            "java.time.OffsetDateTime", "java.time.OffsetTime");
+
+    private String typeHandlerPackage;
+
+    /**
+     * SqlArray、SqlArrayTypeHandlerを利用したかどうか
+     */
+    private boolean useSqlArray;
+
+    @Override
+    public boolean validate(List<String> warnings) {
+        typeHandlerPackage = properties.getProperty(PROPERTY_TYPE_HANDLER_PACKAGE,
+                context.getJavaModelGeneratorConfiguration().getTargetPackage());
+        return true;
+    }
+
+    private String getSqlArrayType() {
+        return context.getJavaModelGeneratorConfiguration().getTargetPackage() + "." + SQL_ARRAY;
+    }
+
+    private Optional<InnerClass> findInnerClass(TopLevelClass topLevelClass, String name) {
+        return topLevelClass.getInnerClasses().stream()
+                .filter(c -> name.equals(c.getType().getShortName()))
+                .findFirst();
+    }
+
+    @Override
+    public boolean modelExampleClassGenerated(TopLevelClass topLevelClass, IntrospectedTable introspectedTable) {
+
+        Optional<InnerClass> generatedCriteria = findInnerClass(topLevelClass, "GeneratedCriteria");
+        Optional<InnerClass> criterion = findInnerClass(topLevelClass, "Criterion");
+        if (!generatedCriteria.isPresent() || !criterion.isPresent()) {
+            return true;
+        }
+
+        // Criterion に配列の条件かどうかのフラグを追加
+        Field arrayValue = new Field("arrayValue", FullyQualifiedJavaType.getBooleanPrimitiveInstance());
+        arrayValue.setVisibility(JavaVisibility.PRIVATE);
+        criterion.get().addField(arrayValue);
+
+        Method isArrayValue = new Method("isArrayValue");
+        isArrayValue.setVisibility(JavaVisibility.PUBLIC);
+        isArrayValue.setReturnType(FullyQualifiedJavaType.getBooleanPrimitiveInstance());
+        isArrayValue.addBodyLine("return arrayValue;");
+        criterion.get().addMethod(isArrayValue);
+
+        // protected void addArrayCriterion(String condition, String typeName, Object[] values, String property)
+        Method addArrayCriterion = new Method("addArrayCriterion");
+        addArrayCriterion.setVisibility(JavaVisibility.PROTECTED);
+        addArrayCriterion.addParameter(new Parameter(FullyQualifiedJavaType.getStringInstance(), "condition"));
+        addArrayCriterion.addParameter(new Parameter(FullyQualifiedJavaType.getStringInstance(), "typeName"));
+        addArrayCriterion.addParameter(new Parameter(new FullyQualifiedJavaType("java.lang.Object[]"), "values"));
+        addArrayCriterion.addParameter(new Parameter(FullyQualifiedJavaType.getStringInstance(), "property"));
+        addArrayCriterion.addBodyLine("if (values == null) {");
+        addArrayCriterion.addBodyLine("throw new RuntimeException(\"Value for \" + property + \" cannot be null\");");
+        addArrayCriterion.addBodyLine("}");
+        addArrayCriterion.addBodyLine("Criterion criterion = new Criterion(condition, new SqlArray(typeName, values));");
+        addArrayCriterion.addBodyLine("criterion.singleValue = false;");
+        addArrayCriterion.addBodyLine("criterion.arrayValue = true;");
+        addArrayCriterion.addBodyLine("criteria.add(criterion);");
+        generatedCriteria.get().addMethod(addArrayCriterion);
+
+        for (IntrospectedColumn column : introspectedTable.getNonBLOBColumns()) {
+            String type = column.getFullyQualifiedJavaType().getFullyQualifiedName();
+            if (column.getTypeHandler() != null || !SUPPORTED_TYPES.contains(type)) {
+                continue;
+            }
+            String columnName = MyBatis3FormattingUtilities.getAliasedActualColumnName(column);
+            generatedCriteria.get().addMethod(createAnyOfMethod(column, "AnyOf", columnName + " = any"));
+            generatedCriteria.get().addMethod(createAnyOfMethod(column, "NotAnyOf", columnName + " <> all"));
+            topLevelClass.addImportedType(column.getFullyQualifiedJavaType());
+        }
+        topLevelClass.addImportedType("java.util.Collection");
+        topLevelClass.addImportedType(getSqlArrayType());
+        useSqlArray = true;
+
+        return true;
+    }
+
+    /**
+     * public Criteria andXxxAnyOf(Collection<Type> values) を作成する
+     */
+    private Method createAnyOfMethod(IntrospectedColumn column, String suffix, String condition) {
+        FullyQualifiedJavaType type = column.getFullyQualifiedJavaType();
+        FullyQualifiedJavaType collectionType = new FullyQualifiedJavaType("java.util.Collection");
+        collectionType.addTypeArgument(type);
+
+        Method method = new Method("and" + capitalize(column.getJavaProperty()) + suffix);
+        method.setVisibility(JavaVisibility.PUBLIC);
+        method.setReturnType(FullyQualifiedJavaType.getCriteriaInstance());
+        method.addParameter(new Parameter(collectionType, "values"));
+        method.addBodyLine("addArrayCriterion(\"" + StringUtility.escapeStringForJava(condition) + "\", \""
+                + PluginUtil.getPostgresTypeName(column)
+                + "\", values == null ? null : values.toArray(new " + type.getShortName() + "[0]), \""
+                + column.getJavaProperty() + "\");");
+        method.addBodyLine("return (Criteria) this;");
+        return method;
+    }
+
+    /**
+     * choose 要素に配列の条件を追加する
+     */
+    private void addArrayWhen(XmlElement element) {
+        for (VisitableElement e : element.getElements()) {
+            if (!(e instanceof XmlElement)) {
+                continue;
+            }
+            XmlElement child = (XmlElement) e;
+            if ("choose".equals(child.getName())) {
+                XmlElement when = new XmlElement("when");
+                when.addAttribute(new Attribute("test", "criterion.arrayValue"));
+                when.addElement(new TextElement("and ${criterion.condition} (#{criterion.value,typeHandler="
+                        + typeHandlerPackage + "." + SQL_ARRAY_TYPE_HANDLER + "})"));
+                child.addElement(when);
+            } else {
+                addArrayWhen(child);
+            }
+        }
+    }
+
+    @Override
+    public boolean sqlMapExampleWhereClauseElementGenerated(XmlElement element, IntrospectedTable introspectedTable) {
+        addArrayWhen(element);
+        return true;
+    }
+
+    @Override
+    public List<GeneratedJavaFile> contextGenerateAdditionalJavaFiles() {
+
+        List<GeneratedJavaFile> answer = new ArrayList<>();
+        if (!useSqlArray) {
+            return answer;
+        }
+        answer.add(new GeneratedJavaFile(createSqlArray(),
+                context.getJavaModelGeneratorConfiguration().getTargetProject(),
+                context.getProperty(PropertyRegistry.CONTEXT_JAVA_FILE_ENCODING),
+                context.getJavaFormatter()));
+        answer.add(new GeneratedJavaFile(createSqlArrayTypeHandler(),
+                context.getJavaModelGeneratorConfiguration().getTargetProject(),
+                context.getProperty(PropertyRegistry.CONTEXT_JAVA_FILE_ENCODING),
+                context.getJavaFormatter()));
+        return answer;
+    }
+
+    /**
+     * Postgresの型名と配列の値を保持するクラスを作成する
+     */
+    private TopLevelClass createSqlArray() {
+
+        TopLevelClass topLevelClass = new TopLevelClass(getSqlArrayType());
+        topLevelClass.setVisibility(JavaVisibility.PUBLIC);
+        context.getCommentGenerator().addJavaFileComment(topLevelClass);
+
+        Field typeName = new Field("typeName", FullyQualifiedJavaType.getStringInstance());
+        typeName.setVisibility(JavaVisibility.PRIVATE);
+        typeName.setFinal(true);
+        topLevelClass.addField(typeName);
+
+        Field elements = new Field("elements", new FullyQualifiedJavaType("java.lang.Object[]"));
+        elements.setVisibility(JavaVisibility.PRIVATE);
+        elements.setFinal(true);
+        topLevelClass.addField(elements);
+
+        Method constructor = new Method(SQL_ARRAY);
+        constructor.setConstructor(true);
+        constructor.setVisibility(JavaVisibility.PUBLIC);
+        constructor.addParameter(new Parameter(FullyQualifiedJavaType.getStringInstance(), "typeName"));
+        constructor.addParameter(new Parameter(new FullyQualifiedJavaType("java.lang.Object[]"), "elements"));
+        constructor.addBodyLine("this.typeName = typeName;");
+        constructor.addBodyLine("this.elements = elements;");
+        topLevelClass.addMethod(constructor);
+
+        Method getTypeName = new Method("getTypeName");
+        getTypeName.setVisibility(JavaVisibility.PUBLIC);
+        getTypeName.setReturnType(FullyQualifiedJavaType.getStringInstance());
+        getTypeName.addBodyLine("return typeName;");
+        topLevelClass.addMethod(getTypeName);
+
+        Method getElements = new Method("getElements");
+        getElements.setVisibility(JavaVisibility.PUBLIC);
+        getElements.setReturnType(new FullyQualifiedJavaType("java.lang.Object[]"));
+        getElements.addBodyLine("return elements;");
+        topLevelClass.addMethod(getElements);
+
+        return topLevelClass;
+    }
+
+    /**
+     * SqlArray を Connection.createArrayOf(型名, 値) で設定するTypeHandlerを作成する
+     */
+    private TopLevelClass createSqlArrayTypeHandler() {
+
+        FullyQualifiedJavaType sqlArrayType = new FullyQualifiedJavaType(getSqlArrayType());
+        FullyQualifiedJavaType superType = new FullyQualifiedJavaType("org.apache.ibatis.type.BaseTypeHandler");
+        superType.addTypeArgument(sqlArrayType);
+        FullyQualifiedJavaType sqlException = new FullyQualifiedJavaType("java.sql.SQLException");
+
+        TopLevelClass topLevelClass = new TopLevelClass(typeHandlerPackage + "." + SQL_ARRAY_TYPE_HANDLER);
+        topLevelClass.setVisibility(JavaVisibility.PUBLIC);
+        topLevelClass.setSuperClass(superType);
+        context.getCommentGenerator().addJavaFileComment(topLevelClass);
+        topLevelClass.addImportedType(sqlArrayType);
+        topLevelClass.addImportedType(superType);
+        topLevelClass.addImportedType("org.apache.ibatis.type.JdbcType");
+        topLevelClass.addImportedType("java.sql.Array");
+        topLevelClass.addImportedType("java.sql.CallableStatement");
+        topLevelClass.addImportedType("java.sql.PreparedStatement");
+        topLevelClass.addImportedType("java.sql.ResultSet");
+        topLevelClass.addImportedType(sqlException);
+
+        Method set = new Method("setNonNullParameter");
+        set.addAnnotation("@Override");
+        set.setVisibility(JavaVisibility.PUBLIC);
+        set.addParameter(new Parameter(new FullyQualifiedJavaType("java.sql.PreparedStatement"), "ps"));
+        set.addParameter(new Parameter(FullyQualifiedJavaType.getIntInstance(), "i"));
+        set.addParameter(new Parameter(sqlArrayType, "parameter"));
+        set.addParameter(new Parameter(new FullyQualifiedJavaType("org.apache.ibatis.type.JdbcType"), "jdbcType"));
+        set.addException(sqlException);
+        set.addBodyLine("Array array = ps.getConnection().createArrayOf(parameter.getTypeName(), parameter.getElements());");
+        set.addBodyLine("ps.setArray(i, array);");
+        topLevelClass.addMethod(set);
+
+        Method getByName = new Method("getNullableResult");
+        getByName.addAnnotation("@Override");
+        getByName.setVisibility(JavaVisibility.PUBLIC);
+        getByName.setReturnType(sqlArrayType);
+        getByName.addParameter(new Parameter(new FullyQualifiedJavaType("java.sql.ResultSet"), "rs"));
+        getByName.addParameter(new Parameter(FullyQualifiedJavaType.getStringInstance(), "columnName"));
+        getByName.addException(sqlException);
+        getByName.addBodyLine("return toSqlArray(rs.getArray(columnName));");
+        topLevelClass.addMethod(getByName);
+
+        Method getByIndex = new Method("getNullableResult");
+        getByIndex.addAnnotation("@Override");
+        getByIndex.setVisibility(JavaVisibility.PUBLIC);
+        getByIndex.setReturnType(sqlArrayType);
+        getByIndex.addParameter(new Parameter(new FullyQualifiedJavaType("java.sql.ResultSet"), "rs"));
+        getByIndex.addParameter(new Parameter(FullyQualifiedJavaType.getIntInstance(), "columnIndex"));
+        getByIndex.addException(sqlException);
+        getByIndex.addBodyLine("return toSqlArray(rs.getArray(columnIndex));");
+        topLevelClass.addMethod(getByIndex);
+
+        Method getCallable = new Method("getNullableResult");
+        getCallable.addAnnotation("@Override");
+        getCallable.setVisibility(JavaVisibility.PUBLIC);
+        getCallable.setReturnType(sqlArrayType);
+        getCallable.addParameter(new Parameter(new FullyQualifiedJavaType("java.sql.CallableStatement"), "cs"));
+        getCallable.addParameter(new Parameter(FullyQualifiedJavaType.getIntInstance(), "columnIndex"));
+        getCallable.addException(sqlException);
+        getCallable.addBodyLine("return toSqlArray(cs.getArray(columnIndex));");
+        topLevelClass.addMethod(getCallable);
+
+        Method toSqlArray = new Method("toSqlArray");
+        toSqlArray.setVisibility(JavaVisibility.PRIVATE);
+        toSqlArray.setReturnType(sqlArrayType);
+        toSqlArray.addParameter(new Parameter(new FullyQualifiedJavaType("java.sql.Array"), "array"));
+        toSqlArray.addException(sqlException);
+        toSqlArray.addBodyLine("if (array == null) {");
+        toSqlArray.addBodyLine("return null;");
+        toSqlArray.addBodyLine("}");
+        toSqlArray.addBodyLine("try {");
+        toSqlArray.addBodyLine("return new SqlArray(array.getBaseTypeName(), (Object[]) array.getArray());");
+        toSqlArray.addBodyLine("} finally {");
+        toSqlArray.addBodyLine("array.free();");
+        toSqlArray.addBodyLine("}");
+        topLevelClass.addMethod(toSqlArray);
+
+        return topLevelClass;
+    }
+}
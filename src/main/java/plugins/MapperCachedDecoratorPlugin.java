@@ -0,0 +1,531 @@
+package plugins;
+
+import org.mybatis.generator.api.GeneratedJavaFile;
+import org.mybatis.generator.api.IntrospectedColumn;
+import org.mybatis.generator.api.IntrospectedTable;
+import org.mybatis.generator.api.PluginAdapter;
+import org.mybatis.generator.api.dom.java.*;
+import org.mybatis.generator.config.PropertyRegistry;
+import org.mybatis.generator.internal.util.JavaBeansUtil;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.stream.Collectors;
+
+/**
+ * selectByPrimaryKey の結果をキャッシュする Mapper のラッパークラス(Mapper名 + Cached)を作成する
+ * <p>
+ * MyBatis の2次キャッシュは namespace 単位のため、テーブルへの更新の度に全件が消える。
+ * このクラスは主キー毎に結果を保持し、更新したキーだけを消す。(キャッシュアサイド)
+ * キャッシュは Mapperインタフェースと同じパッケージに作成する LruCache クラスで保持する。
+ * (件数の上限を超えると最も古く参照されたものから削除、有効期限 ttlMillis)
+ * 同じキーの読み込みは主キーのハッシュで選んだロック(stripes個)で1スレッドに限定し、キャッシュが空の時にDBへ同時に問い合わせない。
+ * <p>
+ * 主キーがあるテーブルのみ対象。Mapperの抽象メソッド(他のプラグインが追加したメソッドを含む)は全て委譲し、
+ * 更新系のメソッドは以下の通りキャッシュを消す。
+ * <pre>
+ * 引数が selectByPrimaryKey と同じ(deleteByPrimaryKey 等)    : そのキー
+ * 引数が Model 1つ(updateByPrimaryKey*、merge 等)           : Model の主キー
+ * 引数が List&lt;Model&gt;(updateBatchByPrimaryKeyChunk 等)  : 各行の主キー
+ * insert で始まるメソッド、select 等の検索系メソッド            : 消さない(null はキャッシュしないため)
+ * 上記以外(updateByExample、deleteByExample 等)              : 全件
+ * </pre>
+ * キャッシュのキーは単一主キーの場合は getPrimaryKey() と同じ値、複合主キーの場合は主キーの値の List。
+ * (PrimaryKeyクラスに equals がなくても一致する)
+ * キャッシュしたオブジェクトは呼び出し元で共有されるため、変更しないこと。
+ * <p>
+ * ラッパーは SqlSession(トランザクション)毎に作成し、コミットまたはロールバックの後に afterCompletion() を呼び出す。
+ * 更新系のメソッドを実行した後は afterCompletion() まで selectByPrimaryKey でキャッシュを参照・登録しない。
+ * (コミット前の値をキャッシュすると、ロールバックしても有効期限まで他のスレッドが読み込むため)
+ * afterCompletion() は更新したキーをもう一度消すため、コミット前に他のスレッドが読み込んだ古い値も残らない。
+ *
+ * <pre>
+ * {@code
+ * LruCache<Key, Model> cache = new LruCache<>(10000, 60000, 64);   -- アプリケーションで1個だけ作成する(Key は主キーの型、複合主キーは List<Object>)
+ * ModelMapper mapper = new ModelMapperCached(sqlSession.getMapper(ModelMapper.class), cache);   -- SqlSession 毎に作成する
+ * mapper.updateByPrimaryKey(row);
+ * sqlSession.commit();
+ * mapper.afterCompletion();
+ * }
+ * </pre>
+ * <p>
+ * (プロパティ)
+ * maxSize: キャッシュする最大件数(デフォルト 10000)
+ * ttlMillis: 有効期限(ミリ秒、デフォルト 60000)
+ * stripes: 読み込み時のロックの数(デフォルト 64)
+ *
+ * @code <plugin type="plugins.MapperCachedDecoratorPlugin">
+ * <property name="maxSize" value="10000"/>
+ * <property name="ttlMillis" value="60000"/>
+ * </plugin>
+ */
+public class MapperCachedDecoratorPlugin extends PluginAdapter {
+
+    /**
+     * プロパティ名
+     */
+    private static final String PROPERTY_MAX_SIZE = "maxSize";
+    private static final String PROPERTY_TTL_MILLIS = "ttlMillis";
+    private static final String PROPERTY_STRIPES = "stripes";
+
+    private static final String LRU_CACHE = "LruCache";
+
+    private String maxSize = "10000";
+    private String ttlMillis = "60000";
+    private String stripes = "64";
+
+    /**
+     * テーブル毎のMapperインタフェース
+     * (全てのプラグインがメソッドを追加した後、contextGenerateAdditionalJavaFiles でラッパークラスを作成する)
+     */
+    private final Map<IntrospectedTable, Interface> interfaceMap = new HashMap<>();
+
+    @Override
+    public boolean validate(List<String> warnings) {
+        if (context.getJavaClientGeneratorConfiguration() == null) {
+            warnings.add("javaClientGenerator is required for plugin " + this.getClass().getSimpleName());
+            return false;
+        }
+        maxSize = properties.getProperty(PROPERTY_MAX_SIZE, maxSize).trim();
+        ttlMillis = properties.getProperty(PROPERTY_TTL_MILLIS, ttlMillis).trim();
+        stripes = properties.getProperty(PROPERTY_STRIPES, stripes).trim();
+        return true;
+    }
+
+    private String getLruCacheType() {
+        return context.getJavaClientGeneratorConfiguration().getTargetPackage() + "." + LRU_CACHE;
+    }
+
+    /**
+     * キャッシュのキーの型(単一主キーは主キーの型、複合主キーは List)
+     */
+    private FullyQualifiedJavaType getCacheKeyType(IntrospectedTable introspectedTable) {
+        List<IntrospectedColumn> keys = introspectedTable.getPrimaryKeyColumns();
+        if (keys.size() == 1) {
+            return keys.get(0).getFullyQualifiedJavaType();
+        }
+        return new FullyQualifiedJavaType("java.util.List<java.lang.Object>");
+    }
+
+    /**
+     * 主キーの値を持つ変数からキャッシュのキーを作成する式
+     *
+     * @param introspectedTable introspectedTable
+     * @param name              変数名(getterを持つModel、PrimaryKeyクラス)
+     * @return ex) row.getId()、Arrays.asList(row.getA(), row.getB())
+     */
+    private String getCacheKeyFromGetters(IntrospectedTable introspectedTable, String name) {
+        String values = introspectedTable.getPrimaryKeyColumns().stream()
+                .map(c -> name + "." + JavaBeansUtil.getGetterMethodName(c.getJavaProperty(), c.getFullyQualifiedJavaType()) + "()")
+                .collect(Collectors.joining(", "));
+        if (introspectedTable.getPrimaryKeyColumns().size() == 1) {
+            return values;
+        }
+        return "Arrays.asList(" + values + ")";
+    }
+
+    private String getArguments(Method method) {
+        return method.getParameters().stream().map(Parameter::getName).collect(Collectors.joining(", "));
+    }
+
+    private boolean sameParameterTypes(Method a, Method b) {
+        if (a.getParameters().size() != b.getParameters().size()) {
+            return false;
+        }
+        for (int i = 0; i < a.getParameters().size(); i++) {
+            if (!a.getParameters().get(i).getType().equals(b.getParameters().get(i).getType())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Model(主キーのgetterを持つクラス)の型か判定する
+     */
+    private boolean isModelType(FullyQualifiedJavaType type, IntrospectedTable introspectedTable) {
+        String name = type.getFullyQualifiedNameWithoutTypeParameters();
+        return name.equals(introspectedTable.getBaseRecordType())
+                || name.equals(introspectedTable.getRecordWithBLOBsType())
+                || name.equals(introspectedTable.getPrimaryKeyType());
+    }
+
+    private boolean isReadMethod(String name) {
+        return name.startsWith("select") || name.startsWith("count") || name.startsWith("exists")
+                || name.startsWith("estimate") || name.startsWith("explain");
+    }
+
+    /**
+     * Mapperの抽象メソッドを委譲するメソッドを作成する(本文は呼び出し元で追加)
+     */
+    private Method createDelegateMethod(Method method) {
+        Method delegate = new Method(method.getName());
+        delegate.setVisibility(JavaVisibility.PUBLIC);
+        delegate.addAnnotation("@Override");
+        method.getReturnType().ifPresent(delegate::setReturnType);
+        method.getParameters().forEach(p -> delegate.addParameter(new Parameter(p.getType(), p.getName())));
+        return delegate;
+    }
+
+    /**
+     * 更新系メソッドの本文を追加する(委譲した後にキャッシュを消す)
+     */
+    private void addWriteBodyLines(Method delegate, Method method, String... invalidateLines) {
+        String call = "mapper." + method.getName() + "(" + getArguments(method) + ");";
+        if (method.getReturnType().isPresent()) {
+            delegate.addBodyLine(method.getReturnType().get().getShortName() + " result = " + call);
+        } else {
+            delegate.addBodyLine(call);
+        }
+        for (String line : invalidateLines) {
+            delegate.addBodyLine(line);
+        }
+        if (method.getReturnType().isPresent()) {
+            delegate.addBodyLine("return result;");
+        }
+    }
+
+    @Override
+    public boolean clientGenerated(Interface interfaze, IntrospectedTable introspectedTable) {
+        interfaceMap.put(introspectedTable, interfaze);
+        return true;
+    }
+
+    /**
+     * Mapperのラッパークラスを作成する
+     *
+     * @param interfaze         Mapperインタフェース
+     * @param introspectedTable introspectedTable
+     * @return ラッパークラス(対象外のテーブルの場合は null)
+     */
+    private TopLevelClass createCachedClass(Interface interfaze, IntrospectedTable introspectedTable) {
+
+        Optional<Method> selectByPrimaryKey = interfaze.getMethods().stream()
+                .filter(m -> "selectByPrimaryKey".equals(m.getName()))
+                .findFirst();
+        if (!introspectedTable.hasPrimaryKeyColumns() || !selectByPrimaryKey.isPresent()
+                || !selectByPrimaryKey.get().getReturnType().isPresent()) {
+            return null;
+        }
+
+        FullyQualifiedJavaType cacheKeyType = getCacheKeyType(introspectedTable);
+        FullyQualifiedJavaType recordType = selectByPrimaryKey.get().getReturnType().get();
+        FullyQualifiedJavaType cacheType = new FullyQualifiedJavaType(getLruCacheType());
+        cacheType.addTypeArgument(cacheKeyType);
+        cacheType.addTypeArgument(recordType);
+
+        // 引数が selectByPrimaryKey と同じメソッドのキー(複合主キーは PrimaryKeyクラス、flatの場合は主キー毎の引数)
+        Method keyMethod = selectByPrimaryKey.get();
+        String keyFromParameters;
+        if (keyMethod.getParameters().size() > 1) {
+            keyFromParameters = "Arrays.asList(" + getArguments(keyMethod) + ")";
+        } else if (introspectedTable.getPrimaryKeyColumns().size() == 1) {
+            keyFromParameters = keyMethod.getParameters().get(0).getName();
+        } else {
+            keyFromParameters = getCacheKeyFromGetters(introspectedTable, keyMethod.getParameters().get(0).getName());
+        }
+
+        TopLevelClass topLevelClass = new TopLevelClass(interfaze.getType().getFullyQualifiedName() + "Cached");
+        topLevelClass.setVisibility(JavaVisibility.PUBLIC);
+        topLevelClass.addSuperInterface(interfaze.getType());
+        context.getCommentGenerator().addJavaFileComment(topLevelClass);
+        topLevelClass.addImportedTypes(interfaze.getImportedTypes());
+        topLevelClass.addImportedType(cacheType);
+        topLevelClass.addImportedType("java.util.Arrays");
+        topLevelClass.addImportedType("java.util.List");
+
+        Field mapper = new Field("mapper", interfaze.getType());
+        mapper.setVisibility(JavaVisibility.PRIVATE);
+        mapper.setFinal(true);
+        topLevelClass.addField(mapper);
+
+        Field cache = new Field("cache", cacheType);
+        cache.setVisibility(JavaVisibility.PRIVATE);
+        cache.setFinal(true);
+        topLevelClass.addField(cache);
+
+        // 更新したキー(afterCompletion でもう一度消す)
+        FullyQualifiedJavaType keySetType = new FullyQualifiedJavaType("java.util.Set");
+        keySetType.addTypeArgument(cacheKeyType);
+        Field writtenKeys = new Field("writtenKeys", keySetType);
+        writtenKeys.setVisibility(JavaVisibility.PRIVATE);
+        writtenKeys.setFinal(true);
+        writtenKeys.setInitializationString("new HashSet<>()");
+        topLevelClass.addField(writtenKeys);
+        topLevelClass.addImportedType("java.util.Set");
+        topLevelClass.addImportedType("java.util.HashSet");
+
+        // キーを特定できない更新(updateByExample 等)をしたか
+        Field writtenAll = new Field("writtenAll", FullyQualifiedJavaType.getBooleanPrimitiveInstance());
+        writtenAll.setVisibility(JavaVisibility.PRIVATE);
+        topLevelClass.addField(writtenAll);
+
+        Method constructor = new Method(topLevelClass.getType().getShortName());
+        constructor.setConstructor(true);
+        constructor.setVisibility(JavaVisibility.PUBLIC);
+        constructor.addParameter(new Parameter(interfaze.getType(), "mapper"));
+        constructor.addParameter(new Parameter(cacheType, "cache"));
+        constructor.addBodyLine("this.mapper = mapper;");
+        constructor.addBodyLine("this.cache = cache;");
+        topLevelClass.addMethod(constructor);
+
+        // プロパティで指定したサイズ、有効期限のキャッシュを作成する(Mapperのインスタンス毎にキャッシュを持つ)
+        Method defaultConstructor = new Method(topLevelClass.getType().getShortName());
+        defaultConstructor.setConstructor(true);
+        defaultConstructor.setVisibility(JavaVisibility.PUBLIC);
+        defaultConstructor.addParameter(new Parameter(interfaze.getType(), "mapper"));
+        defaultConstructor.addBodyLine("this(mapper, new " + LRU_CACHE + "<>(" + maxSize + ", " + ttlMillis + "L, " + stripes + "));");
+        topLevelClass.addMethod(defaultConstructor);
+
+        for (Method method : interfaze.getMethods()) {
+            if (!method.isAbstract() || method.isDefault() || method.isStatic()) {
+                continue;
+            }
+            Method delegate = createDelegateMethod(method);
+            String name = method.getName();
+            List<Parameter> parameters = method.getParameters();
+
+            if (method == keyMethod) {
+                // 更新後はコミット前の値をキャッシュしない様に、キャッシュを使わず検索する
+                delegate.addBodyLine("if (writtenAll || !writtenKeys.isEmpty()) {");
+                delegate.addBodyLine("return mapper." + name + "(" + getArguments(method) + ");");
+                delegate.addBodyLine("}");
+                // return cache.get(key, k -> mapper.selectByPrimaryKey(key));
+                delegate.addBodyLine("return cache.get(" + keyFromParameters + ", k -> mapper."
+                        + name + "(" + getArguments(method) + "));");
+            } else if (isReadMethod(name) || name.startsWith("insert")) {
+                String call = "mapper." + name + "(" + getArguments(method) + ");";
+                delegate.addBodyLine(method.getReturnType().isPresent() ? "return " + call : call);
+            } else if (sameParameterTypes(method, keyMethod)) {
+                addWriteBodyLines(delegate, method, "invalidateKey(" + keyFromParameters + ");");
+            } else if (parameters.size() == 1 && isModelType(parameters.get(0).getType(), introspectedTable)) {
+                addWriteBodyLines(delegate, method, "invalidateKey("
+                        + getCacheKeyFromGetters(introspectedTable, parameters.get(0).getName()) + ");");
+            } else if (parameters.size() == 1 && parameters.get(0).getType().getTypeArguments().size() == 1
+                    && "java.util.List".equals(parameters.get(0).getType().getFullyQualifiedNameWithoutTypeParameters())
+                    && isModelType(parameters.get(0).getType().getTypeArguments().get(0), introspectedTable)) {
+                FullyQualifiedJavaType rowType = parameters.get(0).getType().getTypeArguments().get(0);
+                addWriteBodyLines(delegate, method,
+                        "for (" + rowType.getShortName() + " row : " + parameters.get(0).getName() + ") {",
+                        "invalidateKey(" + getCacheKeyFromGetters(introspectedTable, "row") + ");",
+                        "}");
+            } else {
+                addWriteBodyLines(delegate, method, "invalidateAll();");
+            }
+            topLevelClass.addMethod(delegate);
+        }
+
+        Method invalidateKey = new Method("invalidateKey");
+        invalidateKey.setVisibility(JavaVisibility.PRIVATE);
+        invalidateKey.addParameter(new Parameter(cacheKeyType, "key"));
+        invalidateKey.addBodyLine("writtenKeys.add(key);");
+        invalidateKey.addBodyLine("cache.invalidate(key);");
+        topLevelClass.addMethod(invalidateKey);
+
+        Method invalidateAll = new Method("invalidateAll");
+        invalidateAll.setVisibility(JavaVisibility.PRIVATE);
+        invalidateAll.addBodyLine("writtenAll = true;");
+        invalidateAll.addBodyLine("cache.clear();");
+        topLevelClass.addMethod(invalidateAll);
+
+        // コミット、ロールバックの後に呼び出す(更新したキーをもう一度消し、キャッシュの利用を再開する)
+        Method afterCompletion = new Method("afterCompletion");
+        afterCompletion.setVisibility(JavaVisibility.PUBLIC);
+        afterCompletion.addBodyLine("if (writtenAll) {");
+        afterCompletion.addBodyLine("cache.clear();");
+        afterCompletion.addBodyLine("} else {");
+        afterCompletion.addBodyLine("for (" + cacheKeyType.getShortName() + " key : writtenKeys) {");
+        afterCompletion.addBodyLine("cache.invalidate(key);");
+        afterCompletion.addBodyLine("}");
+        afterCompletion.addBodyLine("}");
+        afterCompletion.addBodyLine("writtenKeys.clear();");
+        afterCompletion.addBodyLine("writtenAll = false;");
+        topLevelClass.addMethod(afterCompletion);
+
+        return topLevelClass;
+    }
+
+    @Override
+    public List<GeneratedJavaFile> contextGenerateAdditionalJavaFiles(IntrospectedTable introspectedTable) {
+        List<GeneratedJavaFile> answer = new ArrayList<>();
+        Interface interfaze = interfaceMap.remove(introspectedTable);
+        if (interfaze == null) {
+            return answer;
+        }
+        TopLevelClass topLevelClass = createCachedClass(interfaze, introspectedTable);
+        if (topLevelClass != null) {
+            answer.add(new GeneratedJavaFile(topLevelClass,
+                    context.getJavaClientGeneratorConfiguration().getTargetProject(),
+                    context.getProperty(PropertyRegistry.CONTEXT_JAVA_FILE_ENCODING),
+                    context.getJavaFormatter()));
+        }
+        return answer;
+    }
+
+    @Override
+    public List<GeneratedJavaFile> contextGenerateAdditionalJavaFiles() {
+
+        List<GeneratedJavaFile> answer = new ArrayList<>();
+
+        TopLevelClass topLevelClass = new TopLevelClass(getLruCacheType() + "<K, V>");
+        topLevelClass.setVisibility(JavaVisibility.PUBLIC);
+        topLevelClass.setFinal(true);
+        context.getCommentGenerator().addJavaFileComment(topLevelClass);
+        topLevelClass.addImportedType("java.util.Iterator");
+        topLevelClass.addImportedType("java.util.LinkedHashMap");
+        topLevelClass.addImportedType("java.util.concurrent.atomic.AtomicLong");
+        topLevelClass.addImportedType("java.util.function.Function");
+
+        // 値と有効期限
+        InnerClass entry = new InnerClass("Entry<V>");
+        entry.setVisibility(JavaVisibility.PRIVATE);
+        entry.setStatic(true);
+        entry.setFinal(true);
+        Field value = new Field("value", new FullyQualifiedJavaType("V"));
+        value.setVisibility(JavaVisibility.PRIVATE);
+        value.setFinal(true);
+        entry.addField(value);
+        Field expiresAt = new Field("expiresAt", new FullyQualifiedJavaType("long"));
+        expiresAt.setVisibility(JavaVisibility.PRIVATE);
+        expiresAt.setFinal(true);
+        entry.addField(expiresAt);
+        Method entryConstructor = new Method("Entry");
+        entryConstructor.setConstructor(true);
+        entryConstructor.setVisibility(JavaVisibility.PRIVATE);
+        entryConstructor.addParameter(new Parameter(new FullyQualifiedJavaType("V"), "value"));
+        entryConstructor.addParameter(new Parameter(new FullyQualifiedJavaType("long"), "expiresAt"));
+        entryConstructor.addBodyLine("this.value = value;");
+        entryConstructor.addBodyLine("this.expiresAt = expiresAt;");
+        entry.addMethod(entryConstructor);
+        topLevelClass.addInnerClass(entry);
+
+        Field maxSizeField = new Field("maxSize", FullyQualifiedJavaType.getIntInstance());
+        maxSizeField.setVisibility(JavaVisibility.PRIVATE);
+        maxSizeField.setFinal(true);
+        topLevelClass.addField(maxSizeField);
+
+        Field ttlField = new Field("ttlMillis", new FullyQualifiedJavaType("long"));
+        ttlField.setVisibility(JavaVisibility.PRIVATE);
+        ttlField.setFinal(true);
+        topLevelClass.addField(ttlField);
+
+        // アクセス順の LinkedHashMap、先頭が最も古く参照されたもの(map 自身で同期する)
+        Field map = new Field("map", new FullyQualifiedJavaType("java.util.LinkedHashMap<K, Entry<V>>"));
+        map.setVisibility(JavaVisibility.PRIVATE);
+        map.setFinal(true);
+        map.setInitializationString("new LinkedHashMap<>(16, 0.75f, true)");
+        topLevelClass.addField(map);
+
+        // 読み込み中に削除された値を登録しないための世代番号
+        Field generation = new Field("generation", new FullyQualifiedJavaType("java.util.concurrent.atomic.AtomicLong"));
+        generation.setVisibility(JavaVisibility.PRIVATE);
+        generation.setFinal(true);
+        generation.setInitializationString("new AtomicLong()");
+        topLevelClass.addField(generation);
+
+        Field locks = new Field("locks", new FullyQualifiedJavaType("java.lang.Object[]"));
+        locks.setVisibility(JavaVisibility.PRIVATE);
+        locks.setFinal(true);
+        topLevelClass.addField(locks);
+
+        Method constructor = new Method(LRU_CACHE);
+        constructor.setConstructor(true);
+        constructor.setVisibility(JavaVisibility.PUBLIC);
+        constructor.addParameter(new Parameter(FullyQualifiedJavaType.getIntInstance(), "maxSize"));
+        constructor.addParameter(new Parameter(new FullyQualifiedJavaType("long"), "ttlMillis"));
+        constructor.addParameter(new Parameter(FullyQualifiedJavaType.getIntInstance(), "stripes"));
+        constructor.addBodyLine("this.maxSize = maxSize;");
+        constructor.addBodyLine("this.ttlMillis = ttlMillis;");
+        constructor.addBodyLine("this.locks = new Object[stripes];");
+        constructor.addBodyLine("for (int i = 0; i < stripes; i++) {");
+        constructor.addBodyLine("locks[i] = new Object();");
+        constructor.addBodyLine("}");
+        topLevelClass.addMethod(constructor);
+
+        // キャッシュにあれば返し、なければ loader で読み込む(同じロックのスレッドは待って結果を共有する)
+        Method get = new Method("get");
+        get.setVisibility(JavaVisibility.PUBLIC);
+        get.setReturnType(new FullyQualifiedJavaType("V"));
+        get.addParameter(new Parameter(new FullyQualifiedJavaType("K"), "key"));
+        get.addParameter(new Parameter(new FullyQualifiedJavaType("java.util.function.Function<? super K, ? extends V>"), "loader"));
+        get.addBodyLine("V value = getIfPresent(key);");
+        get.addBodyLine("if (value != null) {");
+        get.addBodyLine("return value;");
+        get.addBodyLine("}");
+        get.addBodyLine("synchronized (locks[(key.hashCode() & Integer.MAX_VALUE) % locks.length]) {");
+        get.addBodyLine("value = getIfPresent(key);");
+        get.addBodyLine("if (value != null) {");
+        get.addBodyLine("return value;");
+        get.addBodyLine("}");
+        get.addBodyLine("long loadedGeneration = generation.get();");
+        get.addBodyLine("value = loader.apply(key);");
+        get.addBodyLine("if (value != null) {");
+        get.addBodyLine("put(key, value, loadedGeneration);");
+        get.addBodyLine("}");
+        get.addBodyLine("return value;");
+        get.addBodyLine("}");
+        topLevelClass.addMethod(get);
+
+        Method getIfPresent = new Method("getIfPresent");
+        getIfPresent.setVisibility(JavaVisibility.PUBLIC);
+        getIfPresent.setReturnType(new FullyQualifiedJavaType("V"));
+        getIfPresent.addParameter(new Parameter(new FullyQualifiedJavaType("K"), "key"));
+        getIfPresent.addBodyLine("synchronized (map) {");
+        getIfPresent.addBodyLine("Entry<V> entry = map.get(key);");
+        getIfPresent.addBodyLine("if (entry == null) {");
+        getIfPresent.addBodyLine("return null;");
+        getIfPresent.addBodyLine("}");
+        getIfPresent.addBodyLine("if (entry.expiresAt <= System.currentTimeMillis()) {");
+        getIfPresent.addBodyLine("map.remove(key);");
+        getIfPresent.addBodyLine("return null;");
+        getIfPresent.addBodyLine("}");
+        getIfPresent.addBodyLine("return entry.value;");
+        getIfPresent.addBodyLine("}");
+        topLevelClass.addMethod(getIfPresent);
+
+        // 読み込み開始後に invalidate、clear されていない場合だけ登録する
+        Method put = new Method("put");
+        put.setVisibility(JavaVisibility.PRIVATE);
+        put.addParameter(new Parameter(new FullyQualifiedJavaType("K"), "key"));
+        put.addParameter(new Parameter(new FullyQualifiedJavaType("V"), "value"));
+        put.addParameter(new Parameter(new FullyQualifiedJavaType("long"), "loadedGeneration"));
+        put.addBodyLine("synchronized (map) {");
+        put.addBodyLine("if (generation.get() != loadedGeneration) {");
+        put.addBodyLine("return;");
+        put.addBodyLine("}");
+        put.addBodyLine("map.put(key, new Entry<>(value, System.currentTimeMillis() + ttlMillis));");
+        put.addBodyLine("if (map.size() > maxSize) {");
+        put.addBodyLine("Iterator<Entry<V>> eldest = map.values().iterator();");
+        put.addBodyLine("eldest.next();");
+        put.addBodyLine("eldest.remove();");
+        put.addBodyLine("}");
+        put.addBodyLine("}");
+        topLevelClass.addMethod(put);
+
+        Method invalidate = new Method("invalidate");
+        invalidate.setVisibility(JavaVisibility.PUBLIC);
+        invalidate.addParameter(new Parameter(new FullyQualifiedJavaType("K"), "key"));
+        invalidate.addBodyLine("synchronized (map) {");
+        invalidate.addBodyLine("generation.incrementAndGet();");
+        invalidate.addBodyLine("map.remove(key);");
+        invalidate.addBodyLine("}");
+        topLevelClass.addMethod(invalidate);
+
+        Method clear = new Method("clear");
+        clear.setVisibility(JavaVisibility.PUBLIC);
+        clear.addBodyLine("synchronized (map) {");
+        clear.addBodyLine("generation.incrementAndGet();");
+        clear.addBodyLine("map.clear();");
+        clear.addBodyLine("}");
+        topLevelClass.addMethod(clear);
+
+        answer.add(new GeneratedJavaFile(topLevelClass,
+                context.getJavaClientGeneratorConfiguration().getTargetProject(),
+                context.getProperty(PropertyRegistry.CONTEXT_JAVA_FILE_ENCODING),
+                context.getJavaFormatter()));
+        return answer;
+    }
+}
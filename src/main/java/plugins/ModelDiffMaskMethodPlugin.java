@@ -0,0 +1,194 @@
+package plugins;
+
+import org.mybatis.generator.api.IntrospectedColumn;
+import org.mybatis.generator.api.IntrospectedTable;
+import org.mybatis.generator.api.PluginAdapter;
+import org.mybatis.generator.api.dom.java.*;
+import org.mybatis.generator.internal.util.JavaBeansUtil;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.StringTokenizer;
+import java.util.stream.Collectors;
+
+import static org.mybatis.generator.internal.util.StringUtility.isTrue;
+
+/**
+ * Modelに2つのレコードの差分をビットマスクで返す比較メソッドを追加する
+ * <p>
+ * 比較対象の項目に 0 から順に番号を振り、値が異なる項目のビットを立てて返す。(差分がなければ 0)
+ * getter の値をローカル変数に受けずに直接比較するため、オブジェクトの生成やアンボクシングは発生しない。
+ * byte[] は Arrays.equals、BigDecimal は compareTo(スケールの違いは無視)、それ以外は Objects.equals で比較する。
+ * 比較対象が 64項目を超える場合は long[] を返す。
+ * ModelIsValueChangedMethodPlugin の代わりに利用する。(除外する項目はプロパティで指定する)
+ *
+ * <pre>
+ * {@code public static long diffMask(Model a, Model b);}
+ * </pre>
+ * <pre>
+ * {@code
+ * long mask = 0L;
+ * if (!Objects.equals(a.getName(), b.getName())) {
+ *     mask |= 1L << 0;
+ * }
+ * ...
+ * return mask;
+ * }
+ * </pre>
+ * <p>
+ * (プロパティ)
+ * excludeColumns: 比較対象外のカラム名(カンマ区切り)
+ * emptyStringAsNull: String の項目で null と "" を同じ値とみなすか(デフォルト false)
+ *
+ * @code <plugin type="plugins.ModelDiffMaskMethodPlugin">
+ * <property name="excludeColumns" value="created_by, created_date, last_modified_by, last_modified_date"/>
+ * <property name="emptyStringAsNull" value="true"/>
+ * </plugin>
+ */
+public class ModelDiffMaskMethodPlugin extends PluginAdapter {
+
+    /**
+     * プロパティ名
+     */
+    private static final String PROPERTY_EXCLUDE_COLUMNS = "excludeColumns";
+    private static final String PROPERTY_EMPTY_STRING_AS_NULL = "emptyStringAsNull";
+
+    /**
+     * 比較対象外のカラムのリスト
+     */
+    private final List<String> excludeColumnList = new ArrayList<>();
+    private boolean emptyStringAsNull;
+
+    @Override
+    public boolean validate(List<String> warnings) {
+        String columns = properties.getProperty(PROPERTY_EXCLUDE_COLUMNS);
+        if (columns != null) {
+            StringTokenizer st = new StringTokenizer(columns, ", ", false);
+            while (st.hasMoreTokens()) {
+                excludeColumnList.add(st.nextToken());
+            }
+        }
+        emptyStringAsNull = isTrue(properties.getProperty(PROPERTY_EMPTY_STRING_AS_NULL));
+        return true;
+    }
+
+    /**
+     * 比較対象の項目、リストの添字がビットの番号
+     */
+    private List<IntrospectedColumn> getDiffColumns(IntrospectedTable introspectedTable) {
+        return introspectedTable.getAllColumns().stream()
+                .filter(c -> excludeColumnList.stream().noneMatch(e -> e.equalsIgnoreCase(c.getActualColumnName())))
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * 値が異なる場合に true になる条件
+     */
+    private String getDiffCondition(IntrospectedColumn column, TopLevelClass topLevelClass) {
+        String getter = JavaBeansUtil.getGetterMethodName(column.getJavaProperty(), column.getFullyQualifiedJavaType()) + "()";
+        String a = "a." + getter;
+        String b = "b." + getter;
+        switch (column.getFullyQualifiedJavaType().getFullyQualifiedName()) {
+            case "byte[]":
+                topLevelClass.addImportedType("java.util.Arrays");
+                return "!Arrays.equals(" + a + ", " + b + ")";
+            case "java.math.BigDecimal":
+                return "!equalsDecimal(" + a + ", " + b + ")";
+            case "java.lang.String":
+                if (emptyStringAsNull) {
+                    return "!equalsEmptyAsNull(" + a + ", " + b + ")";
+                }
+                break;
+            default:
+                break;
+        }
+        topLevelClass.addImportedType("java.util.Objects");
+        return "!Objects.equals(" + a + ", " + b + ")";
+    }
+
+    private boolean hasType(List<IntrospectedColumn> columns, String type) {
+        return columns.stream().anyMatch(c -> type.equals(c.getFullyQualifiedJavaType().getFullyQualifiedName()));
+    }
+
+    private void addDiffMaskMethod(TopLevelClass topLevelClass, IntrospectedTable introspectedTable) {
+        List<IntrospectedColumn> columns = getDiffColumns(introspectedTable);
+        if (columns.isEmpty()) {
+            return;
+        }
+        boolean array = columns.size() > Long.SIZE;
+
+        Method method = new Method("diffMask");
+        method.setVisibility(JavaVisibility.PUBLIC);
+        method.setStatic(true);
+        method.setReturnType(new FullyQualifiedJavaType(array ? "long[]" : "long"));
+        method.addParameter(new Parameter(topLevelClass.getType(), "a"));
+        method.addParameter(new Parameter(topLevelClass.getType(), "b"));
+        if (array) {
+            method.addBodyLine("long[] mask = new long[" + ((columns.size() + Long.SIZE - 1) / Long.SIZE) + "];");
+        } else {
+            method.addBodyLine("long mask = 0L;");
+        }
+        for (int i = 0; i < columns.size(); i++) {
+            method.addBodyLine("if (" + getDiffCondition(columns.get(i), topLevelClass) + ") {");
+            if (array) {
+                method.addBodyLine("mask[" + (i / Long.SIZE) + "] |= 1L << " + (i % Long.SIZE) + ";");
+            } else {
+                method.addBodyLine("mask |= 1L << " + i + ";");
+            }
+            method.addBodyLine("}");
+        }
+        method.addBodyLine("return mask;");
+        topLevelClass.addMethod(method);
+
+        if (hasType(columns, "java.math.BigDecimal")) {
+            // 1.0 と 1.00 は同じ値とみなす
+            Method equalsDecimal = new Method("equalsDecimal");
+            equalsDecimal.setVisibility(JavaVisibility.PRIVATE);
+            equalsDecimal.setStatic(true);
+            equalsDecimal.setReturnType(FullyQualifiedJavaType.getBooleanPrimitiveInstance());
+            equalsDecimal.addParameter(new Parameter(new FullyQualifiedJavaType("java.math.BigDecimal"), "a"));
+            equalsDecimal.addParameter(new Parameter(new FullyQualifiedJavaType("java.math.BigDecimal"), "b"));
+            equalsDecimal.addBodyLine("return a == null ? b == null : b != null && a.compareTo(b) == 0;");
+            topLevelClass.addMethod(equalsDecimal);
+        }
+
+        if (emptyStringAsNull && hasType(columns, "java.lang.String")) {
+            // null と "" は同じ値とみなす
+            Method equalsEmptyAsNull = new Method("equalsEmptyAsNull");
+            equalsEmptyAsNull.setVisibility(JavaVisibility.PRIVATE);
+            equalsEmptyAsNull.setStatic(true);
+            equalsEmptyAsNull.setReturnType(FullyQualifiedJavaType.getBooleanPrimitiveInstance());
+            equalsEmptyAsNull.addParameter(new Parameter(FullyQualifiedJavaType.getStringInstance(), "a"));
+            equalsEmptyAsNull.addParameter(new Parameter(FullyQualifiedJavaType.getStringInstance(), "b"));
+            equalsEmptyAsNull.addBodyLine("return a == null || a.isEmpty() ? b == null || b.isEmpty() : a.equals(b);");
+            topLevelClass.addMethod(equalsEmptyAsNull);
+        }
+    }
+
+    /**
+     * 全項目を持つクラス(WithBLOBs、なければ Model)にだけ追加する
+     */
+    private void addIfAllFieldsClass(TopLevelClass topLevelClass, IntrospectedTable introspectedTable) {
+        if (topLevelClass.getType().equals(introspectedTable.getRules().calculateAllFieldsClass())) {
+            addDiffMaskMethod(topLevelClass, introspectedTable);
+        }
+    }
+
+    @Override
+    public boolean modelPrimaryKeyClassGenerated(TopLevelClass topLevelClass, IntrospectedTable introspectedTable) {
+        addIfAllFieldsClass(topLevelClass, introspectedTable);
+        return true;
+    }
+
+    @Override
+    public boolean modelBaseRecordClassGenerated(TopLevelClass topLevelClass, IntrospectedTable introspectedTable) {
+        addIfAllFieldsClass(topLevelClass, introspectedTable);
+        return true;
+    }
+
+    @Override
+    public boolean modelRecordWithBLOBsClassGenerated(TopLevelClass topLevelClass, IntrospectedTable introspectedTable) {
+        addIfAllFieldsClass(topLevelClass, introspectedTable);
+        return true;
+    }
+}
@@ -0,0 +1,407 @@
+package plugins;
+
+import org.mybatis.generator.api.GeneratedJavaFile;
+import org.mybatis.generator.api.IntrospectedColumn;
+import org.mybatis.generator.api.IntrospectedTable;
+import org.mybatis.generator.api.PluginAdapter;
+import org.mybatis.generator.api.dom.java.*;
+import org.mybatis.generator.api.dom.xml.Attribute;
+import org.mybatis.generator.api.dom.xml.Document;
+import org.mybatis.generator.api.dom.xml.TextElement;
+import org.mybatis.generator.api.dom.xml.XmlElement;
+import org.mybatis.generator.codegen.mybatis3.ListUtilities;
+import org.mybatis.generator.codegen.mybatis3.MyBatis3FormattingUtilities;
+import org.mybatis.generator.config.PropertyRegistry;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.StringTokenizer;
+
+/**
+ * Modelのsetterで変更された項目をビットマスクに記録し、変更された項目だけを更新するメソッドを追加する
+ * <p>
+ * 主キー以外の項目に 0 から順に番号を振り、setter で dirtyMask の対応するビットを立てる。
+ * (64項目以下は long、超える場合は long[])
+ * updateByPrimaryKeySelective と違い null への変更も更新でき、旧レコードとの比較も不要になる。
+ * updateDirtyByPrimaryKey は変更された項目だけを更新し、更新後に dirtyMask をクリアする。(変更がない場合は SQL を実行せず 0 を返す)
+ * updateDirtyColumnsByPrimaryKey を変更がない Model で直接呼び出した場合は、set 句が空にならない様に先頭の項目を同じ値で更新する。
+ * <p>
+ * MyBatis は検索結果を setter で設定するため、検索直後は値のある項目が変更ありになる。
+ * Mapperインタフェースと同じパッケージに作成する DirtyTrackingInterceptor を MyBatis に登録すると、
+ * 検索結果(List の要素)の dirtyMask をクリアする。(Cursor、Page.rows 等のネストした結果は対象外のため clearDirty() を呼ぶこと)
+ * Model は Modelと同じパッケージに作成する DirtyTracking インタフェースを実装する。
+ * (DirtyTracking、DirtyTrackingInterceptor は dirtyMask を追加した Model がある場合だけ作成する)
+ * setter を削除するプラグイン(ModelLombokPlugin)とは併用できない。
+ * <p>
+ * updateByPrimaryKey 等のSQLは SqlUpdateVersionPlusOnePlugin で書き換えるが、このプラグインのSQLは書き換えないため、
+ * versionColumns を指定すると更新番号を変更の有無に関係なく同じ式で +1 する。
+ *
+ * <pre>
+ * {@code public boolean isDirty();}                                -- Model
+ * {@code public boolean isDirty(int column);}                      -- Model
+ * {@code public void clearDirty();}                                -- Model
+ * {@code int updateDirtyColumnsByPrimaryKey(Model row);}           -- Mapper
+ * {@code default int updateDirtyByPrimaryKey(Model row);}          -- Mapper
+ * </pre>
+ * <pre>
+ * {@code
+ * update table
+ * <set>
+ *   <if test="_parameter.isDirty(0)">a = #{a},</if>
+ *   <if test="_parameter.isDirty(1)">b = #{b},</if>
+ *   version = case when version = 99999999 then 1 else version + 1 end,    -- versionColumns を指定した場合
+ *   <if test="!_parameter.isDirty()">a = a,</if>                          -- versionColumns を指定しない場合
+ * </set>
+ * where pk = #{pk}
+ * }
+ * </pre>
+ * <pre>
+ * {@code
+ * <plugins>                                                                  -- mybatis-config.xml
+ *   <plugin interceptor="com.example.repository.DirtyTrackingInterceptor"/>
+ * </plugins>
+ * }
+ * </pre>
+ * <p>
+ * (プロパティ)
+ * versionColumns: 更新番号のカラム名(SqlUpdateVersionPlusOnePlugin と同じ)
+ * maxVersionNum: 更新番号の最大値、超えると1に戻す(デフォルト 99999999)
+ *
+ * @code <plugin type="plugins.ModelDirtyTrackingPlugin">
+ * <property name="versionColumns" value="version, lock_version"/>
+ * </plugin>
+ */
+public class ModelDirtyTrackingPlugin extends PluginAdapter {
+
+    private static final String DIRTY_MASK = "dirtyMask";
+    private static final String DIRTY_TRACKING = "DirtyTracking";
+    private static final String DIRTY_TRACKING_INTERCEPTOR = "DirtyTrackingInterceptor";
+
+    /**
+     * プロパティ名
+     */
+    private static final String PROPERTY_VERSION_COLUMNS = "versionColumns";
+    private static final String PROPERTY_MAX_VERSION_NUM = "maxVersionNum";
+
+    private final List<String> versionColumnList = new ArrayList<>();
+    private String maxVersionNum = "99999999";
+
+    /**
+     * dirtyMask を追加した Model があるか(DirtyTracking、DirtyTrackingInterceptor を作成するか)
+     */
+    private boolean maskAdded;
+
+    @Override
+    public boolean validate(List<String> warnings) {
+
+        String columns = properties.getProperty(PROPERTY_VERSION_COLUMNS);
+        if (columns != null) {
+            StringTokenizer st = new StringTokenizer(columns, ", ", false);
+            while (st.hasMoreTokens()) {
+                versionColumnList.add(st.nextToken());
+            }
+        }
+
+        String num = properties.getProperty(PROPERTY_MAX_VERSION_NUM);
+        if (num != null) {
+            maxVersionNum = num;
+        }
+
+        return true;
+    }
+
+    private String getDirtyTrackingType() {
+        return context.getJavaModelGeneratorConfiguration().getTargetPackage() + "." + DIRTY_TRACKING;
+    }
+
+    /**
+     * 指定されたカラムがテーブルに存在するか確認し、最初に見つかった変更を記録する項目を返す。
+     *
+     * @param introspectedTable introspectedTable
+     * @return 更新番号のカラム(見つからない場合は null)
+     */
+    private IntrospectedColumn findVersionColumn(IntrospectedTable introspectedTable) {
+        for (String colName : versionColumnList) {
+            for (IntrospectedColumn col : getTrackedColumns(introspectedTable)) {
+                if (col.getActualColumnName().equals(colName)) {
+                    return col;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 変更を記録する項目(主キー、GeneratedAlways項目を除く)、リストの添字がビットの番号
+     */
+    private List<IntrospectedColumn> getTrackedColumns(IntrospectedTable introspectedTable) {
+        return ListUtilities.removeGeneratedAlwaysColumns(introspectedTable.getNonPrimaryKeyColumns());
+    }
+
+    private boolean useArray(IntrospectedTable introspectedTable) {
+        return getTrackedColumns(introspectedTable).size() > Long.SIZE;
+    }
+
+    /**
+     * dirtyMask を持つクラス(主キー以外の項目を持つ最上位のクラス)か判定する
+     */
+    private boolean isMaskOwner(IntrospectedTable introspectedTable, boolean baseRecord) {
+        return baseRecord == introspectedTable.getRules().generateBaseRecordClass();
+    }
+
+    private void addDirtyMask(TopLevelClass topLevelClass, IntrospectedTable introspectedTable) {
+        int size = getTrackedColumns(introspectedTable).size();
+        if (size == 0) {
+            return;
+        }
+        boolean array = useArray(introspectedTable);
+        maskAdded = true;
+
+        Field mask = new Field(DIRTY_MASK, new FullyQualifiedJavaType(array ? "long[]" : "long"));
+        mask.setVisibility(JavaVisibility.PROTECTED);
+        if (array) {
+            mask.setFinal(true);
+            mask.setInitializationString("new long[" + ((size + Long.SIZE - 1) / Long.SIZE) + "]");
+        }
+        topLevelClass.addField(mask);
+        topLevelClass.addImportedType(getDirtyTrackingType());
+        topLevelClass.addSuperInterface(new FullyQualifiedJavaType(getDirtyTrackingType()));
+
+        // いずれかの項目が変更されたか
+        Method isDirtyAny = new Method("isDirty");
+        isDirtyAny.setVisibility(JavaVisibility.PUBLIC);
+        isDirtyAny.setReturnType(FullyQualifiedJavaType.getBooleanPrimitiveInstance());
+        isDirtyAny.addAnnotation("@Override");
+        if (array) {
+            isDirtyAny.addBodyLine("for (long bits : " + DIRTY_MASK + ") {");
+            isDirtyAny.addBodyLine("if (bits != 0) {");
+            isDirtyAny.addBodyLine("return true;");
+            isDirtyAny.addBodyLine("}");
+            isDirtyAny.addBodyLine("}");
+            isDirtyAny.addBodyLine("return false;");
+        } else {
+            isDirtyAny.addBodyLine("return " + DIRTY_MASK + " != 0;");
+        }
+        topLevelClass.addMethod(isDirtyAny);
+
+        // column番目の項目が変更されたか
+        Method isDirty = new Method("isDirty");
+        isDirty.setVisibility(JavaVisibility.PUBLIC);
+        isDirty.setReturnType(FullyQualifiedJavaType.getBooleanPrimitiveInstance());
+        isDirty.addParameter(new Parameter(FullyQualifiedJavaType.getIntInstance(), "column"));
+        if (array) {
+            isDirty.addBodyLine("return (" + DIRTY_MASK + "[column >>> 6] & (1L << column)) != 0;");
+        } else {
+            isDirty.addBodyLine("return (" + DIRTY_MASK + " & (1L << column)) != 0;");
+        }
+        topLevelClass.addMethod(isDirty);
+
+        Method clearDirty = new Method("clearDirty");
+        clearDirty.setVisibility(JavaVisibility.PUBLIC);
+        clearDirty.addAnnotation("@Override");
+        if (array) {
+            topLevelClass.addImportedType("java.util.Arrays");
+            clearDirty.addBodyLine("Arrays.fill(" + DIRTY_MASK + ", 0L);");
+        } else {
+            clearDirty.addBodyLine(DIRTY_MASK + " = 0L;");
+        }
+        topLevelClass.addMethod(clearDirty);
+    }
+
+    @Override
+    public boolean modelBaseRecordClassGenerated(TopLevelClass topLevelClass, IntrospectedTable introspectedTable) {
+        if (isMaskOwner(introspectedTable, true)) {
+            addDirtyMask(topLevelClass, introspectedTable);
+        }
+        return true;
+    }
+
+    @Override
+    public boolean modelRecordWithBLOBsClassGenerated(TopLevelClass topLevelClass, IntrospectedTable introspectedTable) {
+        if (isMaskOwner(introspectedTable, false)) {
+            addDirtyMask(topLevelClass, introspectedTable);
+        }
+        return true;
+    }
+
+    @Override
+    public boolean modelSetterMethodGenerated(Method method, TopLevelClass topLevelClass,
+                                              IntrospectedColumn introspectedColumn,
+                                              IntrospectedTable introspectedTable, ModelClassType modelClassType) {
+        int index = getTrackedColumns(introspectedTable).indexOf(introspectedColumn);
+        if (index < 0) {
+            return true;
+        }
+        // ex) dirtyMask |= 1L << 3;  dirtyMask[1] |= 1L << 2;
+        if (useArray(introspectedTable)) {
+            method.addBodyLine(DIRTY_MASK + "[" + (index / Long.SIZE) + "] |= 1L << " + (index % Long.SIZE) + ";");
+        } else {
+            method.addBodyLine(DIRTY_MASK + " |= 1L << " + index + ";");
+        }
+        return true;
+    }
+
+    private boolean isTarget(IntrospectedTable introspectedTable) {
+        return introspectedTable.hasPrimaryKeyColumns() && !getTrackedColumns(introspectedTable).isEmpty();
+    }
+
+    @Override
+    public boolean clientGenerated(Interface interfaze, IntrospectedTable introspectedTable) {
+
+        if (!isTarget(introspectedTable)) {
+            return true;
+        }
+
+        FullyQualifiedJavaType parameterType = introspectedTable.getRules().calculateAllFieldsClass();
+
+        // int updateDirtyColumnsByPrimaryKey(Model row);
+        Method updateMethod = new Method("updateDirtyColumnsByPrimaryKey");
+        updateMethod.setReturnType(FullyQualifiedJavaType.getIntInstance());
+        updateMethod.setVisibility(JavaVisibility.PUBLIC);
+        updateMethod.setAbstract(true);
+        updateMethod.addParameter(new Parameter(parameterType, "row"));
+        context.getCommentGenerator().addGeneralMethodComment(updateMethod, introspectedTable);
+
+        // default int updateDirtyByPrimaryKey(Model row) { 変更がある場合だけ更新し、dirtyMask をクリア }
+        Method dirtyMethod = new Method("updateDirtyByPrimaryKey");
+        dirtyMethod.setReturnType(FullyQualifiedJavaType.getIntInstance());
+        dirtyMethod.setVisibility(JavaVisibility.PUBLIC);
+        dirtyMethod.setDefault(true);
+        dirtyMethod.addParameter(new Parameter(parameterType, "row"));
+        dirtyMethod.addBodyLine("if (!row.isDirty()) {");
+        dirtyMethod.addBodyLine("return 0;");
+        dirtyMethod.addBodyLine("}");
+        dirtyMethod.addBodyLine("int count = updateDirtyColumnsByPrimaryKey(row);");
+        dirtyMethod.addBodyLine("row.clearDirty();");
+        dirtyMethod.addBodyLine("return count;");
+        context.getCommentGenerator().addGeneralMethodComment(dirtyMethod, introspectedTable);
+
+        interfaze.addImportedType(parameterType);
+        interfaze.addMethod(updateMethod);
+        interfaze.addMethod(dirtyMethod);
+
+        return true;
+    }
+
+    @Override
+    public boolean sqlMapDocumentGenerated(Document document, IntrospectedTable introspectedTable) {
+
+        if (!isTarget(introspectedTable)) {
+            return true;
+        }
+
+        XmlElement xmlElement = new XmlElement("update");
+        xmlElement.addAttribute(new Attribute("id", "updateDirtyColumnsByPrimaryKey"));
+        xmlElement.addAttribute(new Attribute("parameterType",
+                introspectedTable.getRules().calculateAllFieldsClass().getFullyQualifiedName()));
+        context.getCommentGenerator().addComment(xmlElement);
+
+        xmlElement.addElement(new TextElement("update " + introspectedTable.getFullyQualifiedTableNameAtRuntime()));
+
+        // <if test="_parameter.isDirty(0)">a = #{a},</if>
+        XmlElement set = new XmlElement("set");
+        List<IntrospectedColumn> columns = getTrackedColumns(introspectedTable);
+        IntrospectedColumn versionColumn = findVersionColumn(introspectedTable);
+        for (int i = 0; i < columns.size(); i++) {
+            IntrospectedColumn column = columns.get(i);
+            if (column == versionColumn) {
+                // version = case when version = max then 1 else version + 1 end,
+                String name = MyBatis3FormattingUtilities.getEscapedColumnName(column);
+                set.addElement(new TextElement(name + " = case when " + name + " = " + maxVersionNum
+                        + " then 1 else " + name + " + 1 end,"));
+                continue;
+            }
+            XmlElement ifDirty = new XmlElement("if");
+            ifDirty.addAttribute(new Attribute("test", "_parameter.isDirty(" + i + ")"));
+            ifDirty.addElement(new TextElement(MyBatis3FormattingUtilities.getEscapedColumnName(column)
+                    + " = " + MyBatis3FormattingUtilities.getParameterClause(column) + ","));
+            set.addElement(ifDirty);
+        }
+        if (versionColumn == null) {
+            // 変更がない場合に set 句が空にならない様にする <if test="!_parameter.isDirty()">a = a,</if>
+            String name = MyBatis3FormattingUtilities.getEscapedColumnName(columns.get(0));
+            XmlElement ifClean = new XmlElement("if");
+            ifClean.addAttribute(new Attribute("test", "!_parameter.isDirty()"));
+            ifClean.addElement(new TextElement(name + " = " + name + ","));
+            set.addElement(ifClean);
+        }
+        xmlElement.addElement(set);
+        xmlElement.addElement(new TextElement(PluginUtil.getPrimaryKeyWhereClause(introspectedTable)));
+
+        // XMLに新規メソッド用のSQLを追加
+        document.getRootElement().getElements().add(xmlElement);
+
+        return true;
+    }
+
+    @Override
+    public List<GeneratedJavaFile> contextGenerateAdditionalJavaFiles() {
+
+        List<GeneratedJavaFile> answer = new ArrayList<>();
+        if (!maskAdded) {
+            return answer;
+        }
+
+        // public interface DirtyTracking { boolean isDirty(); void clearDirty(); }
+        Interface dirtyTracking = new Interface(getDirtyTrackingType());
+        dirtyTracking.setVisibility(JavaVisibility.PUBLIC);
+        context.getCommentGenerator().addJavaFileComment(dirtyTracking);
+
+        Method isDirty = new Method("isDirty");
+        isDirty.setAbstract(true);
+        isDirty.setReturnType(FullyQualifiedJavaType.getBooleanPrimitiveInstance());
+        dirtyTracking.addMethod(isDirty);
+
+        Method clearDirty = new Method("clearDirty");
+        clearDirty.setAbstract(true);
+        dirtyTracking.addMethod(clearDirty);
+
+        answer.add(new GeneratedJavaFile(dirtyTracking,
+                context.getJavaModelGeneratorConfiguration().getTargetProject(),
+                context.getProperty(PropertyRegistry.CONTEXT_JAVA_FILE_ENCODING),
+                context.getJavaFormatter()));
+
+        if (context.getJavaClientGeneratorConfiguration() == null) {
+            return answer;
+        }
+
+        // 検索結果の dirtyMask をクリアする Interceptor
+        TopLevelClass interceptor = new TopLevelClass(
+                context.getJavaClientGeneratorConfiguration().getTargetPackage() + "." + DIRTY_TRACKING_INTERCEPTOR);
+        interceptor.setVisibility(JavaVisibility.PUBLIC);
+        context.getCommentGenerator().addJavaFileComment(interceptor);
+        interceptor.addImportedType(getDirtyTrackingType());
+        interceptor.addImportedType("java.sql.Statement");
+        interceptor.addImportedType("java.util.List");
+        interceptor.addImportedType("org.apache.ibatis.executor.resultset.ResultSetHandler");
+        interceptor.addImportedType("org.apache.ibatis.plugin.Interceptor");
+        interceptor.addImportedType("org.apache.ibatis.plugin.Intercepts");
+        interceptor.addImportedType("org.apache.ibatis.plugin.Invocation");
+        interceptor.addImportedType("org.apache.ibatis.plugin.Signature");
+        interceptor.addSuperInterface(new FullyQualifiedJavaType("org.apache.ibatis.plugin.Interceptor"));
+        interceptor.addAnnotation("@Intercepts(@Signature(type = ResultSetHandler.class, method = \"handleResultSets\", args = Statement.class))");
+
+        Method intercept = new Method("intercept");
+        intercept.setVisibility(JavaVisibility.PUBLIC);
+        intercept.addAnnotation("@Override");
+        intercept.setReturnType(FullyQualifiedJavaType.getObjectInstance());
+        intercept.addParameter(new Parameter(new FullyQualifiedJavaType("org.apache.ibatis.plugin.Invocation"), "invocation"));
+        intercept.addException(new FullyQualifiedJavaType("java.lang.Throwable"));
+        intercept.addBodyLine("Object result = invocation.proceed();");
+        intercept.addBodyLine("if (result instanceof List) {");
+        intercept.addBodyLine("for (Object row : (List<?>) result) {");
+        intercept.addBodyLine("if (row instanceof " + DIRTY_TRACKING + ") {");
+        intercept.addBodyLine("((" + DIRTY_TRACKING + ") row).clearDirty();");
+        intercept.addBodyLine("}");
+        intercept.addBodyLine("}");
+        intercept.addBodyLine("}");
+        intercept.addBodyLine("return result;");
+        interceptor.addMethod(intercept);
+
+        answer.add(new GeneratedJavaFile(interceptor,
+                context.getJavaClientGeneratorConfiguration().getTargetProject(),
+                context.getProperty(PropertyRegistry.CONTEXT_JAVA_FILE_ENCODING),
+                context.getJavaFormatter()));
+        return answer;
+    }
+}
@@ -33,6 +33,8 @@ import org.mybatis.generator.api.dom.java.TopLevelClass;
  * isValueChangedSelective()
  * }
  * </pre>
+ * <p>
+ * 変更された項目だけを更新する場合は ModelDirtyTrackingPlugin を利用すること。
  */
 @Deprecated
 public class ModelIsValueChangedMethodPlugin extends PluginAdapter {
@@ -0,0 +1,484 @@
+package plugins;
+
+import org.mybatis.generator.api.IntrospectedColumn;
+import org.mybatis.generator.api.IntrospectedTable;
+import org.mybatis.generator.api.dom.java.FullyQualifiedJavaType;
+import org.mybatis.generator.api.dom.java.Interface;
+import org.mybatis.generator.api.dom.java.Method;
+import org.mybatis.generator.api.dom.java.Parameter;
+import org.mybatis.generator.api.dom.xml.*;
+import org.mybatis.generator.codegen.mybatis3.MyBatis3FormattingUtilities;
+import org.mybatis.generator.internal.util.JavaBeansUtil;
+import org.mybatis.generator.logging.Log;
+import org.mybatis.generator.logging.LogFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.StringTokenizer;
+import java.util.function.Function;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+/**
+ * 複数のプラグインで使う共通処理
+ * <p>
+ * 主キー・Model の型、SQL の部品、プロパティの解析等、プラグインの設定に依存しない処理をまとめる。
+ * プラグインは他のプラグインのクラスを参照せず、共通の処理はこのクラスに追加する。
+ * (併用しないプラグインのクラスに依存しないため)
+ */
+public final class PluginUtil {
+
+    private static final Log LOG = LogFactory.getLog(PluginUtil.class);
+
+    private static final String ARRAY_TYPE_HANDLER = "org.apache.ibatis.type.ArrayTypeHandler";
+
+    private PluginUtil() {
+    }
+
+    /**
+     * 主キーを1つの型(getKeyType)で表せるか判定する
+     *
+     * @param introspectedTable introspectedTable
+     * @return 主キーがない場合、複合主キーでPrimaryKeyクラスを作らない場合(defaultModelType="flat" 等)は false
+     */
+    public static boolean hasKeyType(IntrospectedTable introspectedTable) {
+        return introspectedTable.hasPrimaryKeyColumns()
+                && (introspectedTable.getRules().generatePrimaryKeyClass()
+                || introspectedTable.getPrimaryKeyColumns().size() == 1);
+    }
+
+    /**
+     * 主キーを1つの型(getKeyType)で表せるか判定し、複合主キーで表せない場合は警告を出力する
+     * (flat の複合主キーで getKeyType を使うと、先頭の主キーだけの型になるため)
+     *
+     * @param introspectedTable introspectedTable
+     * @param pluginName        警告に出力するプラグイン名
+     * @return 主キーがない場合、複合主キーでPrimaryKeyクラスを作らない場合は false
+     */
+    public static boolean hasKeyType(IntrospectedTable introspectedTable, String pluginName) {
+        if (hasKeyType(introspectedTable)) {
+            return true;
+        }
+        if (introspectedTable.hasPrimaryKeyColumns()) {
+            LOG.warn("Table " + introspectedTable.getFullyQualifiedTable()
+                    + " has a composite primary key without a primary key class, skipped by plugin " + pluginName);
+        }
+        return false;
+    }
+
+    /**
+     * 主キーの型(複合主キーの場合はPrimaryKeyクラス、getPrimaryKey()の戻り値と同じ)
+     * 複合主キーでPrimaryKeyクラスを作らない場合は使えないため、hasKeyType で判定してから呼び出すこと。
+     *
+     * @param introspectedTable introspectedTable
+     * @return 主キーの型
+     */
+    public static FullyQualifiedJavaType getKeyType(IntrospectedTable introspectedTable) {
+        if (introspectedTable.getRules().generatePrimaryKeyClass()) {
+            return new FullyQualifiedJavaType(introspectedTable.getPrimaryKeyType());
+        }
+        return introspectedTable.getPrimaryKeyColumns().get(0).getFullyQualifiedJavaType();
+    }
+
+    /**
+     * BaseResultMapの型(selectByExampleと同じ)
+     *
+     * @param introspectedTable introspectedTable
+     * @return Modelの型
+     */
+    public static FullyQualifiedJavaType getRecordType(IntrospectedTable introspectedTable) {
+        if (introspectedTable.getRules().generateBaseRecordClass()) {
+            return new FullyQualifiedJavaType(introspectedTable.getBaseRecordType());
+        }
+        return new FullyQualifiedJavaType(introspectedTable.getPrimaryKeyType());
+    }
+
+    /**
+     * {@code <include refid="Base_Column_List" />}
+     *
+     * @param introspectedTable introspectedTable
+     * @return include要素
+     */
+    public static XmlElement getBaseColumnListElement(IntrospectedTable introspectedTable) {
+        XmlElement include = new XmlElement("include");
+        include.addAttribute(new Attribute("refid", introspectedTable.getBaseColumnListId()));
+        return include;
+    }
+
+    /**
+     * Update_By_Example_Where_Clause(example.oredCriteria を参照)の条件部分を流用し、
+     * 他の条件と and で結合できる形(and ( ... ))にする。
+     *
+     * @param document          document
+     * @param introspectedTable introspectedTable
+     * @return 条件、Update_By_Example_Where_Clauseが無い場合はnull
+     */
+    public static XmlElement createExampleCriteriaElement(Document document, IntrospectedTable introspectedTable) {
+        String id = introspectedTable.getMyBatis3UpdateByExampleWhereClauseId();
+        for (VisitableElement v : document.getRootElement().getElements()) {
+            if (!(v instanceof XmlElement)) {
+                continue;
+            }
+            XmlElement x = (XmlElement) v;
+            boolean isTarget = "sql".equals(x.getName()) && x.getAttributes().stream()
+                    .anyMatch(a -> "id".equals(a.getName()) && id.equals(a.getValue()));
+            if (!isTarget) {
+                continue;
+            }
+            // <sql><where><foreach collection="example.oredCriteria" ...>
+            for (VisitableElement w : x.getElements()) {
+                if (w instanceof XmlElement && "where".equals(((XmlElement) w).getName())) {
+                    XmlElement trim = new XmlElement("trim");
+                    trim.addAttribute(new Attribute("prefix", "and ("));
+                    trim.addAttribute(new Attribute("suffix", ")"));
+                    ((XmlElement) w).getElements().forEach(trim::addElement);
+                    return trim;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * selectByPrimaryKeyと同じ引数を追加する
+     * (複合主キーは PrimaryKeyクラス、PrimaryKeyクラスが無い複合主キーは @Param 付きでカラム毎)
+     *
+     * @param method            method
+     * @param interfaze         interfaze
+     * @param introspectedTable introspectedTable
+     */
+    public static void addPrimaryKeyParameters(Method method, Interface interfaze, IntrospectedTable introspectedTable) {
+        if (introspectedTable.getRules().generatePrimaryKeyClass()) {
+            FullyQualifiedJavaType keyType = new FullyQualifiedJavaType(introspectedTable.getPrimaryKeyType());
+            method.addParameter(new Parameter(keyType, "key"));
+            interfaze.addImportedType(keyType);
+            return;
+        }
+        boolean multiple = introspectedTable.getPrimaryKeyColumns().size() > 1;
+        for (IntrospectedColumn pk : introspectedTable.getPrimaryKeyColumns()) {
+            Parameter parameter = new Parameter(pk.getFullyQualifiedJavaType(), pk.getJavaProperty());
+            if (multiple) {
+                parameter.addAnnotation("@Param(\"" + pk.getJavaProperty() + "\")");
+                interfaze.addImportedType(new FullyQualifiedJavaType("org.apache.ibatis.annotations.Param"));
+            }
+            method.addParameter(parameter);
+            interfaze.addImportedType(pk.getFullyQualifiedJavaType());
+        }
+    }
+
+    /**
+     * selectByPrimaryKeyと同じ parameterType
+     *
+     * @param introspectedTable introspectedTable
+     * @return parameterType
+     */
+    public static String getPrimaryKeyParameterType(IntrospectedTable introspectedTable) {
+        if (introspectedTable.getRules().generatePrimaryKeyClass()) {
+            return introspectedTable.getPrimaryKeyType();
+        }
+        if (introspectedTable.getPrimaryKeyColumns().size() > 1) {
+            return "map";
+        }
+        return introspectedTable.getPrimaryKeyColumns().get(0).getFullyQualifiedJavaType().getFullyQualifiedName();
+    }
+
+    /**
+     * selectByPrimaryKeyと同じ条件(where pk1 = #{pk1} and pk2 = #{pk2})
+     *
+     * @param introspectedTable introspectedTable
+     * @return 条件
+     */
+    public static String getPrimaryKeyWhereClause(IntrospectedTable introspectedTable) {
+        return "where " + introspectedTable.getPrimaryKeyColumns().stream()
+                .map(c -> MyBatis3FormattingUtilities.getAliasedEscapedColumnName(c)
+                        + " = " + MyBatis3FormattingUtilities.getParameterClause(c))
+                .collect(Collectors.joining(" and "));
+    }
+
+    /**
+     * selectByExampleと同じ条件、並び順を追加する
+     * (Example_Where_Clause、order by ${orderByClause})
+     *
+     * @param element           select要素
+     * @param introspectedTable introspectedTable
+     */
+    public static void addExampleWhereElements(XmlElement element, IntrospectedTable introspectedTable) {
+        XmlElement ifWhere = new XmlElement("if");
+        ifWhere.addAttribute(new Attribute("test", "_parameter != null"));
+        XmlElement include = new XmlElement("include");
+        include.addAttribute(new Attribute("refid", introspectedTable.getExampleWhereClauseId()));
+        ifWhere.addElement(include);
+        element.addElement(ifWhere);
+
+        XmlElement ifOrderBy = new XmlElement("if");
+        ifOrderBy.addAttribute(new Attribute("test", "orderByClause != null"));
+        ifOrderBy.addElement(new TextElement("order by ${orderByClause}"));
+        element.addElement(ifOrderBy);
+    }
+
+    /**
+     * 主キーの配列の型(String -> String[])
+     *
+     * @param column column
+     * @return 配列の型
+     */
+    public static FullyQualifiedJavaType getArrayType(IntrospectedColumn column) {
+        return new FullyQualifiedJavaType(column.getFullyQualifiedJavaType().getFullyQualifiedName() + "[]");
+    }
+
+    /**
+     * 主キーの配列のパラメータを追加する(単一主キーは keys、複合主キーはカラム毎)
+     *
+     * @param method            method
+     * @param introspectedTable introspectedTable
+     */
+    public static void addPrimaryKeyArrayParameters(Method method, IntrospectedTable introspectedTable) {
+        List<IntrospectedColumn> pkColumns = introspectedTable.getPrimaryKeyColumns();
+        if (introspectedTable.getRules().generatePrimaryKeyClass()) {
+            for (IntrospectedColumn column : pkColumns) {
+                Parameter parameter = new Parameter(getArrayType(column), column.getJavaProperty());
+                parameter.addAnnotation("@Param(\"" + column.getJavaProperty() + "\")");
+                method.addParameter(parameter);
+            }
+        } else {
+            Parameter parameter = new Parameter(getArrayType(pkColumns.get(0)), "keys");
+            parameter.addAnnotation("@Param(\"keys\")");
+            method.addParameter(parameter);
+        }
+    }
+
+    /**
+     * Collection&lt;Key&gt; keys をカラム毎の配列に詰め替える処理を追加する(複合主キーの場合のみ)
+     *
+     * @param method            method
+     * @param introspectedTable introspectedTable
+     */
+    public static void addPrimaryKeyArrayBodyLines(Method method, IntrospectedTable introspectedTable) {
+        if (!introspectedTable.getRules().generatePrimaryKeyClass()) {
+            return;
+        }
+        List<IntrospectedColumn> pkColumns = introspectedTable.getPrimaryKeyColumns();
+        for (IntrospectedColumn column : pkColumns) {
+            String type = column.getFullyQualifiedJavaType().getShortName();
+            method.addBodyLine(type + "[] " + column.getJavaProperty() + "Array = new " + type + "[keys.size()];");
+        }
+        method.addBodyLine("int i = 0;");
+        method.addBodyLine("for (" + getKeyType(introspectedTable).getShortName() + " key : keys) {");
+        for (IntrospectedColumn column : pkColumns) {
+            method.addBodyLine(column.getJavaProperty() + "Array[i] = key."
+                    + JavaBeansUtil.getGetterMethodName(column.getJavaProperty(), column.getFullyQualifiedJavaType()) + "();");
+        }
+        method.addBodyLine("i++;");
+        method.addBodyLine("}");
+    }
+
+    /**
+     * addPrimaryKeyArrayParameters のメソッドを呼び出す引数
+     *
+     * @param introspectedTable introspectedTable
+     * @return 引数(keys.toArray(new String[0]) または usernameArray, statusArray)
+     */
+    public static String getPrimaryKeyArrayArguments(IntrospectedTable introspectedTable) {
+        if (introspectedTable.getRules().generatePrimaryKeyClass()) {
+            return introspectedTable.getPrimaryKeyColumns().stream()
+                    .map(c -> c.getJavaProperty() + "Array")
+                    .collect(Collectors.joining(", "));
+        }
+        return "keys.toArray(new "
+                + getKeyType(introspectedTable).getShortName() + "[0])";
+    }
+
+    /**
+     * 主キーの配列による条件
+     * <pre>
+     * {@code
+     * pk = any(#{keys}::varchar[])
+     * (pk1, pk2) in (select * from unnest(#{pk1}::varchar[], #{pk2}::int8[]))
+     * }
+     * </pre>
+     *
+     * @param introspectedTable introspectedTable
+     * @param columnName        カラム名の編集(別名付き、別名なし)
+     * @return 条件
+     */
+    public static String getPrimaryKeyArrayCondition(IntrospectedTable introspectedTable,
+                                                     Function<IntrospectedColumn, String> columnName) {
+        List<IntrospectedColumn> pkColumns = introspectedTable.getPrimaryKeyColumns();
+        if (introspectedTable.getRules().generatePrimaryKeyClass()) {
+            return "(" + pkColumns.stream()
+                    .map(columnName)
+                    .collect(Collectors.joining(", "))
+                    + ") in (select * from unnest("
+                    + pkColumns.stream()
+                    .map(c -> getArrayParameterClause(c, c.getJavaProperty()))
+                    .collect(Collectors.joining(", "))
+                    + "))";
+        }
+        IntrospectedColumn pk = pkColumns.get(0);
+        return columnName.apply(pk) + " = any(" + getArrayParameterClause(pk, "keys") + ")";
+    }
+
+    /**
+     * 配列のバインド変数(#{name,typeHandler=ArrayTypeHandler}::type[])
+     *
+     * @param column        column
+     * @param parameterName パラメータ名
+     * @return バインド変数
+     */
+    public static String getArrayParameterClause(IntrospectedColumn column, String parameterName) {
+        return "#{" + parameterName + ",typeHandler=" + ARRAY_TYPE_HANDLER + "}::"
+                + getPostgresTypeName(column) + "[]";
+    }
+
+    /**
+     * 更新・削除した行の主キーを返す RETURNING 句(対象テーブルの別名は tgt)
+     * <p>
+     * 複合主キーの場合は PrimaryKeyクラスに自動マッピングされるよう、別名をプロパティ名にする。
+     *
+     * @param introspectedTable introspectedTable
+     * @return returning tgt.pk1 as "pk1", ...
+     */
+    public static String getReturningPrimaryKeyClause(IntrospectedTable introspectedTable) {
+        List<IntrospectedColumn> pkColumns = introspectedTable.getPrimaryKeyColumns();
+        if (introspectedTable.getRules().generatePrimaryKeyClass()) {
+            return "returning " + pkColumns.stream()
+                    .map(c -> "tgt." + MyBatis3FormattingUtilities.getEscapedColumnName(c)
+                            + " as \"" + c.getJavaProperty() + "\"")
+                    .collect(Collectors.joining(", "));
+        }
+        return "returning tgt." + MyBatis3FormattingUtilities.getEscapedColumnName(pkColumns.get(0));
+    }
+
+    /**
+     * Postgresでキャストに利用する型名を取得する(serial系は実体の整数型に置き換える)
+     *
+     * @param column column
+     * @return 型名
+     */
+    public static String getPostgresTypeName(IntrospectedColumn column) {
+        String typeName = column.getActualTypeName().toLowerCase();
+        switch (typeName) {
+            case "smallserial":
+            case "serial2":
+                return "int2";
+            case "serial":
+            case "serial4":
+                return "int4";
+            case "bigserial":
+            case "serial8":
+                return "int8";
+            default:
+                return typeName;
+        }
+    }
+
+    /**
+     * シーケンスの次の値を取得する式
+     *
+     * @param introspectedTable introspectedTable
+     * @param column            column
+     * @return ex) nextval(pg_get_serial_sequence('public.table', 'id'))
+     */
+    public static String getNextvalExpression(IntrospectedTable introspectedTable, IntrospectedColumn column) {
+        return "nextval(pg_get_serial_sequence('" + introspectedTable.getFullyQualifiedTableNameAtRuntime()
+                + "', '" + column.getActualColumnName() + "'))";
+    }
+
+    /**
+     * autoIncrementTypeプロパティを分解する(未指定の場合はPostgresのserial型)
+     *
+     * @param types プロパティの値
+     * @return データ型のリスト
+     */
+    public static List<String> parseAutoIncrementType(String types) {
+        List<String> list = new ArrayList<>();
+        if (types != null && !types.isEmpty()) {
+            StringTokenizer st = new StringTokenizer(types, ", ", false);
+            while (st.hasMoreTokens()) {
+                list.add(st.nextToken());
+            }
+        } else {
+            list.add("smallserial");
+            list.add("serial");
+            list.add("bigserial");
+        }
+        return list;
+    }
+
+    /**
+     * AutoIncrement項目か判定する
+     *
+     * @param column               column
+     * @param autoIncrementTypeList AutoIncrement項目のデータ型のリスト
+     * @return true:AutoIncrement項目
+     */
+    public static boolean isAutoIncrement(IntrospectedColumn column, List<String> autoIncrementTypeList) {
+        if (column.isIdentity()) {
+            return true;
+        }
+        for (String autoIncrementType : autoIncrementTypeList) {
+            if (autoIncrementType.equalsIgnoreCase(column.getActualTypeName())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * パターン(* は任意の文字列、? は任意の1文字)に一致するか判定する
+     *
+     * @param pattern パターン
+     * @param name    名前
+     * @return true:一致する(大文字小文字は区別しない)
+     */
+    public static boolean matchesPattern(String pattern, String name) {
+        StringBuilder regex = new StringBuilder();
+        for (char c : pattern.toCharArray()) {
+            if (c == '*') {
+                regex.append(".*");
+            } else if (c == '?') {
+                regex.append('.');
+            } else {
+                regex.append(Pattern.quote(String.valueOf(c)));
+            }
+        }
+        return Pattern.compile(regex.toString(), Pattern.CASE_INSENSITIVE).matcher(name).matches();
+    }
+
+    /**
+     * 接頭辞 + パターン のプロパティから、名前に一致する最も長いパターンの値を取得する
+     *
+     * @param props  プロパティ
+     * @param prefix 接頭辞 ex) cache.
+     * @param name   名前(テーブル名等)
+     * @return プロパティの値(一致するものがない場合は null)
+     */
+    public static String findByPattern(Properties props, String prefix, String name) {
+        String found = null;
+        for (String key : props.stringPropertyNames()) {
+            if (!key.startsWith(prefix)) {
+                continue;
+            }
+            String pattern = key.substring(prefix.length());
+            if (!matchesPattern(pattern, name)) {
+                continue;
+            }
+            if (found == null || pattern.length() > found.length()
+                    || (pattern.length() == found.length() && pattern.compareTo(found) < 0)) {
+                found = pattern;
+            }
+        }
+        return found == null ? null : props.getProperty(prefix + found);
+    }
+
+    /**
+     * SQLの文字列をXMLのテキストとして出力できる様にエスケープする(&amp; &lt; &gt;)
+     *
+     * @param s SQLの文字列(プロパティで指定した set 句、カラムのデフォルト値等)
+     * @return エスケープした文字列
+     */
+    public static String escapeXml(String s) {
+        return s.replace("&", "&amp;").replace("<", "&lt;").replace(">", "&gt;");
+    }
+}
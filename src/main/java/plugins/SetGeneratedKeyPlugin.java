@@ -18,6 +18,8 @@ import java.util.StringTokenizer;
  * autoIncrementType: AutoIncrement項目を特定するDBのデータ型
  * sqlStaetment: mybatisのGeneratedKeyプロパティの設定と同じ
  * identity: mybatisのGeneratedKeyプロパティの設定と同じ
+ * <p>
+ * Postgresの場合は SqlReturningPlugin を利用すること。(RETURNINGで1回の通信で値を書き戻す)
  */
 @Deprecated
 public class SetGeneratedKeyPlugin extends PluginAdapter {
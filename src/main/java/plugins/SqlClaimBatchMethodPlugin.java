@@ -0,0 +1,169 @@
+package plugins;
+
+import org.mybatis.generator.api.IntrospectedColumn;
+import org.mybatis.generator.api.IntrospectedTable;
+import org.mybatis.generator.api.PluginAdapter;
+import org.mybatis.generator.api.dom.java.*;
+import org.mybatis.generator.api.dom.xml.*;
+import org.mybatis.generator.codegen.mybatis3.MyBatis3FormattingUtilities;
+
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * ジョブテーブル等から未処理の行を n 件取り出して更新するメソッドを追加する(Postgres)
+ * <p>
+ * 複数のワーカーが select ... for update で同じ行を待ち合うと、先頭の行のロックが解放されるまで全員が待たされる。
+ * for update skip locked で他のワーカーがロック中の行を読み飛ばし、取り出しと更新を1回のSQLで行う。
+ * 対象は setClause.テーブル名 プロパティを指定した、主キーがあるテーブルのみ。
+ *
+ * <pre>
+ * {@code List<Model> claimBatch(@Param("example") ModelExample example, @Param("n") int n);}
+ * </pre>
+ * <pre>
+ * {@code
+ * update table
+ * set status = 'RUNNING', claimed_at = now()          -- setClause.テーブル名 の値
+ * where (pk1, pk2) in (
+ *   select pk1, pk2 from table
+ *   where (example の条件)
+ *   order by ${example.orderByClause}
+ *   limit #{n}
+ *   for update skip locked
+ * )
+ * returning ...                                       -- Base_Column_List
+ * }
+ * </pre>
+ * <p>
+ * 戻り値は更新後の行。(BLOB列は含まない)
+ * 取り出した行を他のワーカーが再度取り出さない様に、example には setClause で更新する列の条件(status = 'READY' 等)を指定すること。
+ * <p>
+ * (プロパティ)
+ * setClause.テーブル名: 取り出した行の set 句(テーブル名にはパターン(* は任意の文字列、? は任意の1文字)を指定できる)
+ *
+ * @code <plugin type="plugins.SqlClaimBatchMethodPlugin">
+ * <property name="setClause.job_*" value="status = 'RUNNING', claimed_at = now()"/>
+ * </plugin>
+ */
+public class SqlClaimBatchMethodPlugin extends PluginAdapter {
+
+    private static final String PROPERTY_SET_CLAUSE = "setClause.";
+
+    @Override
+    public boolean validate(List<String> warnings) {
+        return true;
+    }
+
+    /**
+     * テーブルの set 句を取得する
+     *
+     * @param introspectedTable introspectedTable
+     * @return set 句(対象外のテーブルの場合は null)
+     */
+    private String getSetClause(IntrospectedTable introspectedTable) {
+        if (!introspectedTable.hasPrimaryKeyColumns()
+                || !introspectedTable.getRules().generateBaseResultMap()
+                || !introspectedTable.getRules().generateMyBatis3UpdateByExampleWhereClause()) {
+            return null;
+        }
+        String setClause = PluginUtil.findByPattern(properties, PROPERTY_SET_CLAUSE,
+                introspectedTable.getFullyQualifiedTable().getIntrospectedTableName());
+        if (setClause == null || setClause.trim().isEmpty()) {
+            return null;
+        }
+        return setClause.trim();
+    }
+
+    @Override
+    public boolean clientGenerated(Interface interfaze, IntrospectedTable introspectedTable) {
+
+        if (getSetClause(introspectedTable) == null) {
+            return true;
+        }
+
+        FullyQualifiedJavaType recordType = PluginUtil.getRecordType(introspectedTable);
+        FullyQualifiedJavaType exampleType = new FullyQualifiedJavaType(introspectedTable.getExampleType());
+        FullyQualifiedJavaType returnType = FullyQualifiedJavaType.getNewListInstance();
+        returnType.addTypeArgument(recordType);
+
+        // メソッド名を指定
+        Method method = new Method("claimBatch");
+        // 戻り値の型を指定
+        method.setReturnType(returnType);
+        method.setVisibility(JavaVisibility.PUBLIC);
+        method.setAbstract(true);
+
+        Parameter example = new Parameter(exampleType, "example");
+        example.addAnnotation("@Param(\"example\")");
+        method.addParameter(example);
+        Parameter n = new Parameter(FullyQualifiedJavaType.getIntInstance(), "n");
+        n.addAnnotation("@Param(\"n\")");
+        method.addParameter(n);
+
+        // Javadocコメントを追加
+        context.getCommentGenerator().addGeneralMethodComment(method, introspectedTable);
+
+        // メソッドの追加
+        interfaze.addImportedType(recordType);
+        interfaze.addImportedType(exampleType);
+        interfaze.addImportedType(FullyQualifiedJavaType.getNewListInstance());
+        interfaze.addImportedType(new FullyQualifiedJavaType("org.apache.ibatis.annotations.Param"));
+        interfaze.addMethod(method);
+
+        return true;
+    }
+
+    @Override
+    public boolean sqlMapDocumentGenerated(Document document, IntrospectedTable introspectedTable) {
+
+        String setClause = getSetClause(introspectedTable);
+        if (setClause == null) {
+            return true;
+        }
+
+        String tableName = introspectedTable.getAliasedFullyQualifiedTableNameAtRuntime();
+        List<IntrospectedColumn> pkColumns = introspectedTable.getPrimaryKeyColumns();
+        String keyColumns = pkColumns.stream()
+                .map(MyBatis3FormattingUtilities::getAliasedEscapedColumnName)
+                .collect(Collectors.joining(", "));
+        // pk1 in (...)  (複合主キーの場合は (pk1, pk2) in (...))
+        String keyTuple = pkColumns.size() == 1 ? keyColumns : "(" + keyColumns + ")";
+
+        // XMLのタグ情報(更新した行を返すため select、キャッシュはクリアする)
+        XmlElement xmlElement = new XmlElement("select");
+        xmlElement.addAttribute(new Attribute("id", "claimBatch"));
+        xmlElement.addAttribute(new Attribute("parameterType", "map"));
+        xmlElement.addAttribute(new Attribute("resultMap", introspectedTable.getBaseResultMapId()));
+        xmlElement.addAttribute(new Attribute("flushCache", "true"));
+        xmlElement.addAttribute(new Attribute("useCache", "false"));
+        context.getCommentGenerator().addComment(xmlElement);
+
+        xmlElement.addElement(new TextElement("update " + tableName));
+        xmlElement.addElement(new TextElement("set " + PluginUtil.escapeXml(setClause)));
+        xmlElement.addElement(new TextElement("where " + keyTuple + " in ("));
+        xmlElement.addElement(new TextElement("select " + keyColumns + " from " + tableName));
+
+        XmlElement ifExample = new XmlElement("if");
+        ifExample.addAttribute(new Attribute("test", "example != null"));
+        XmlElement include = new XmlElement("include");
+        include.addAttribute(new Attribute("refid", introspectedTable.getMyBatis3UpdateByExampleWhereClauseId()));
+        ifExample.addElement(include);
+        xmlElement.addElement(ifExample);
+
+        XmlElement ifOrderBy = new XmlElement("if");
+        ifOrderBy.addAttribute(new Attribute("test", "example != null and example.orderByClause != null"));
+        ifOrderBy.addElement(new TextElement("order by ${example.orderByClause}"));
+        xmlElement.addElement(ifOrderBy);
+
+        xmlElement.addElement(new TextElement("limit #{n,jdbcType=INTEGER}"));
+        xmlElement.addElement(new TextElement("for update skip locked"));
+        xmlElement.addElement(new TextElement(")"));
+        xmlElement.addElement(new TextElement("returning"));
+        xmlElement.addElement(PluginUtil.getBaseColumnListElement(introspectedTable));
+
+        // XMLに新規メソッド用のSQLを追加
+        document.getRootElement().addElement(xmlElement);
+
+        return true;
+    }
+}
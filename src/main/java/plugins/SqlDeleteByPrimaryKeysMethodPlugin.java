@@ -0,0 +1,296 @@
+package plugins;
+
+import org.mybatis.generator.api.IntrospectedColumn;
+import org.mybatis.generator.api.IntrospectedTable;
+import org.mybatis.generator.api.PluginAdapter;
+import org.mybatis.generator.api.dom.java.*;
+import org.mybatis.generator.api.dom.xml.*;
+import org.mybatis.generator.codegen.mybatis3.MyBatis3FormattingUtilities;
+import org.mybatis.generator.internal.util.JavaBeansUtil;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.StringTokenizer;
+import java.util.stream.Collectors;
+
+/**
+ * 主キーのリストでまとめて削除するメソッドを追加する(Postgres)
+ * <p>
+ * deleteByPrimaryKey(AndVersion) を1件ずつ呼び出す代わりに、1回のSQLで削除する。
+ * 主キー、更新番号を配列でバインドするため、件数によらずSQLが同じになる。主キーがあるテーブルのみ対象。
+ * (複合主キーでPrimaryKeyクラスを作らない場合(defaultModelType="flat" 等)は対象外)
+ *
+ * <pre>
+ * {@code int deleteByPrimaryKeyArray(@Param("keys") Key[] keys);}
+ * {@code default int deleteByPrimaryKeys(Collection<Key> keys);}
+ * -- 更新番号のカラムがある場合
+ * {@code List<Key> deleteByPrimaryKeyArrayAndVersions(@Param("pk") Key[] pk, @Param("version") Long[] version);}
+ * {@code default List<Model> deleteByPrimaryKeysAndVersions(List<Model> rows);}
+ * </pre>
+ * <pre>
+ * {@code
+ * delete from table as tgt
+ * using unnest(#{pk}::varchar[], #{version}::int8[]) as src (pk, version)
+ * where tgt.pk = src.pk and tgt.version = src.version
+ * returning tgt.pk
+ * }
+ * </pre>
+ * <p>
+ * deleteByPrimaryKeysAndVersions は削除できなかった行(他で更新・削除済み)を返す。
+ * 削除された主キーを RETURNING で受け取るため、再検索は不要。
+ * RETURNING の結果を受け取るため、SQLは select(flushCache="true")で定義している。
+ * Spring等のトランザクション管理を使わない場合、SqlSession.commit(true) でコミットすること。
+ * <p>
+ * (プロパティ)
+ * versionColumns: 更新番号のカラム名(SqlUpdateKeyAndVersionPluginと同じ指定、複数指定時は最初に見つかったもの、主キーは対象外)
+ *
+ * @code <plugin type="plugins.SqlDeleteByPrimaryKeysMethodPlugin">
+ * <property name="versionColumns" value="version"/>
+ * </plugin>
+ */
+public class SqlDeleteByPrimaryKeysMethodPlugin extends PluginAdapter {
+
+    /**
+     * プロパティ名
+     */
+    private static final String PROPERTY_VERSION_COLUMNS = "versionColumns";
+
+    /**
+     * バージョンカラムのリスト
+     */
+    private final List<String> columnList = new ArrayList<>();
+
+    @Override
+    public boolean validate(List<String> warnings) {
+        String columns = properties.getProperty(PROPERTY_VERSION_COLUMNS);
+        if (columns != null) {
+            StringTokenizer st = new StringTokenizer(columns, ", ", false);
+            while (st.hasMoreTokens()) {
+                columnList.add(st.nextToken());
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 指定されたカラムがテーブルに存在するか確認し、最初に見つかったものを返す。(主キーは対象外)
+     *
+     * @param introspectedTable introspectedTable
+     * @return バージョン管理用のカラム、存在しない場合はnull
+     */
+    private IntrospectedColumn findVersionColumn(IntrospectedTable introspectedTable) {
+        for (String colName : columnList) {
+            for (IntrospectedColumn col : introspectedTable.getNonPrimaryKeyColumns()) {
+                if (col.getActualColumnName().equals(colName)) {
+                    return col;
+                }
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public boolean clientGenerated(Interface interfaze, IntrospectedTable introspectedTable) {
+
+        // 主キーなし、主キーの型がない場合処理しない
+        if (!PluginUtil.hasKeyType(introspectedTable, getClass().getSimpleName())) {
+            return true;
+        }
+
+        FullyQualifiedJavaType keyType = PluginUtil.getKeyType(introspectedTable);
+        FullyQualifiedJavaType collectionType = new FullyQualifiedJavaType("java.util.Collection");
+        collectionType.addTypeArgument(keyType);
+
+        // int deleteByPrimaryKeyArray(@Param("keys") Key[] keys);
+        Method arrayMethod = new Method("deleteByPrimaryKeyArray");
+        arrayMethod.setReturnType(FullyQualifiedJavaType.getIntInstance());
+        arrayMethod.setVisibility(JavaVisibility.PUBLIC);
+        arrayMethod.setAbstract(true);
+        PluginUtil.addPrimaryKeyArrayParameters(arrayMethod, introspectedTable);
+        context.getCommentGenerator().addGeneralMethodComment(arrayMethod, introspectedTable);
+
+        // default int deleteByPrimaryKeys(Collection<Key> keys) { 配列に詰め替えて deleteByPrimaryKeyArray }
+        Method keysMethod = new Method("deleteByPrimaryKeys");
+        keysMethod.setReturnType(FullyQualifiedJavaType.getIntInstance());
+        keysMethod.setVisibility(JavaVisibility.PUBLIC);
+        keysMethod.setDefault(true);
+        keysMethod.addParameter(new Parameter(collectionType, "keys"));
+        keysMethod.addBodyLine("if (keys.isEmpty()) {");
+        keysMethod.addBodyLine("return 0;");
+        keysMethod.addBodyLine("}");
+        PluginUtil.addPrimaryKeyArrayBodyLines(keysMethod, introspectedTable);
+        keysMethod.addBodyLine("return deleteByPrimaryKeyArray("
+                + PluginUtil.getPrimaryKeyArrayArguments(introspectedTable) + ");");
+        context.getCommentGenerator().addGeneralMethodComment(keysMethod, introspectedTable);
+
+        interfaze.addImportedType(keyType);
+        interfaze.addImportedType(collectionType);
+        introspectedTable.getPrimaryKeyColumns().forEach(c -> interfaze.addImportedType(c.getFullyQualifiedJavaType()));
+        interfaze.addImportedType(new FullyQualifiedJavaType("org.apache.ibatis.annotations.Param"));
+        interfaze.addMethod(arrayMethod);
+        interfaze.addMethod(keysMethod);
+
+        IntrospectedColumn versionColumn = findVersionColumn(introspectedTable);
+        if (versionColumn != null) {
+            addVersionMethodClient(interfaze, introspectedTable, versionColumn);
+        }
+
+        return true;
+    }
+
+    /**
+     * 更新番号付きの削除メソッドを追加する
+     */
+    private void addVersionMethodClient(Interface interfaze, IntrospectedTable introspectedTable,
+                                        IntrospectedColumn versionColumn) {
+
+        List<IntrospectedColumn> columns = new ArrayList<>(introspectedTable.getPrimaryKeyColumns());
+        columns.add(versionColumn);
+        boolean isComplexKey = introspectedTable.getRules().generatePrimaryKeyClass();
+
+        FullyQualifiedJavaType keyType = PluginUtil.getKeyType(introspectedTable);
+        FullyQualifiedJavaType recordType = introspectedTable.getRules().calculateAllFieldsClass();
+        FullyQualifiedJavaType keyListType = FullyQualifiedJavaType.getNewListInstance();
+        keyListType.addTypeArgument(keyType);
+        FullyQualifiedJavaType listType = FullyQualifiedJavaType.getNewListInstance();
+        listType.addTypeArgument(recordType);
+
+        // List<Key> deleteByPrimaryKeyArrayAndVersions(@Param("pk") Key[] pk, @Param("version") Long[] version);
+        Method arrayMethod = new Method("deleteByPrimaryKeyArrayAndVersions");
+        arrayMethod.setReturnType(keyListType);
+        arrayMethod.setVisibility(JavaVisibility.PUBLIC);
+        arrayMethod.setAbstract(true);
+        for (IntrospectedColumn column : columns) {
+            Parameter parameter = new Parameter(PluginUtil.getArrayType(column),
+                    column.getJavaProperty());
+            parameter.addAnnotation("@Param(\"" + column.getJavaProperty() + "\")");
+            arrayMethod.addParameter(parameter);
+        }
+        context.getCommentGenerator().addGeneralMethodComment(arrayMethod, introspectedTable);
+
+        // default List<Model> deleteByPrimaryKeysAndVersions(List<Model> rows) { 削除できなかった行を返す }
+        Method rowsMethod = new Method("deleteByPrimaryKeysAndVersions");
+        rowsMethod.setReturnType(listType);
+        rowsMethod.setVisibility(JavaVisibility.PUBLIC);
+        rowsMethod.setDefault(true);
+        rowsMethod.addParameter(new Parameter(listType, "rows"));
+        rowsMethod.addBodyLine(listType.getShortName() + " failed = new ArrayList<>();");
+        rowsMethod.addBodyLine("if (rows.isEmpty()) {");
+        rowsMethod.addBodyLine("return failed;");
+        rowsMethod.addBodyLine("}");
+        for (IntrospectedColumn column : columns) {
+            String type = column.getFullyQualifiedJavaType().getShortName();
+            rowsMethod.addBodyLine(type + "[] " + column.getJavaProperty() + "Array = new " + type + "[rows.size()];");
+        }
+        rowsMethod.addBodyLine("for (int i = 0; i < rows.size(); i++) {");
+        for (IntrospectedColumn column : columns) {
+            rowsMethod.addBodyLine(column.getJavaProperty() + "Array[i] = rows.get(i)."
+                    + JavaBeansUtil.getGetterMethodName(column.getJavaProperty(), column.getFullyQualifiedJavaType()) + "();");
+        }
+        rowsMethod.addBodyLine("}");
+        String deleteCall = "deleteByPrimaryKeyArrayAndVersions(" + columns.stream()
+                .map(c -> c.getJavaProperty() + "Array")
+                .collect(Collectors.joining(", ")) + ")";
+        if (isComplexKey) {
+            // PrimaryKeyクラスの equals に依存しないよう、カラムの値のリストで比較する
+            String values = introspectedTable.getPrimaryKeyColumns().stream()
+                    .map(c -> "%s." + JavaBeansUtil.getGetterMethodName(c.getJavaProperty(), c.getFullyQualifiedJavaType()) + "()")
+                    .collect(Collectors.joining(", "));
+            rowsMethod.addBodyLine("Set<List<Object>> deleted = new HashSet<>();");
+            rowsMethod.addBodyLine("for (" + keyType.getShortName() + " key : " + deleteCall + ") {");
+            rowsMethod.addBodyLine("deleted.add(Arrays.asList(" + values.replace("%s", "key") + "));");
+            rowsMethod.addBodyLine("}");
+            rowsMethod.addBodyLine("for (" + recordType.getShortName() + " row : rows) {");
+            rowsMethod.addBodyLine("if (!deleted.contains(Arrays.asList(" + values.replace("%s", "row") + "))) {");
+        } else {
+            IntrospectedColumn pk = introspectedTable.getPrimaryKeyColumns().get(0);
+            rowsMethod.addBodyLine("Set<" + keyType.getShortName() + "> deleted = new HashSet<>(" + deleteCall + ");");
+            rowsMethod.addBodyLine("for (" + recordType.getShortName() + " row : rows) {");
+            rowsMethod.addBodyLine("if (!deleted.contains(row."
+                    + JavaBeansUtil.getGetterMethodName(pk.getJavaProperty(), pk.getFullyQualifiedJavaType()) + "())) {");
+        }
+        rowsMethod.addBodyLine("failed.add(row);");
+        rowsMethod.addBodyLine("}");
+        rowsMethod.addBodyLine("}");
+        rowsMethod.addBodyLine("return failed;");
+        context.getCommentGenerator().addGeneralMethodComment(rowsMethod, introspectedTable);
+
+        interfaze.addImportedType(recordType);
+        interfaze.addImportedType(FullyQualifiedJavaType.getNewListInstance());
+        interfaze.addImportedType(FullyQualifiedJavaType.getNewArrayListInstance());
+        interfaze.addImportedType(new FullyQualifiedJavaType("java.util.Set"));
+        interfaze.addImportedType(new FullyQualifiedJavaType("java.util.HashSet"));
+        if (isComplexKey) {
+            interfaze.addImportedType(new FullyQualifiedJavaType("java.util.Arrays"));
+        }
+        columns.forEach(c -> interfaze.addImportedType(c.getFullyQualifiedJavaType()));
+        interfaze.addMethod(arrayMethod);
+        interfaze.addMethod(rowsMethod);
+    }
+
+    @Override
+    public boolean sqlMapDocumentGenerated(Document document, IntrospectedTable introspectedTable) {
+
+        if (!PluginUtil.hasKeyType(introspectedTable)) {
+            return true;
+        }
+
+        List<XmlElement> addElementList = new ArrayList<>();
+
+        // delete from table where pk = any(#{keys}::varchar[])
+        XmlElement xmlElement = new XmlElement("delete");
+        xmlElement.addAttribute(new Attribute("id", "deleteByPrimaryKeyArray"));
+        xmlElement.addAttribute(new Attribute("parameterType", "map"));
+        context.getCommentGenerator().addComment(xmlElement);
+        xmlElement.addElement(new TextElement("delete from " + introspectedTable.getFullyQualifiedTableNameAtRuntime()));
+        xmlElement.addElement(new TextElement("where " + PluginUtil.getPrimaryKeyArrayCondition(
+                introspectedTable, MyBatis3FormattingUtilities::getEscapedColumnName)));
+        addElementList.add(xmlElement);
+
+        IntrospectedColumn versionColumn = findVersionColumn(introspectedTable);
+        if (versionColumn != null) {
+            addElementList.add(createVersionElement(introspectedTable, versionColumn));
+        }
+
+        // XMLに新規メソッド用のSQLを追加
+        document.getRootElement().getElements().addAll(addElementList);
+
+        return true;
+    }
+
+    /**
+     * 更新番号付きの削除SQL(RETURNINGで削除した主キーを返すため select で定義する)
+     */
+    private XmlElement createVersionElement(IntrospectedTable introspectedTable, IntrospectedColumn versionColumn) {
+
+        List<IntrospectedColumn> pkColumns = introspectedTable.getPrimaryKeyColumns();
+        List<IntrospectedColumn> columns = new ArrayList<>(pkColumns);
+        columns.add(versionColumn);
+
+        XmlElement xmlElement = new XmlElement("select");
+        xmlElement.addAttribute(new Attribute("id", "deleteByPrimaryKeyArrayAndVersions"));
+        xmlElement.addAttribute(new Attribute("parameterType", "map"));
+        xmlElement.addAttribute(new Attribute("resultType",
+                PluginUtil.getKeyType(introspectedTable).getFullyQualifiedName()));
+        xmlElement.addAttribute(new Attribute("flushCache", "true"));
+        context.getCommentGenerator().addComment(xmlElement);
+
+        xmlElement.addElement(new TextElement("delete from "
+                + introspectedTable.getFullyQualifiedTableNameAtRuntime() + " as tgt"));
+        xmlElement.addElement(new TextElement("using unnest("
+                + columns.stream()
+                .map(c -> PluginUtil.getArrayParameterClause(c, c.getJavaProperty()))
+                .collect(Collectors.joining(", "))
+                + ") as src ("
+                + columns.stream()
+                .map(MyBatis3FormattingUtilities::getEscapedColumnName)
+                .collect(Collectors.joining(", "))
+                + ")"));
+        xmlElement.addElement(new TextElement("where " + columns.stream()
+                .map(MyBatis3FormattingUtilities::getEscapedColumnName)
+                .map(c -> "tgt." + c + " = src." + c)
+                .collect(Collectors.joining(" and "))));
+        xmlElement.addElement(new TextElement(PluginUtil.getReturningPrimaryKeyClause(introspectedTable)));
+        return xmlElement;
+    }
+}
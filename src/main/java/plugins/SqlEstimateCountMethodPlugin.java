@@ -0,0 +1,248 @@
+package plugins;
+
+import org.mybatis.generator.api.GeneratedJavaFile;
+import org.mybatis.generator.api.IntrospectedTable;
+import org.mybatis.generator.api.PluginAdapter;
+import org.mybatis.generator.api.dom.java.*;
+import org.mybatis.generator.api.dom.xml.Attribute;
+import org.mybatis.generator.api.dom.xml.Document;
+import org.mybatis.generator.api.dom.xml.TextElement;
+import org.mybatis.generator.api.dom.xml.XmlElement;
+import org.mybatis.generator.config.PropertyRegistry;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.mybatis.generator.internal.util.StringUtility.isTrue;
+
+/**
+ * 件数の概算、キャッシュ付きの件数取得メソッドを追加する(Postgres)
+ * <p>
+ * countByExample(select count(*))は大きなテーブルでは全件を読むため遅い。用途に応じて使い分ける。
+ *
+ * <pre>
+ * {@code long estimateCount();}                                             -- pg_class.reltuples(統計情報の件数)
+ * {@code String explainByExample(ModelExample example);}                    -- EXPLAIN (FORMAT JSON)
+ * {@code default long estimateCountByExample(ModelExample example);}        -- 実行計画の推定行数(Plan Rows)
+ * {@code default long countByExampleCached(ModelExample example, long ttlMillis);} -- countByExample の結果を ttlMillis の間キャッシュ
+ * </pre>
+ * <p>
+ * 概算値は ANALYZE(autovacuum)時点の統計情報に基づくため、正確ではない。(一度も ANALYZE されていない場合は 0)
+ * countByExampleCached のキャッシュは Mapperインタフェースと同じパッケージに作成する CountCache クラスで保持し、
+ * テーブル名と Example の条件をキーにする。(更新時に消したい場合は CountCache.clear())
+ * <p>
+ * (プロパティ)
+ * cachedCount: countByExampleCached と CountCache を作成するか(デフォルト true)
+ */
+public class SqlEstimateCountMethodPlugin extends PluginAdapter {
+
+    /**
+     * プロパティ名
+     */
+    private static final String PROPERTY_CACHED_COUNT = "cachedCount";
+
+    private static final String COUNT_CACHE = "CountCache";
+
+    private boolean cachedCount;
+
+    @Override
+    public boolean validate(List<String> warnings) {
+        cachedCount = isTrue(properties.getProperty(PROPERTY_CACHED_COUNT, "true"));
+        if (cachedCount && context.getJavaClientGeneratorConfiguration() == null) {
+            warnings.add("javaClientGenerator is required for plugin " + this.getClass().getSimpleName());
+            return false;
+        }
+        return true;
+    }
+
+    private String getCountCacheType() {
+        return context.getJavaClientGeneratorConfiguration().getTargetPackage() + "." + COUNT_CACHE;
+    }
+
+    @Override
+    public boolean clientGenerated(Interface interfaze, IntrospectedTable introspectedTable) {
+
+        // long estimateCount();
+        Method estimateCount = new Method("estimateCount");
+        estimateCount.setReturnType(new FullyQualifiedJavaType("long"));
+        estimateCount.setVisibility(JavaVisibility.PUBLIC);
+        estimateCount.setAbstract(true);
+        context.getCommentGenerator().addGeneralMethodComment(estimateCount, introspectedTable);
+        interfaze.addMethod(estimateCount);
+
+        if (!introspectedTable.getRules().generateCountByExample()) {
+            return true;
+        }
+
+        FullyQualifiedJavaType exampleType = new FullyQualifiedJavaType(introspectedTable.getExampleType());
+        interfaze.addImportedType(exampleType);
+
+        // String explainByExample(ModelExample example);
+        Method explain = new Method("explainByExample");
+        explain.setReturnType(FullyQualifiedJavaType.getStringInstance());
+        explain.setVisibility(JavaVisibility.PUBLIC);
+        explain.setAbstract(true);
+        explain.addParameter(new Parameter(exampleType, "example"));
+        context.getCommentGenerator().addGeneralMethodComment(explain, introspectedTable);
+        interfaze.addMethod(explain);
+
+        // default long estimateCountByExample(ModelExample example) { 最上位ノードの "Plan Rows" }
+        Method estimate = new Method("estimateCountByExample");
+        estimate.setReturnType(new FullyQualifiedJavaType("long"));
+        estimate.setVisibility(JavaVisibility.PUBLIC);
+        estimate.setDefault(true);
+        estimate.addParameter(new Parameter(exampleType, "example"));
+        estimate.addBodyLine("Matcher matcher = Pattern.compile(\"\\\"Plan Rows\\\":\\\\s*(\\\\d+)\").matcher(explainByExample(example));");
+        estimate.addBodyLine("return matcher.find() ? Long.parseLong(matcher.group(1)) : 0L;");
+        context.getCommentGenerator().addGeneralMethodComment(estimate, introspectedTable);
+        interfaze.addImportedType(new FullyQualifiedJavaType("java.util.regex.Matcher"));
+        interfaze.addImportedType(new FullyQualifiedJavaType("java.util.regex.Pattern"));
+        interfaze.addMethod(estimate);
+
+        if (cachedCount) {
+            // default long countByExampleCached(ModelExample example, long ttlMillis)
+            FullyQualifiedJavaType criteriaType = new FullyQualifiedJavaType(exampleType.getFullyQualifiedName() + ".Criteria");
+            FullyQualifiedJavaType criterionType = new FullyQualifiedJavaType(exampleType.getFullyQualifiedName() + ".Criterion");
+            Method cached = new Method("countByExampleCached");
+            cached.setReturnType(new FullyQualifiedJavaType("long"));
+            cached.setVisibility(JavaVisibility.PUBLIC);
+            cached.setDefault(true);
+            cached.addParameter(new Parameter(exampleType, "example"));
+            cached.addParameter(new Parameter(new FullyQualifiedJavaType("long"), "ttlMillis"));
+            // キャッシュのキー(テーブル名 + 条件)
+            cached.addBodyLine("StringBuilder key = new StringBuilder(\""
+                    + introspectedTable.getFullyQualifiedTableNameAtRuntime() + "\");");
+            cached.addBodyLine("if (example != null) {");
+            cached.addBodyLine("key.append(example.isDistinct() ? \"|distinct\" : \"\");");
+            cached.addBodyLine("for (" + criteriaType.getShortName() + " criteria : example.getOredCriteria()) {");
+            cached.addBodyLine("key.append(\"|\");");
+            cached.addBodyLine("for (" + criterionType.getShortName() + " criterion : criteria.getAllCriteria()) {");
+            cached.addBodyLine("key.append(criterion.getCondition()).append('\\u0000')");
+            cached.addBodyLine("        .append(criterion.getValue()).append('\\u0000')");
+            cached.addBodyLine("        .append(criterion.getSecondValue()).append(';');");
+            cached.addBodyLine("}");
+            cached.addBodyLine("}");
+            cached.addBodyLine("}");
+            cached.addBodyLine("return " + COUNT_CACHE + ".get(key.toString(), ttlMillis, () -> countByExample(example));");
+            context.getCommentGenerator().addGeneralMethodComment(cached, introspectedTable);
+            interfaze.addImportedType(criteriaType);
+            interfaze.addImportedType(criterionType);
+            interfaze.addImportedType(new FullyQualifiedJavaType(getCountCacheType()));
+            interfaze.addMethod(cached);
+        }
+
+        return true;
+    }
+
+    @Override
+    public boolean sqlMapDocumentGenerated(Document document, IntrospectedTable introspectedTable) {
+
+        List<XmlElement> addElementList = new ArrayList<>();
+
+        // select greatest(reltuples, 0)::bigint from pg_class where oid = 'schema.table'::regclass
+        XmlElement estimateCount = new XmlElement("select");
+        estimateCount.addAttribute(new Attribute("id", "estimateCount"));
+        estimateCount.addAttribute(new Attribute("resultType", "java.lang.Long"));
+        context.getCommentGenerator().addComment(estimateCount);
+        estimateCount.addElement(new TextElement("select greatest(reltuples, 0)::bigint from pg_class"));
+        estimateCount.addElement(new TextElement("where oid = '"
+                + introspectedTable.getFullyQualifiedTableNameAtRuntime() + "'::regclass"));
+        addElementList.add(estimateCount);
+
+        if (introspectedTable.getRules().generateCountByExample()) {
+            // explain (format json) select 1 from table <include Example_Where_Clause>
+            XmlElement explain = new XmlElement("select");
+            explain.addAttribute(new Attribute("id", "explainByExample"));
+            explain.addAttribute(new Attribute("parameterType", introspectedTable.getExampleType()));
+            explain.addAttribute(new Attribute("resultType", "java.lang.String"));
+            context.getCommentGenerator().addComment(explain);
+            explain.addElement(new TextElement("explain (format json)"));
+            explain.addElement(new TextElement("select 1 from " + introspectedTable.getAliasedFullyQualifiedTableNameAtRuntime()));
+            XmlElement ifWhere = new XmlElement("if");
+            ifWhere.addAttribute(new Attribute("test", "_parameter != null"));
+            XmlElement include = new XmlElement("include");
+            include.addAttribute(new Attribute("refid", introspectedTable.getExampleWhereClauseId()));
+            ifWhere.addElement(include);
+            explain.addElement(ifWhere);
+            addElementList.add(explain);
+        }
+
+        // XMLに新規メソッド用のSQLを追加
+        document.getRootElement().getElements().addAll(addElementList);
+
+        return true;
+    }
+
+    @Override
+    public List<GeneratedJavaFile> contextGenerateAdditionalJavaFiles() {
+
+        List<GeneratedJavaFile> answer = new ArrayList<>();
+        if (!cachedCount) {
+            return answer;
+        }
+
+        TopLevelClass topLevelClass = new TopLevelClass(getCountCacheType());
+        topLevelClass.setVisibility(JavaVisibility.PUBLIC);
+        topLevelClass.setFinal(true);
+        context.getCommentGenerator().addJavaFileComment(topLevelClass);
+        topLevelClass.addImportedType("java.util.Map");
+        topLevelClass.addImportedType("java.util.concurrent.ConcurrentHashMap");
+        topLevelClass.addImportedType("java.util.function.LongSupplier");
+
+        // キャッシュの上限、超えた場合は期限切れを削除し、それでも空きがなければキャッシュしない
+        Field maxSize = new Field("MAX_SIZE", FullyQualifiedJavaType.getIntInstance());
+        maxSize.setVisibility(JavaVisibility.PRIVATE);
+        maxSize.setStatic(true);
+        maxSize.setFinal(true);
+        maxSize.setInitializationString("10000");
+        topLevelClass.addField(maxSize);
+
+        // キー -> {件数, 有効期限}
+        Field cache = new Field("CACHE", new FullyQualifiedJavaType("java.util.Map<java.lang.String, long[]>"));
+        cache.setVisibility(JavaVisibility.PRIVATE);
+        cache.setStatic(true);
+        cache.setFinal(true);
+        cache.setInitializationString("new ConcurrentHashMap<>()");
+        topLevelClass.addField(cache);
+
+        Method constructor = new Method(COUNT_CACHE);
+        constructor.setConstructor(true);
+        constructor.setVisibility(JavaVisibility.PRIVATE);
+        topLevelClass.addMethod(constructor);
+
+        Method get = new Method("get");
+        get.setVisibility(JavaVisibility.PUBLIC);
+        get.setStatic(true);
+        get.setReturnType(new FullyQualifiedJavaType("long"));
+        get.addParameter(new Parameter(FullyQualifiedJavaType.getStringInstance(), "key"));
+        get.addParameter(new Parameter(new FullyQualifiedJavaType("long"), "ttlMillis"));
+        get.addParameter(new Parameter(new FullyQualifiedJavaType("java.util.function.LongSupplier"), "loader"));
+        get.addBodyLine("long now = System.currentTimeMillis();");
+        get.addBodyLine("long[] entry = CACHE.get(key);");
+        get.addBodyLine("if (entry != null && entry[1] > now) {");
+        get.addBodyLine("return entry[0];");
+        get.addBodyLine("}");
+        get.addBodyLine("long count = loader.getAsLong();");
+        get.addBodyLine("if (CACHE.size() >= MAX_SIZE) {");
+        get.addBodyLine("CACHE.values().removeIf(e -> e[1] <= now);");
+        get.addBodyLine("if (CACHE.size() >= MAX_SIZE && !CACHE.containsKey(key)) {");
+        get.addBodyLine("return count;");
+        get.addBodyLine("}");
+        get.addBodyLine("}");
+        get.addBodyLine("CACHE.put(key, new long[]{count, now + ttlMillis});");
+        get.addBodyLine("return count;");
+        topLevelClass.addMethod(get);
+
+        Method clear = new Method("clear");
+        clear.setVisibility(JavaVisibility.PUBLIC);
+        clear.setStatic(true);
+        clear.addBodyLine("CACHE.clear();");
+        topLevelClass.addMethod(clear);
+
+        answer.add(new GeneratedJavaFile(topLevelClass,
+                context.getJavaClientGeneratorConfiguration().getTargetProject(),
+                context.getProperty(PropertyRegistry.CONTEXT_JAVA_FILE_ENCODING),
+                context.getJavaFormatter()));
+        return answer;
+    }
+}
@@ -0,0 +1,128 @@
+package plugins;
+
+import org.mybatis.generator.api.IntrospectedTable;
+import org.mybatis.generator.api.PluginAdapter;
+import org.mybatis.generator.api.dom.java.FullyQualifiedJavaType;
+import org.mybatis.generator.api.dom.java.Interface;
+import org.mybatis.generator.api.dom.java.JavaVisibility;
+import org.mybatis.generator.api.dom.java.Method;
+import org.mybatis.generator.api.dom.xml.*;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 存在チェック用のメソッドを追加する
+ * <p>
+ * countByExample(ex) &gt; 0 は条件に一致する全件を数える。exists は1件見つかった時点で終了する。
+ * 条件は countByExample と同じ Example_Where_Clause を利用する。
+ *
+ * <pre>
+ * {@code boolean existsByExample(ModelExample example);}   -- countByExample の前に追加
+ * {@code boolean existsByPrimaryKey(Key key);}             -- selectByPrimaryKey の前に追加
+ * </pre>
+ * <pre>
+ * {@code
+ * select exists (select 1 from table where ... limit 1)
+ * }
+ * </pre>
+ */
+public class SqlExistsMethodPlugin extends PluginAdapter {
+
+    /**
+     * SQLMapper格納場所
+     */
+    private final List<XmlElement> addElementList = new ArrayList<>();
+
+    @Override
+    public boolean validate(List<String> warnings) {
+        return true;
+    }
+
+    /**
+     * 元のメソッドと同じ引数で boolean を返すメソッドを追加する
+     */
+    private void addMethodClient(Method method, Interface interfaze, IntrospectedTable introspectedTable, String name) {
+        Method addMethod = new Method(name);
+        addMethod.setReturnType(FullyQualifiedJavaType.getBooleanPrimitiveInstance());
+        addMethod.setVisibility(JavaVisibility.PUBLIC);
+        addMethod.setAbstract(true);
+        method.getParameters().forEach(addMethod::addParameter);
+        context.getCommentGenerator().addGeneralMethodComment(addMethod, introspectedTable);
+        interfaze.addMethod(addMethod);
+    }
+
+    @Override
+    public boolean clientCountByExampleMethodGenerated(Method method, Interface interfaze,
+                                                       IntrospectedTable introspectedTable) {
+        addMethodClient(method, interfaze, introspectedTable, "existsByExample");
+        return true;
+    }
+
+    @Override
+    public boolean clientSelectByPrimaryKeyMethodGenerated(Method method, Interface interfaze,
+                                                           IntrospectedTable introspectedTable) {
+        addMethodClient(method, interfaze, introspectedTable, "existsByPrimaryKey");
+        return true;
+    }
+
+    /**
+     * select exists (...) のSQLを作成する
+     *
+     * @param element 元のSQL(parameterTypeを引き継ぐ)
+     * @param id      id
+     * @return select要素
+     */
+    private XmlElement createExistsElement(XmlElement element, String id) {
+        XmlElement xmlElement = new XmlElement("select");
+        xmlElement.addAttribute(new Attribute("id", id));
+        element.getAttributes().stream()
+                .filter(a -> "parameterType".equals(a.getName()))
+                .findFirst()
+                .ifPresent(xmlElement::addAttribute);
+        xmlElement.addAttribute(new Attribute("resultType", "java.lang.Boolean"));
+        context.getCommentGenerator().addComment(xmlElement);
+        return xmlElement;
+    }
+
+    @Override
+    public boolean sqlMapCountByExampleElementGenerated(XmlElement element, IntrospectedTable introspectedTable) {
+
+        // select exists (select 1 from table <include Example_Where_Clause> limit 1)
+        XmlElement xmlElement = createExistsElement(element, "existsByExample");
+        xmlElement.addElement(new TextElement("select exists ("));
+        xmlElement.addElement(new TextElement("select 1 from " + introspectedTable.getAliasedFullyQualifiedTableNameAtRuntime()));
+        XmlElement ifWhere = new XmlElement("if");
+        ifWhere.addAttribute(new Attribute("test", "_parameter != null"));
+        XmlElement include = new XmlElement("include");
+        include.addAttribute(new Attribute("refid", introspectedTable.getExampleWhereClauseId()));
+        ifWhere.addElement(include);
+        xmlElement.addElement(ifWhere);
+        xmlElement.addElement(new TextElement("limit 1"));
+        xmlElement.addElement(new TextElement(")"));
+        addElementList.add(xmlElement);
+        return true;
+    }
+
+    @Override
+    public boolean sqlMapSelectByPrimaryKeyElementGenerated(XmlElement element, IntrospectedTable introspectedTable) {
+
+        // select exists (select 1 from table where pk = #{pk})
+        XmlElement xmlElement = createExistsElement(element, "existsByPrimaryKey");
+        xmlElement.addElement(new TextElement("select exists ("));
+        xmlElement.addElement(new TextElement("select 1 from " + introspectedTable.getAliasedFullyQualifiedTableNameAtRuntime()));
+        xmlElement.addElement(new TextElement(PluginUtil.getPrimaryKeyWhereClause(introspectedTable)));
+        xmlElement.addElement(new TextElement(")"));
+        addElementList.add(xmlElement);
+        return true;
+    }
+
+    @Override
+    public boolean sqlMapDocumentGenerated(Document document, IntrospectedTable introspectedTable) {
+
+        // SQLに新規メソッド用のSQLを追加
+        document.getRootElement().getElements().addAll(addElementList);
+        addElementList.clear();
+        return true;
+    }
+}
@@ -0,0 +1,316 @@
+package plugins;
+
+import org.mybatis.generator.api.GeneratedJavaFile;
+import org.mybatis.generator.api.IntrospectedColumn;
+import org.mybatis.generator.api.IntrospectedTable;
+import org.mybatis.generator.api.PluginAdapter;
+import org.mybatis.generator.api.dom.java.*;
+import org.mybatis.generator.api.dom.xml.Attribute;
+import org.mybatis.generator.api.dom.xml.Document;
+import org.mybatis.generator.api.dom.xml.TextElement;
+import org.mybatis.generator.api.dom.xml.XmlElement;
+import org.mybatis.generator.config.PropertyRegistry;
+import org.mybatis.generator.internal.util.JavaBeansUtil;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * シーケンスで採番する項目(serial等)の値を、登録前にまとめて取得するメソッドを追加する(Postgres)
+ * <p>
+ * AutoIncrement項目(autoIncrementTypeに一致する型)ごとに、シーケンスから count 件の値を1回のSQLで取得するメソッドと、
+ * 値が未設定の行に採番するメソッドを追加する。親子関係のある行を insertBatch でまとめて登録する前に、キーを決められる。
+ * 採番は Mapperインタフェースと同じパッケージに作成する IdAllocator クラスで行う。
+ * IdAllocator は blockSize 件ずつシーケンスから取得した値を AtomicInteger の添字で払い出すため、払い出しはロックしない。
+ * (使い切った場合のみ、次のブロックの取得を synchronized で1スレッドに限定する)
+ * <p>
+ * 事前に採番したキーを insertBatch で登録する場合は SqlInsertBatchMethodPlugin の preAssignedKeys を true にすること。
+ *
+ * <pre>
+ * {@code List<Long> selectNextIdIds(@Param("count") int count);}
+ * {@code default void assignId(List<Model> rows, IdAllocator allocator);}   -- id が null の行に採番する
+ * </pre>
+ * <pre>
+ * {@code
+ * select nextval(pg_get_serial_sequence('table', 'id')) from generate_series(1, #{count})
+ *
+ * IdAllocator allocator = new IdAllocator(mapper::selectNextIdIds, 1000);   -- アプリケーションで1個だけ作成する
+ * mapper.assignId(rows, allocator);
+ * }
+ * </pre>
+ * <p>
+ * (プロパティ)
+ * autoIncrementType: AutoIncrement項目を特定するDBのデータ型(SqlReturningPluginと同じ、デフォルト smallserial, serial, bigserial)
+ *
+ * @code <plugin type="plugins.SqlIdAllocatorMethodPlugin">
+ * <property name="autoIncrementType" value="smallserial, serial, bigserial"/>
+ * </plugin>
+ */
+public class SqlIdAllocatorMethodPlugin extends PluginAdapter {
+
+    /**
+     * プロパティ名
+     */
+    private static final String PROPERTY_AUTOINCREMENT_TYPE = "autoIncrementType";
+
+    private static final String ID_ALLOCATOR = "IdAllocator";
+
+    /**
+     * AutoIncrement項目のデータ型のリスト
+     */
+    private final List<String> autoIncrementTypeList = new ArrayList<>();
+
+    @Override
+    public boolean validate(List<String> warnings) {
+        if (context.getJavaClientGeneratorConfiguration() == null) {
+            warnings.add("javaClientGenerator is required for plugin " + this.getClass().getSimpleName());
+            return false;
+        }
+        autoIncrementTypeList.addAll(PluginUtil.parseAutoIncrementType(
+                properties.getProperty(PROPERTY_AUTOINCREMENT_TYPE)));
+        return true;
+    }
+
+    private String getIdAllocatorType() {
+        return context.getJavaClientGeneratorConfiguration().getTargetPackage() + "." + ID_ALLOCATOR;
+    }
+
+    /**
+     * 採番対象のカラム(autoIncrementTypeに一致し、Javaの型が整数のもの)
+     */
+    private List<IntrospectedColumn> getSequenceColumns(IntrospectedTable introspectedTable) {
+        return introspectedTable.getAllColumns().stream()
+                .filter(c -> !c.isGeneratedAlways())
+                .filter(c -> autoIncrementTypeList.stream().anyMatch(t -> t.equalsIgnoreCase(c.getActualTypeName())))
+                .filter(c -> getCast(c) != null)
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * long から項目の型への変換
+     */
+    private String getCast(IntrospectedColumn column) {
+        switch (column.getFullyQualifiedJavaType().getFullyQualifiedName()) {
+            case "java.lang.Short":
+                return "(short) ";
+            case "java.lang.Integer":
+                return "(int) ";
+            case "java.lang.Long":
+                return "";
+            default:
+                return null;
+        }
+    }
+
+    private String getSelectMethodName(IntrospectedColumn column) {
+        return "selectNext" + JavaBeansUtil.getCamelCaseString(column.getJavaProperty(), true) + "Ids";
+    }
+
+    @Override
+    public boolean clientGenerated(Interface interfaze, IntrospectedTable introspectedTable) {
+
+        List<IntrospectedColumn> columns = getSequenceColumns(introspectedTable);
+        if (columns.isEmpty()) {
+            return true;
+        }
+
+        FullyQualifiedJavaType parameterType = introspectedTable.getRules().calculateAllFieldsClass();
+        FullyQualifiedJavaType listType = FullyQualifiedJavaType.getNewListInstance();
+        listType.addTypeArgument(parameterType);
+        FullyQualifiedJavaType idListType = FullyQualifiedJavaType.getNewListInstance();
+        idListType.addTypeArgument(new FullyQualifiedJavaType("java.lang.Long"));
+        FullyQualifiedJavaType allocatorType = new FullyQualifiedJavaType(getIdAllocatorType());
+
+        for (IntrospectedColumn column : columns) {
+            String getter = JavaBeansUtil.getGetterMethodName(column.getJavaProperty(), column.getFullyQualifiedJavaType());
+            String setter = JavaBeansUtil.getSetterMethodName(column.getJavaProperty());
+
+            // List<Long> selectNextIdIds(@Param("count") int count);
+            Method selectMethod = new Method(getSelectMethodName(column));
+            selectMethod.setReturnType(idListType);
+            selectMethod.setVisibility(JavaVisibility.PUBLIC);
+            selectMethod.setAbstract(true);
+            Parameter count = new Parameter(FullyQualifiedJavaType.getIntInstance(), "count");
+            count.addAnnotation("@Param(\"count\")");
+            selectMethod.addParameter(count);
+            context.getCommentGenerator().addGeneralMethodComment(selectMethod, introspectedTable);
+            interfaze.addMethod(selectMethod);
+
+            // default void assignId(List<Model> rows, IdAllocator allocator) { 未設定の行に採番 }
+            Method assignMethod = new Method("assign" + JavaBeansUtil.getCamelCaseString(column.getJavaProperty(), true));
+            assignMethod.setVisibility(JavaVisibility.PUBLIC);
+            assignMethod.setDefault(true);
+            assignMethod.addParameter(new Parameter(listType, "rows"));
+            assignMethod.addParameter(new Parameter(allocatorType, "allocator"));
+            assignMethod.addBodyLine("int count = 0;");
+            assignMethod.addBodyLine("for (" + parameterType.getShortName() + " row : rows) {");
+            assignMethod.addBodyLine("if (row." + getter + "() == null) {");
+            assignMethod.addBodyLine("count++;");
+            assignMethod.addBodyLine("}");
+            assignMethod.addBodyLine("}");
+            assignMethod.addBodyLine("long[] ids = allocator.next(count);");
+            assignMethod.addBodyLine("int i = 0;");
+            assignMethod.addBodyLine("for (" + parameterType.getShortName() + " row : rows) {");
+            assignMethod.addBodyLine("if (row." + getter + "() == null) {");
+            assignMethod.addBodyLine("row." + setter + "(" + getCast(column) + "ids[i++]);");
+            assignMethod.addBodyLine("}");
+            assignMethod.addBodyLine("}");
+            context.getCommentGenerator().addGeneralMethodComment(assignMethod, introspectedTable);
+            interfaze.addMethod(assignMethod);
+        }
+
+        interfaze.addImportedType(parameterType);
+        interfaze.addImportedType(allocatorType);
+        interfaze.addImportedType(FullyQualifiedJavaType.getNewListInstance());
+        interfaze.addImportedType(new FullyQualifiedJavaType("org.apache.ibatis.annotations.Param"));
+
+        return true;
+    }
+
+    @Override
+    public boolean sqlMapDocumentGenerated(Document document, IntrospectedTable introspectedTable) {
+
+        List<XmlElement> addElementList = new ArrayList<>();
+        for (IntrospectedColumn column : getSequenceColumns(introspectedTable)) {
+
+            // select nextval(pg_get_serial_sequence('table', 'id')) from generate_series(1, #{count})
+            XmlElement xmlElement = new XmlElement("select");
+            xmlElement.addAttribute(new Attribute("id", getSelectMethodName(column)));
+            xmlElement.addAttribute(new Attribute("resultType", "java.lang.Long"));
+            context.getCommentGenerator().addComment(xmlElement);
+            xmlElement.addElement(new TextElement("select " + PluginUtil.getNextvalExpression(introspectedTable, column)
+                    + " from generate_series(1, #{count,jdbcType=INTEGER})"));
+            addElementList.add(xmlElement);
+        }
+
+        // XMLに新規メソッド用のSQLを追加
+        document.getRootElement().getElements().addAll(addElementList);
+
+        return true;
+    }
+
+    @Override
+    public List<GeneratedJavaFile> contextGenerateAdditionalJavaFiles() {
+
+        List<GeneratedJavaFile> answer = new ArrayList<>();
+
+        TopLevelClass topLevelClass = new TopLevelClass(getIdAllocatorType());
+        topLevelClass.setVisibility(JavaVisibility.PUBLIC);
+        topLevelClass.setFinal(true);
+        context.getCommentGenerator().addJavaFileComment(topLevelClass);
+        topLevelClass.addImportedType("java.util.List");
+        topLevelClass.addImportedType("java.util.concurrent.atomic.AtomicInteger");
+        topLevelClass.addImportedType("java.util.function.IntFunction");
+
+        // シーケンスから取得した値のブロック、next の添字で払い出す
+        InnerClass block = new InnerClass("Block");
+        block.setVisibility(JavaVisibility.PRIVATE);
+        block.setStatic(true);
+        block.setFinal(true);
+        Field ids = new Field("ids", new FullyQualifiedJavaType("long[]"));
+        ids.setVisibility(JavaVisibility.PRIVATE);
+        ids.setFinal(true);
+        block.addField(ids);
+        Field next = new Field("next", new FullyQualifiedJavaType("java.util.concurrent.atomic.AtomicInteger"));
+        next.setVisibility(JavaVisibility.PRIVATE);
+        next.setFinal(true);
+        next.setInitializationString("new AtomicInteger()");
+        block.addField(next);
+        Method blockConstructor = new Method("Block");
+        blockConstructor.setConstructor(true);
+        blockConstructor.setVisibility(JavaVisibility.PRIVATE);
+        blockConstructor.addParameter(new Parameter(new FullyQualifiedJavaType("long[]"), "ids"));
+        blockConstructor.addBodyLine("this.ids = ids;");
+        block.addMethod(blockConstructor);
+        topLevelClass.addInnerClass(block);
+
+        Field fetcher = new Field("fetcher", new FullyQualifiedJavaType("java.util.function.IntFunction<java.util.List<java.lang.Long>>"));
+        fetcher.setVisibility(JavaVisibility.PRIVATE);
+        fetcher.setFinal(true);
+        topLevelClass.addField(fetcher);
+
+        Field blockSize = new Field("blockSize", FullyQualifiedJavaType.getIntInstance());
+        blockSize.setVisibility(JavaVisibility.PRIVATE);
+        blockSize.setFinal(true);
+        topLevelClass.addField(blockSize);
+
+        Field current = new Field("current", new FullyQualifiedJavaType("Block"));
+        current.setVisibility(JavaVisibility.PRIVATE);
+        current.setVolatile(true);
+        current.setInitializationString("new Block(new long[0])");
+        topLevelClass.addField(current);
+
+        Method constructor = new Method(ID_ALLOCATOR);
+        constructor.setConstructor(true);
+        constructor.setVisibility(JavaVisibility.PUBLIC);
+        constructor.addParameter(new Parameter(new FullyQualifiedJavaType("java.util.function.IntFunction<java.util.List<java.lang.Long>>"), "fetcher"));
+        constructor.addParameter(new Parameter(FullyQualifiedJavaType.getIntInstance(), "blockSize"));
+        constructor.addBodyLine("if (blockSize <= 0) {");
+        constructor.addBodyLine("throw new IllegalArgumentException(\"blockSize must be positive\");");
+        constructor.addBodyLine("}");
+        constructor.addBodyLine("this.fetcher = fetcher;");
+        constructor.addBodyLine("this.blockSize = blockSize;");
+        topLevelClass.addMethod(constructor);
+
+        // 1件採番する(ブロックが残っている間はロックしない)
+        Method nextOne = new Method("next");
+        nextOne.setVisibility(JavaVisibility.PUBLIC);
+        nextOne.setReturnType(new FullyQualifiedJavaType("long"));
+        nextOne.addBodyLine("while (true) {");
+        nextOne.addBodyLine("Block block = current;");
+        nextOne.addBodyLine("int i = block.next.getAndIncrement();");
+        nextOne.addBodyLine("if (i < block.ids.length) {");
+        nextOne.addBodyLine("return block.ids[i];");
+        nextOne.addBodyLine("}");
+        nextOne.addBodyLine("refill(block);");
+        nextOne.addBodyLine("}");
+        topLevelClass.addMethod(nextOne);
+
+        // count件採番する(blockSize以上の場合は直接シーケンスから取得する)
+        Method nextMany = new Method("next");
+        nextMany.setVisibility(JavaVisibility.PUBLIC);
+        nextMany.setReturnType(new FullyQualifiedJavaType("long[]"));
+        nextMany.addParameter(new Parameter(FullyQualifiedJavaType.getIntInstance(), "count"));
+        nextMany.addBodyLine("if (count >= blockSize) {");
+        nextMany.addBodyLine("return fetch(count);");
+        nextMany.addBodyLine("}");
+        nextMany.addBodyLine("long[] ids = new long[count];");
+        nextMany.addBodyLine("for (int i = 0; i < count; i++) {");
+        nextMany.addBodyLine("ids[i] = next();");
+        nextMany.addBodyLine("}");
+        nextMany.addBodyLine("return ids;");
+        topLevelClass.addMethod(nextMany);
+
+        // 使い切ったブロックを1スレッドだけが入れ替える
+        Method refill = new Method("refill");
+        refill.setVisibility(JavaVisibility.PRIVATE);
+        refill.setSynchronized(true);
+        refill.addParameter(new Parameter(new FullyQualifiedJavaType("Block"), "used"));
+        refill.addBodyLine("if (current == used) {");
+        refill.addBodyLine("current = new Block(fetch(blockSize));");
+        refill.addBodyLine("}");
+        topLevelClass.addMethod(refill);
+
+        Method fetch = new Method("fetch");
+        fetch.setVisibility(JavaVisibility.PRIVATE);
+        fetch.setReturnType(new FullyQualifiedJavaType("long[]"));
+        fetch.addParameter(new Parameter(FullyQualifiedJavaType.getIntInstance(), "count"));
+        fetch.addBodyLine("List<Long> list = fetcher.apply(count);");
+        fetch.addBodyLine("if (list.size() != count) {");
+        fetch.addBodyLine("throw new IllegalStateException(\"sequence returned \" + list.size() + \" ids, expected \" + count);");
+        fetch.addBodyLine("}");
+        fetch.addBodyLine("long[] ids = new long[count];");
+        fetch.addBodyLine("for (int i = 0; i < count; i++) {");
+        fetch.addBodyLine("ids[i] = list.get(i);");
+        fetch.addBodyLine("}");
+        fetch.addBodyLine("return ids;");
+        topLevelClass.addMethod(fetch);
+
+        answer.add(new GeneratedJavaFile(topLevelClass,
+                context.getJavaClientGeneratorConfiguration().getTargetProject(),
+                context.getProperty(PropertyRegistry.CONTEXT_JAVA_FILE_ENCODING),
+                context.getJavaFormatter()));
+        return answer;
+    }
+}
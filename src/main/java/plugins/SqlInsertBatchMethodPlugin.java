@@ -0,0 +1,192 @@
+package plugins;
+
+import org.mybatis.generator.api.IntrospectedColumn;
+import org.mybatis.generator.api.IntrospectedTable;
+import org.mybatis.generator.api.PluginAdapter;
+import org.mybatis.generator.api.dom.java.*;
+import org.mybatis.generator.api.dom.xml.*;
+import org.mybatis.generator.codegen.mybatis3.ListUtilities;
+import org.mybatis.generator.codegen.mybatis3.MyBatis3FormattingUtilities;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.mybatis.generator.internal.util.StringUtility.isTrue;
+
+/**
+ * 複数行をまとめて登録するメソッドを追加する
+ * <p>
+ * insertBatchChunkは1回のSQL(values (...), (...), ...)で登録する。
+ * insertBatchはバインド変数の数が maxParameters を超えない件数ごとに分割して insertBatchChunk を呼び出す。
+ * AutoIncrement項目(autoIncrementTypeに一致する型、identity)は登録対象から除外し、DBで採番させる。
+ * preAssignedKeys に true を指定すると AutoIncrement項目も登録対象とし、値が null の行だけDBで採番させる。
+ * (SqlIdAllocatorMethodPlugin で事前に採番したキーをそのまま登録する)
+ *
+ * <pre>
+ * {@code int insertBatchChunk(@Param("rows") List<Model> rows);}
+ * {@code default int insertBatch(List<Model> rows);}
+ * </pre>
+ * <p>
+ * (プロパティ)
+ * autoIncrementType: AutoIncrement項目を特定するDBのデータ型(SqlReturningPluginと同じ、デフォルト smallserial, serial, bigserial)
+ * maxParameters: 1回のSQLのバインド変数の上限(デフォルト 32767 pgjdbcの上限)
+ * batchSize: 1回のSQLで登録する最大件数(デフォルト 1000)
+ * preAssignedKeys: AutoIncrement項目に設定済みの値を登録するか(デフォルト false)
+ *
+ * @code <plugin type="plugins.SqlInsertBatchMethodPlugin">
+ * <property name="autoIncrementType" value="smallserial, serial, bigserial"/>
+ * </plugin>
+ */
+public class SqlInsertBatchMethodPlugin extends PluginAdapter {
+
+    /**
+     * プロパティ名
+     */
+    private static final String PROPERTY_AUTOINCREMENT_TYPE = "autoIncrementType";
+    private static final String PROPERTY_MAX_PARAMETERS = "maxParameters";
+    private static final String PROPERTY_BATCH_SIZE = "batchSize";
+    private static final String PROPERTY_PRE_ASSIGNED_KEYS = "preAssignedKeys";
+
+    private static final int DEFAULT_MAX_PARAMETERS = 32767;
+    private static final int DEFAULT_BATCH_SIZE = 1000;
+
+    /**
+     * AutoIncrement項目のデータ型のリスト
+     */
+    private final List<String> autoIncrementTypeList = new ArrayList<>();
+    private int maxParameters = DEFAULT_MAX_PARAMETERS;
+    private int batchSize = DEFAULT_BATCH_SIZE;
+    private boolean preAssignedKeys;
+
+    @Override
+    public boolean validate(List<String> warnings) {
+        String types = properties.getProperty(PROPERTY_AUTOINCREMENT_TYPE);
+        autoIncrementTypeList.addAll(PluginUtil.parseAutoIncrementType(types));
+
+        String max = properties.getProperty(PROPERTY_MAX_PARAMETERS);
+        if (max != null) {
+            maxParameters = Integer.parseInt(max.trim());
+        }
+
+        String size = properties.getProperty(PROPERTY_BATCH_SIZE);
+        if (size != null) {
+            batchSize = Integer.parseInt(size.trim());
+        }
+
+        preAssignedKeys = isTrue(properties.getProperty(PROPERTY_PRE_ASSIGNED_KEYS));
+
+        if (maxParameters <= 0 || batchSize <= 0) {
+            warnings.add("Property maxParameters and batchSize must be positive for plugin "
+                    + this.getClass().getSimpleName());
+            return false;
+        }
+
+        return true;
+    }
+
+    /**
+     * 登録対象のカラム(AutoIncrement項目(preAssignedKeys が false の場合)、GeneratedAlways項目を除く)
+     */
+    private List<IntrospectedColumn> getInsertColumns(IntrospectedTable introspectedTable) {
+        return ListUtilities.removeGeneratedAlwaysColumns(introspectedTable.getAllColumns()).stream()
+                .filter(c -> preAssignedKeys || !PluginUtil.isAutoIncrement(c, autoIncrementTypeList))
+                .collect(Collectors.toList());
+    }
+
+    @Override
+    public boolean clientGenerated(Interface interfaze, IntrospectedTable introspectedTable) {
+
+        List<IntrospectedColumn> columns = getInsertColumns(introspectedTable);
+        if (columns.isEmpty()) {
+            return true;
+        }
+
+        // バインド変数の上限を超えない件数
+        int chunkSize = Math.max(1, Math.min(batchSize, maxParameters / columns.size()));
+
+        FullyQualifiedJavaType parameterType = introspectedTable.getRules().calculateAllFieldsClass();
+        FullyQualifiedJavaType listType = FullyQualifiedJavaType.getNewListInstance();
+        listType.addTypeArgument(parameterType);
+
+        // int insertBatchChunk(@Param("rows") List<Model> rows);
+        Method chunkMethod = new Method("insertBatchChunk");
+        chunkMethod.setReturnType(FullyQualifiedJavaType.getIntInstance());
+        chunkMethod.setVisibility(JavaVisibility.PUBLIC);
+        chunkMethod.setAbstract(true);
+        Parameter rows = new Parameter(listType, "rows");
+        rows.addAnnotation("@Param(\"rows\")");
+        chunkMethod.addParameter(rows);
+        context.getCommentGenerator().addGeneralMethodComment(chunkMethod, introspectedTable);
+
+        // default int insertBatch(List<Model> rows) { chunkSize件ごとに insertBatchChunk }
+        Method batchMethod = new Method("insertBatch");
+        batchMethod.setReturnType(FullyQualifiedJavaType.getIntInstance());
+        batchMethod.setVisibility(JavaVisibility.PUBLIC);
+        batchMethod.setDefault(true);
+        batchMethod.addParameter(new Parameter(listType, "rows"));
+        batchMethod.addBodyLine("int count = 0;");
+        batchMethod.addBodyLine("for (int i = 0; i < rows.size(); i += " + chunkSize + ") {");
+        batchMethod.addBodyLine("count += insertBatchChunk(rows.subList(i, Math.min(i + " + chunkSize + ", rows.size())));");
+        batchMethod.addBodyLine("}");
+        batchMethod.addBodyLine("return count;");
+        context.getCommentGenerator().addGeneralMethodComment(batchMethod, introspectedTable);
+
+        interfaze.addImportedType(parameterType);
+        interfaze.addImportedType(FullyQualifiedJavaType.getNewListInstance());
+        interfaze.addImportedType(new FullyQualifiedJavaType("org.apache.ibatis.annotations.Param"));
+        interfaze.addMethod(chunkMethod);
+        interfaze.addMethod(batchMethod);
+
+        return true;
+    }
+
+    @Override
+    public boolean sqlMapDocumentGenerated(Document document, IntrospectedTable introspectedTable) {
+
+        List<IntrospectedColumn> columns = getInsertColumns(introspectedTable);
+        if (columns.isEmpty()) {
+            return true;
+        }
+
+        List<XmlElement> addElementList = new ArrayList<>();
+
+        // XMLのタグ情報
+        XmlElement xmlElement = new XmlElement("insert");
+        xmlElement.addAttribute(new Attribute("id", "insertBatchChunk"));
+        xmlElement.addAttribute(new Attribute("parameterType", "map"));
+        context.getCommentGenerator().addComment(xmlElement);
+
+        // SQL命令の組み立て
+        xmlElement.addElement(new TextElement("insert into "
+                + introspectedTable.getFullyQualifiedTableNameAtRuntime() + " ("
+                + columns.stream()
+                .map(MyBatis3FormattingUtilities::getEscapedColumnName)
+                .collect(Collectors.joining(", ")) + ")"));
+        xmlElement.addElement(new TextElement("values"));
+
+        XmlElement foreach = new XmlElement("foreach");
+        foreach.addAttribute(new Attribute("collection", "rows"));
+        foreach.addAttribute(new Attribute("item", "row"));
+        foreach.addAttribute(new Attribute("separator", ","));
+        foreach.addElement(new TextElement("(" + columns.stream()
+                .map(c -> {
+                    String clause = MyBatis3FormattingUtilities.getParameterClause(c, "row.");
+                    if (PluginUtil.isAutoIncrement(c, autoIncrementTypeList)) {
+                        // 事前に採番していない行はシーケンスから採番する
+                        return "coalesce(" + clause + ", "
+                                + PluginUtil.getNextvalExpression(introspectedTable, c) + ")";
+                    }
+                    return clause;
+                })
+                .collect(Collectors.joining(", ")) + ")"));
+        xmlElement.addElement(foreach);
+
+        addElementList.add(xmlElement);
+
+        // XMLに新規メソッド用のSQLを追加
+        document.getRootElement().getElements().addAll(addElementList);
+
+        return true;
+    }
+}
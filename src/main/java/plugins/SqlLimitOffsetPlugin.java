@@ -0,0 +1,209 @@
+package plugins;
+
+import org.mybatis.generator.api.IntrospectedTable;
+import org.mybatis.generator.api.PluginAdapter;
+import org.mybatis.generator.api.dom.java.*;
+import org.mybatis.generator.api.dom.xml.*;
+
+import java.util.List;
+
+/**
+ * Exampleに limit, offset を追加し、selectByExample をSQLの limit, offset でページングする(Postgres)
+ * <p>
+ * RowBoundsPluginはクライアント側で読み飛ばすため、読み飛ばす行もDBから全て転送される。
+ * このプラグインは limit, offset をSQLに追加し、DB側で必要な行だけを返す。
+ * RenameExampleClassPluginでExampleのクラス名を変更した場合も対象になる。
+ *
+ * <pre>
+ * {@code
+ * example.setLimit(20);
+ * example.setOffset(40L);
+ * List<Model> list = mapper.selectByExample(example);
+ *
+ * List<Model> top = mapper.selectTopByExample(example, 10);
+ * }
+ * </pre>
+ * <pre>
+ * {@code
+ * select ... from table
+ * where ...
+ * order by ${orderByClause}
+ * <if test="limit != null">limit #{limit,jdbcType=INTEGER}</if>
+ * <if test="offset != null">offset #{offset,jdbcType=BIGINT}</if>
+ * }
+ * </pre>
+ * <p>
+ * selectTopByExample は example の limit, offset を変更せずに先頭 n 件を取得する。
+ * 並び順を保証するため orderByClause を指定すること。
+ */
+public class SqlLimitOffsetPlugin extends PluginAdapter {
+
+    @Override
+    public boolean validate(List<String> warnings) {
+        return true;
+    }
+
+    @Override
+    public boolean modelExampleClassGenerated(TopLevelClass topLevelClass, IntrospectedTable introspectedTable) {
+        addLimitOffsetProperties(topLevelClass);
+        return true;
+    }
+
+    /**
+     * Exampleに limit, offset のプロパティを追加する(既に追加されている場合は何もしない)
+     *
+     * @param topLevelClass Exampleクラス
+     */
+    public static void addLimitOffsetProperties(TopLevelClass topLevelClass) {
+
+        if (topLevelClass.getFields().stream().anyMatch(f -> "limit".equals(f.getName()))) {
+            return;
+        }
+        addProperty(topLevelClass, "limit", new FullyQualifiedJavaType("java.lang.Integer"));
+        addProperty(topLevelClass, "offset", new FullyQualifiedJavaType("java.lang.Long"));
+
+        // clear() で limit, offset も初期化する
+        topLevelClass.getMethods().stream()
+                .filter(m -> "clear".equals(m.getName()) && m.getParameters().isEmpty())
+                .findFirst()
+                .ifPresent(m -> {
+                    m.addBodyLine("limit = null;");
+                    m.addBodyLine("offset = null;");
+                });
+    }
+
+    private static void addProperty(TopLevelClass topLevelClass, String name, FullyQualifiedJavaType type) {
+        Field field = new Field(name, type);
+        field.setVisibility(JavaVisibility.PROTECTED);
+        topLevelClass.addField(field);
+
+        Method setter = new Method("set" + CreateGenericInterfacePlugin.capitalize(name));
+        setter.setVisibility(JavaVisibility.PUBLIC);
+        setter.addParameter(new Parameter(type, name));
+        setter.addBodyLine("this." + name + " = " + name + ";");
+        topLevelClass.addMethod(setter);
+
+        Method getter = new Method("get" + CreateGenericInterfacePlugin.capitalize(name));
+        getter.setVisibility(JavaVisibility.PUBLIC);
+        getter.setReturnType(type);
+        getter.addBodyLine("return " + name + ";");
+        topLevelClass.addMethod(getter);
+    }
+
+    /**
+     * limit, offset の要素を追加する
+     *
+     * @param element select要素
+     * @param prefix  パラメータのプレフィックス(example. 等)
+     */
+    public static void addLimitOffsetElements(XmlElement element, String prefix) {
+        XmlElement ifLimit = new XmlElement("if");
+        ifLimit.addAttribute(new Attribute("test", prefix + "limit != null"));
+        ifLimit.addElement(new TextElement("limit #{" + prefix + "limit,jdbcType=INTEGER}"));
+        element.addElement(ifLimit);
+
+        XmlElement ifOffset = new XmlElement("if");
+        ifOffset.addAttribute(new Attribute("test", prefix + "offset != null"));
+        ifOffset.addElement(new TextElement("offset #{" + prefix + "offset,jdbcType=BIGINT}"));
+        element.addElement(ifOffset);
+    }
+
+    @Override
+    public boolean sqlMapSelectByExampleWithoutBLOBsElementGenerated(XmlElement element, IntrospectedTable introspectedTable) {
+        addLimitOffsetElements(element, "");
+        return true;
+    }
+
+    @Override
+    public boolean sqlMapSelectByExampleWithBLOBsElementGenerated(XmlElement element, IntrospectedTable introspectedTable) {
+        addLimitOffsetElements(element, "");
+        return true;
+    }
+
+    /**
+     * selectTopByExample は example. を付けた条件(Update_By_Example_Where_Clause)を使うため、両方生成される場合のみ対象
+     */
+    private boolean isSelectTopTarget(IntrospectedTable introspectedTable) {
+        return introspectedTable.getRules().generateSelectByExampleWithoutBLOBs()
+                && introspectedTable.getRules().generateMyBatis3UpdateByExampleWhereClause();
+    }
+
+    @Override
+    public boolean clientGenerated(Interface interfaze, IntrospectedTable introspectedTable) {
+
+        if (!isSelectTopTarget(introspectedTable)) {
+            return true;
+        }
+
+        FullyQualifiedJavaType recordType = PluginUtil.getRecordType(introspectedTable);
+        FullyQualifiedJavaType exampleType = new FullyQualifiedJavaType(introspectedTable.getExampleType());
+        FullyQualifiedJavaType returnType = FullyQualifiedJavaType.getNewListInstance();
+        returnType.addTypeArgument(recordType);
+
+        // List<Model> selectTopByExample(@Param("example") ModelExample example, @Param("n") int n);
+        Method method = new Method("selectTopByExample");
+        method.setReturnType(returnType);
+        method.setVisibility(JavaVisibility.PUBLIC);
+        method.setAbstract(true);
+
+        Parameter example = new Parameter(exampleType, "example");
+        example.addAnnotation("@Param(\"example\")");
+        method.addParameter(example);
+        Parameter n = new Parameter(FullyQualifiedJavaType.getIntInstance(), "n");
+        n.addAnnotation("@Param(\"n\")");
+        method.addParameter(n);
+
+        // Javadocコメントを追加
+        context.getCommentGenerator().addGeneralMethodComment(method, introspectedTable);
+
+        // メソッドの追加
+        interfaze.addImportedType(recordType);
+        interfaze.addImportedType(exampleType);
+        interfaze.addImportedType(FullyQualifiedJavaType.getNewListInstance());
+        interfaze.addImportedType(new FullyQualifiedJavaType("org.apache.ibatis.annotations.Param"));
+        interfaze.addMethod(method);
+
+        return true;
+    }
+
+    @Override
+    public boolean sqlMapDocumentGenerated(Document document, IntrospectedTable introspectedTable) {
+
+        if (!isSelectTopTarget(introspectedTable)) {
+            return true;
+        }
+
+        // XMLのタグ情報
+        XmlElement xmlElement = new XmlElement("select");
+        xmlElement.addAttribute(new Attribute("id", "selectTopByExample"));
+        xmlElement.addAttribute(new Attribute("parameterType", "map"));
+        xmlElement.addAttribute(new Attribute("resultMap", introspectedTable.getBaseResultMapId()));
+        context.getCommentGenerator().addComment(xmlElement);
+
+        xmlElement.addElement(new TextElement("select"));
+        XmlElement ifDistinct = new XmlElement("if");
+        ifDistinct.addAttribute(new Attribute("test", "example != null and example.distinct"));
+        ifDistinct.addElement(new TextElement("distinct"));
+        xmlElement.addElement(ifDistinct);
+        xmlElement.addElement(PluginUtil.getBaseColumnListElement(introspectedTable));
+        xmlElement.addElement(new TextElement("from " + introspectedTable.getAliasedFullyQualifiedTableNameAtRuntime()));
+
+        XmlElement ifExample = new XmlElement("if");
+        ifExample.addAttribute(new Attribute("test", "example != null"));
+        XmlElement include = new XmlElement("include");
+        include.addAttribute(new Attribute("refid", introspectedTable.getMyBatis3UpdateByExampleWhereClauseId()));
+        ifExample.addElement(include);
+        xmlElement.addElement(ifExample);
+
+        XmlElement ifOrderBy = new XmlElement("if");
+        ifOrderBy.addAttribute(new Attribute("test", "example != null and example.orderByClause != null"));
+        ifOrderBy.addElement(new TextElement("order by ${example.orderByClause}"));
+        xmlElement.addElement(ifOrderBy);
+        xmlElement.addElement(new TextElement("limit #{n,jdbcType=INTEGER}"));
+
+        // XMLに新規メソッド用のSQLを追加
+        document.getRootElement().addElement(xmlElement);
+
+        return true;
+    }
+}
@@ -0,0 +1,143 @@
+package plugins;
+
+import org.mybatis.generator.api.IntrospectedTable;
+import org.mybatis.generator.api.PluginAdapter;
+import org.mybatis.generator.api.dom.xml.Attribute;
+import org.mybatis.generator.api.dom.xml.Document;
+import org.mybatis.generator.api.dom.xml.VisitableElement;
+import org.mybatis.generator.api.dom.xml.XmlElement;
+
+import java.util.List;
+import java.util.StringTokenizer;
+
+import static org.mybatis.generator.internal.util.StringUtility.isTrue;
+
+/**
+ * Mapper XMLにテーブル毎の2次キャッシュ(cache, cache-ref)の設定を追加する
+ * <p>
+ * プロパティ名の「.」以降にテーブル名のパターン(* は任意の文字列、? は任意の1文字)を指定する。
+ * 複数のパターンに一致する場合は、最も長いパターンの設定を利用する。(完全一致 &gt; nokey_* &gt; *)
+ * 生成したXMLを手で修正しなくてよいため、UnmergeableXmlMappersPlugin で再生成しても設定が消えない。
+ * <p>
+ * useCache は select、flushCache は insert, update, delete の全ての要素に設定する。(既に指定されている要素は変更しない)
+ * 他のプラグインが追加した要素も対象にするため、このプラグインは Sql*MethodPlugin より後に指定すること。
+ * キャッシュを利用するテーブルでは、RETURNING で更新結果を受け取る select(flushCache="true")に useCache="false" を設定する。
+ *
+ * <pre>
+ * {@code
+ * <cache eviction="LRU" flushInterval="600000" size="512" readOnly="true"/>
+ * <cache-ref namespace="com.example.mapper.OtherMapper"/>
+ * <select id="selectByPrimaryKey" useCache="true" ...>
+ * <update id="updateByPrimaryKey" flushCache="false" ...>
+ * }
+ * </pre>
+ * <p>
+ * (プロパティ)
+ * cache.パターン: cache要素の属性(属性名=値 をカンマ区切り、空の場合はMyBatisのデフォルト)
+ * cacheRef.パターン: cache-ref要素で参照する namespace(cache より優先)
+ * useCache.パターン: select要素の useCache(true/false)
+ * flushCache.パターン: insert, update, delete要素の flushCache(true/false)
+ *
+ * @code <plugin type="plugins.SqlMapCachePlugin">
+ * <property name="cache.m_*" value="eviction=LRU, flushInterval=600000, size=512, readOnly=true"/>
+ * <property name="useCache.m_*" value="true"/>
+ * <property name="useCache.*" value="false"/>
+ * </plugin>
+ */
+public class SqlMapCachePlugin extends PluginAdapter {
+
+    /**
+     * プロパティ名の接頭辞
+     */
+    private static final String PROPERTY_CACHE = "cache.";
+    private static final String PROPERTY_CACHE_REF = "cacheRef.";
+    private static final String PROPERTY_USE_CACHE = "useCache.";
+    private static final String PROPERTY_FLUSH_CACHE = "flushCache.";
+
+    @Override
+    public boolean validate(List<String> warnings) {
+        return true;
+    }
+
+    private String findByTable(String prefix, IntrospectedTable introspectedTable) {
+        return PluginUtil.findByPattern(properties, prefix, introspectedTable.getFullyQualifiedTable().getIntrospectedTableName());
+    }
+
+    private boolean hasAttribute(XmlElement element, String name) {
+        return element.getAttributes().stream().anyMatch(a -> name.equals(a.getName()));
+    }
+
+    /**
+     * cache または cache-ref の要素を作成する
+     *
+     * @param introspectedTable introspectedTable
+     * @return 要素(キャッシュを利用しないテーブルは null)
+     */
+    private XmlElement createCacheElement(IntrospectedTable introspectedTable) {
+        String namespace = findByTable(PROPERTY_CACHE_REF, introspectedTable);
+        if (namespace != null) {
+            XmlElement cacheRef = new XmlElement("cache-ref");
+            cacheRef.addAttribute(new Attribute("namespace", namespace.trim()));
+            return cacheRef;
+        }
+
+        String cacheAttributes = findByTable(PROPERTY_CACHE, introspectedTable);
+        if (cacheAttributes == null) {
+            return null;
+        }
+        XmlElement cache = new XmlElement("cache");
+        StringTokenizer st = new StringTokenizer(cacheAttributes, ", ", false);
+        while (st.hasMoreTokens()) {
+            String[] attribute = st.nextToken().split("=", 2);
+            if (attribute.length == 2) {
+                cache.addAttribute(new Attribute(attribute[0], attribute[1]));
+            }
+        }
+        return cache;
+    }
+
+    @Override
+    public boolean sqlMapDocumentGenerated(Document document, IntrospectedTable introspectedTable) {
+
+        XmlElement cache = createCacheElement(introspectedTable);
+        String useCache = findByTable(PROPERTY_USE_CACHE, introspectedTable);
+        String flushCache = findByTable(PROPERTY_FLUSH_CACHE, introspectedTable);
+
+        for (VisitableElement e : document.getRootElement().getElements()) {
+            if (!(e instanceof XmlElement)) {
+                continue;
+            }
+            XmlElement element = (XmlElement) e;
+            switch (element.getName()) {
+                case "select":
+                    if (hasAttribute(element, "useCache")) {
+                        break;
+                    }
+                    if (cache != null && element.getAttributes().stream()
+                            .anyMatch(a -> "flushCache".equals(a.getName()) && isTrue(a.getValue()))) {
+                        // RETURNING で更新結果を受け取る select はキャッシュしない
+                        element.addAttribute(new Attribute("useCache", "false"));
+                    } else if (useCache != null) {
+                        element.addAttribute(new Attribute("useCache", String.valueOf(isTrue(useCache))));
+                    }
+                    break;
+                case "insert":
+                case "update":
+                case "delete":
+                    if (flushCache != null && !hasAttribute(element, "flushCache")) {
+                        element.addAttribute(new Attribute("flushCache", String.valueOf(isTrue(flushCache))));
+                    }
+                    break;
+                default:
+                    break;
+            }
+        }
+
+        // XMLの先頭にキャッシュの設定を追加
+        if (cache != null) {
+            document.getRootElement().addElement(0, cache);
+        }
+
+        return true;
+    }
+}
@@ -5,11 +5,13 @@ import org.mybatis.generator.api.IntrospectedTable;
 import org.mybatis.generator.api.PluginAdapter;
 import org.mybatis.generator.api.dom.java.*;
 import org.mybatis.generator.api.dom.xml.*;
+import org.mybatis.generator.codegen.mybatis3.ListUtilities;
 import org.mybatis.generator.codegen.mybatis3.MyBatis3FormattingUtilities;
 
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Set;
+import java.util.StringTokenizer;
 import java.util.TreeSet;
 import java.util.stream.Collectors;
 
@@ -20,14 +22,49 @@ import java.util.stream.Collectors;
  * <pre>
  * {@code int merge(Model row);}
  * </pre>
+ * <p>
+ * 主キーがあるテーブルには複数行をまとめてMergeするメソッドも追加する。
+ * mergeBatchはバインド変数の数が maxParameters を超えない件数(最大 batchSize 件)ごとに分割して mergeBatchChunk を呼び出す。
+ * (Postgresは VALUES、Oracleは select ... from dual union all をMergeの結合元にする)
+ *
+ * <pre>
+ * {@code int mergeBatchChunk(@Param("rows") List<Model> rows);}
+ * {@code default int mergeBatch(List<Model> rows);}
+ * </pre>
+ * <p>
+ * (プロパティ)
+ * database: oracle(デフォルト) または postgres
+ * versionColumns: mergeBatchの更新時に+1する更新番号のカラム名(SqlUpdateVersionPlusOnePluginと同じ指定、複数指定時は最初に見つかったもの)
+ * maxVersionNum: 更新番号の最大値(超えたら1に戻す、デフォルト 99999999)
+ * maxParameters: 1回のSQLのバインド変数の上限(SqlInsertBatchMethodPluginと同じ、デフォルト 32767 pgjdbcの上限)
+ * batchSize: mergeBatchの1回のSQLで処理する件数(デフォルト 1000、バインド変数が maxParameters を超えない件数に制限する)
  */
 public class SqlMergeMethodPlugin extends PluginAdapter {
 
+    /**
+     * 1回のSQLのバインド変数の上限のデフォルト値(pgjdbc)
+     */
+    private static final int DEFAULT_MAX_PARAMETERS = 32767;
+
+    /**
+     * mergeBatchの1回のSQLで処理する件数のデフォルト値
+     */
+    private static final int DEFAULT_BATCH_SIZE = 1000;
+
     private final boolean isSimple = false;
     private String tableName;
     private String database;
     private String insertMethod;
     private String updateMethod;
+    private int maxParameters;
+    private int batchSize;
+
+    /**
+     * バージョンカラムのリスト
+     */
+    private final List<String> columnList = new ArrayList<>();
+
+    private String maxVersionNum = "99999999";
 
 
 
@@ -50,12 +87,48 @@ public class SqlMergeMethodPlugin extends PluginAdapter {
             updateMethod = "updateByPrimaryKey";
         }
 
-        return true;
-    }
+        String columns = properties.getProperty("versionColumns");
+        if (columns != null) {
+            StringTokenizer st = new StringTokenizer(columns, ", ", false);
+            while (st.hasMoreTokens()) {
+                columnList.add(st.nextToken());
+            }
+        }
 
+        String num = properties.getProperty("maxVersionNum");
+        if (num != null) {
+            maxVersionNum = num;
+        }
 
+        String size = properties.getProperty("batchSize");
+        batchSize = size == null ? DEFAULT_BATCH_SIZE : Integer.parseInt(size.trim());
+        String max = properties.getProperty("maxParameters");
+        maxParameters = max == null ? DEFAULT_MAX_PARAMETERS : Integer.parseInt(max.trim());
+        if (maxParameters <= 0 || batchSize <= 0) {
+            warnings.add("Property maxParameters and batchSize must be positive for plugin "
+                    + this.getClass().getSimpleName());
+            return false;
+        }
 
+        return true;
+    }
 
+    /**
+     * 指定されたカラムがテーブルに存在するか確認し、最初に見つかったものを返す。(主キーは対象外)
+     *
+     * @param introspectedTable introspectedTable
+     * @return バージョン管理用のカラム、存在しない場合はnull
+     */
+    private IntrospectedColumn findVersionColumn(IntrospectedTable introspectedTable) {
+        for (String colName : columnList) {
+            for (IntrospectedColumn col : introspectedTable.getNonPrimaryKeyColumns()) {
+                if (col.getActualColumnName().equals(colName)) {
+                    return col;
+                }
+            }
+        }
+        return null;
+    }
 
     @Override
     public boolean clientGenerated(Interface interfaze, IntrospectedTable introspectedTable) {
@@ -80,9 +153,55 @@ public class SqlMergeMethodPlugin extends PluginAdapter {
         interfaze.addImportedTypes(importedTypes);
         interfaze.addMethod(method);
 
+        // 主キーなしの場合、複数行Mergeは追加しない
+        if (introspectedTable.hasPrimaryKeyColumns()) {
+            addMergeBatchMethods(interfaze, introspectedTable, parameterType);
+        }
+
         return true;
     }
 
+    /**
+     * 複数行Merge用のメソッドを追加する
+     */
+    private void addMergeBatchMethods(Interface interfaze, IntrospectedTable introspectedTable,
+                                      FullyQualifiedJavaType parameterType) {
+
+        FullyQualifiedJavaType listType = FullyQualifiedJavaType.getNewListInstance();
+        listType.addTypeArgument(parameterType);
+
+        // int mergeBatchChunk(@Param("rows") List<Model> rows);
+        Method chunkMethod = new Method("mergeBatchChunk");
+        chunkMethod.setReturnType(FullyQualifiedJavaType.getIntInstance());
+        chunkMethod.setVisibility(JavaVisibility.PUBLIC);
+        chunkMethod.setAbstract(true);
+        Parameter rows = new Parameter(listType, "rows");
+        rows.addAnnotation("@Param(\"rows\")");
+        chunkMethod.addParameter(rows);
+        context.getCommentGenerator().addGeneralMethodComment(chunkMethod, introspectedTable);
+
+        // バインド変数の上限を超えない件数
+        int chunkSize = Math.max(1, Math.min(batchSize, maxParameters / getSourceColumns(introspectedTable).size()));
+
+        // default int mergeBatch(List<Model> rows) { chunkSize件ごとに mergeBatchChunk }
+        Method batchMethod = new Method("mergeBatch");
+        batchMethod.setReturnType(FullyQualifiedJavaType.getIntInstance());
+        batchMethod.setVisibility(JavaVisibility.PUBLIC);
+        batchMethod.setDefault(true);
+        batchMethod.addParameter(new Parameter(listType, "rows"));
+        batchMethod.addBodyLine("int count = 0;");
+        batchMethod.addBodyLine("for (int i = 0; i < rows.size(); i += " + chunkSize + ") {");
+        batchMethod.addBodyLine("count += mergeBatchChunk(rows.subList(i, Math.min(i + " + chunkSize + ", rows.size())));");
+        batchMethod.addBodyLine("}");
+        batchMethod.addBodyLine("return count;");
+        context.getCommentGenerator().addGeneralMethodComment(batchMethod, introspectedTable);
+
+        interfaze.addImportedType(FullyQualifiedJavaType.getNewListInstance());
+        interfaze.addImportedType(new FullyQualifiedJavaType("org.apache.ibatis.annotations.Param"));
+        interfaze.addMethod(chunkMethod);
+        interfaze.addMethod(batchMethod);
+    }
+
     @Override
     public boolean sqlMapDocumentGenerated(Document document, IntrospectedTable introspectedTable) {
 
@@ -145,12 +264,151 @@ public class SqlMergeMethodPlugin extends PluginAdapter {
         List<XmlElement> addElementList = new ArrayList<>();
         addElementList.add(xmlElement);
 
+        if (introspectedTable.hasPrimaryKeyColumns()) {
+            addElementList.add(createMergeBatchElement(introspectedTable));
+        }
+
         // XMLに新規メソッド用のSQLを追加
         document.getRootElement().getElements().addAll(addElementList);
 
         return true;
     }
 
+    /**
+     * 複数行Mergeの結合元のカラム(主キーと登録・更新対象のカラムを全て含める)、1行あたりのバインド変数
+     */
+    private List<IntrospectedColumn> getSourceColumns(IntrospectedTable introspectedTable) {
+        List<IntrospectedColumn> sourceColumns = new ArrayList<>(
+                ListUtilities.removeIdentityAndGeneratedAlwaysColumns(introspectedTable.getAllColumns()));
+        for (IntrospectedColumn column : introspectedTable.getPrimaryKeyColumns()) {
+            if (!sourceColumns.contains(column)) {
+                sourceColumns.add(0, column);
+            }
+        }
+        for (IntrospectedColumn column : ListUtilities.removeGeneratedAlwaysColumns(introspectedTable.getNonPrimaryKeyColumns())) {
+            if (!sourceColumns.contains(column)) {
+                sourceColumns.add(column);
+            }
+        }
+        return sourceColumns;
+    }
+
+    /**
+     * 複数行Merge用のSQLを作成
+     * <pre>
+     * merge into table tgt
+     * using (values (#{row.a}, #{row.b}), ...) src (a, b)           -- postgres
+     * using (select #{row.a} a, #{row.b} b from dual union all ...) src -- oracle
+     * on (tgt.a = src.a)
+     * when matched then update set b = src.b,
+     *   version = case when tgt.version = 99999999 then 1 else tgt.version + 1 end
+     * when not matched then insert (a, b) values (src.a, src.b)
+     * </pre>
+     */
+    private XmlElement createMergeBatchElement(IntrospectedTable introspectedTable) {
+
+        boolean isOracle = database.equals("oracle");
+
+        List<IntrospectedColumn> insertColumns =
+                ListUtilities.removeIdentityAndGeneratedAlwaysColumns(introspectedTable.getAllColumns());
+        List<IntrospectedColumn> updateColumns =
+                ListUtilities.removeGeneratedAlwaysColumns(introspectedTable.getNonPrimaryKeyColumns());
+        List<IntrospectedColumn> sourceColumns = getSourceColumns(introspectedTable);
+
+        XmlElement xmlElement = new XmlElement("update");
+        xmlElement.addAttribute(new Attribute("id", "mergeBatchChunk"));
+        xmlElement.addAttribute(new Attribute("parameterType", "map"));
+
+        context.getCommentGenerator().addComment(xmlElement);
+
+        xmlElement.addElement(new TextElement(
+                "merge into " + introspectedTable.getFullyQualifiedTableNameAtRuntime() + " tgt"));
+
+        XmlElement foreach = new XmlElement("foreach");
+        foreach.addAttribute(new Attribute("collection", "rows"));
+        foreach.addAttribute(new Attribute("item", "row"));
+
+        StringBuilder sb = new StringBuilder();
+        if (isOracle) {
+            // select #{row.a} a, #{row.b} b from dual union all select ...
+            foreach.addAttribute(new Attribute("separator", "union all"));
+            sb.append("select ");
+            for (int i = 0; i < sourceColumns.size(); i++) {
+                IntrospectedColumn column = sourceColumns.get(i);
+                if (i != 0) {
+                    sb.append(", ");
+                }
+                sb.append(MyBatis3FormattingUtilities.getParameterClause(column, "row."))
+                        .append(' ')
+                        .append(MyBatis3FormattingUtilities.getEscapedColumnName(column));
+            }
+            sb.append(" from dual");
+            xmlElement.addElement(new TextElement("using ("));
+            foreach.addElement(new TextElement(sb.toString()));
+            xmlElement.addElement(foreach);
+            xmlElement.addElement(new TextElement(") src"));
+        } else {
+            // values (#{row.a}::type, #{row.b}::type), (...)
+            // nullだけの列が text と推論されない様に、型をキャストする
+            foreach.addAttribute(new Attribute("separator", ","));
+            sb.append('(');
+            for (int i = 0; i < sourceColumns.size(); i++) {
+                IntrospectedColumn column = sourceColumns.get(i);
+                if (i != 0) {
+                    sb.append(", ");
+                }
+                sb.append(MyBatis3FormattingUtilities.getParameterClause(column, "row."))
+                        .append("::")
+                        .append(PluginUtil.getPostgresTypeName(column));
+            }
+            sb.append(')');
+            xmlElement.addElement(new TextElement("using (values"));
+            foreach.addElement(new TextElement(sb.toString()));
+            xmlElement.addElement(foreach);
+            xmlElement.addElement(new TextElement(") src ("
+                    + sourceColumns.stream()
+                    .map(MyBatis3FormattingUtilities::getEscapedColumnName)
+                    .collect(Collectors.joining(", "))
+                    + ")"));
+        }
+
+        // on (tgt.a = src.a and ...)
+        xmlElement.addElement(new TextElement("on (" + introspectedTable.getPrimaryKeyColumns().stream()
+                .map(MyBatis3FormattingUtilities::getEscapedColumnName)
+                .map(c -> "tgt." + c + " = src." + c)
+                .collect(Collectors.joining(" and ")) + ")"));
+
+        // update
+        if (!updateColumns.isEmpty()) {
+            IntrospectedColumn versionColumn = findVersionColumn(introspectedTable);
+            List<String> setClauses = new ArrayList<>();
+            for (IntrospectedColumn column : updateColumns) {
+                String name = MyBatis3FormattingUtilities.getEscapedColumnName(column);
+                if (column == versionColumn) {
+                    // version = case when tgt.version = 99999999 then 1 else tgt.version + 1 end
+                    setClauses.add(name + " = case when tgt." + name + " = " + maxVersionNum
+                            + " then 1 else tgt." + name + " + 1 end");
+                } else {
+                    setClauses.add(name + " = src." + name);
+                }
+            }
+            xmlElement.addElement(new TextElement("when matched then"));
+            xmlElement.addElement(new TextElement("update set " + String.join(", ", setClauses)));
+        }
+
+        // insert
+        xmlElement.addElement(new TextElement("when not matched then"));
+        xmlElement.addElement(new TextElement("insert (" + insertColumns.stream()
+                .map(MyBatis3FormattingUtilities::getEscapedColumnName)
+                .collect(Collectors.joining(", ")) + ")"));
+        xmlElement.addElement(new TextElement("values (" + insertColumns.stream()
+                .map(MyBatis3FormattingUtilities::getEscapedColumnName)
+                .map(c -> "src." + c)
+                .collect(Collectors.joining(", ")) + ")"));
+
+        return xmlElement;
+    }
+
     /**
      *　標準のInsertSqlを加工して、Merge用のInsertSQLを作成(テーブル名を削除)
      */
@@ -0,0 +1,304 @@
+package plugins;
+
+import org.mybatis.generator.api.IntrospectedColumn;
+import org.mybatis.generator.api.IntrospectedTable;
+import org.mybatis.generator.api.PluginAdapter;
+import org.mybatis.generator.api.dom.java.*;
+import org.mybatis.generator.api.dom.xml.Attribute;
+import org.mybatis.generator.api.dom.xml.Document;
+import org.mybatis.generator.api.dom.xml.TextElement;
+import org.mybatis.generator.api.dom.xml.XmlElement;
+import org.mybatis.generator.codegen.mybatis3.ListUtilities;
+import org.mybatis.generator.codegen.mybatis3.MyBatis3FormattingUtilities;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.StringTokenizer;
+import java.util.stream.Collectors;
+
+/**
+ * DBで値が決まる項目を、登録・更新と同じ1回の通信でモデルに書き戻すメソッドを追加する(Postgres)
+ * <p>
+ * SetGeneratedKeyPlugin は登録後に SELECT SCOPE_IDENTITY() を別途実行する(SQLServer用)。
+ * このプラグインは useGeneratedKeys と keyColumn を指定し、pgjdbc が SQL の末尾に RETURNING を付けて実行する。
+ * 返された値は MyBatis が引数のモデルに設定するため、登録・更新後に再検索する必要がない。
+ * <p>
+ * insertReturning: AutoIncrement項目(autoIncrementTypeに一致する型、identity)と defaultColumns は登録対象から除外し、
+ * DBで採番・デフォルト値を設定させた上で、returningColumns(トリガーで設定される項目等)と合わせてモデルに書き戻す。
+ * <p>
+ * updateByPrimaryKeyReturning: 更新番号を SqlUpdateVersionPlusOnePlugin と同じ式で +1 し、
+ * 更新後の更新番号と returningColumns をモデルに書き戻す。
+ * updateByPrimaryKeyAndVersionReturning: 更新番号が一致した場合のみ更新する。(戻り値 0 は他で更新済み)
+ *
+ * <pre>
+ * {@code int insertReturning(Model row);}
+ * {@code int updateByPrimaryKeyReturning(Model row);}               -- 主キーがあるテーブルのみ
+ * {@code int updateByPrimaryKeyAndVersionReturning(Model row);}     -- 主キー以外に更新番号のカラムがあるテーブルのみ
+ * </pre>
+ * <pre>
+ * {@code
+ * insert into table (a, b) values (#{a}, #{b})
+ * RETURNING "id", "version", "created_date"          -- pgjdbc が付与する
+ *
+ * update table
+ * set a = #{a}, version = case when version = 99999999 then 1 else version + 1 end
+ * where pk = #{pk} and version = #{version}
+ * RETURNING "version", "last_modified_date"          -- pgjdbc が付与する
+ * }
+ * </pre>
+ * <p>
+ * (プロパティ)
+ * autoIncrementType: AutoIncrement項目を特定するDBのデータ型(デフォルト smallserial, serial, bigserial)
+ * defaultColumns: 登録時にDBのデフォルト値を利用するカラム名(カンマ区切り)
+ * returningColumns: トリガー等でDBが設定し、登録・更新後にモデルに書き戻すカラム名(カンマ区切り)
+ * versionColumns: 更新番号のカラム名(SqlUpdateVersionPlusOnePlugin と同じ)
+ * maxVersionNum: 更新番号の最大値、超えると1に戻す(デフォルト 99999999)
+ *
+ * @code <plugin type="plugins.SqlReturningPlugin">
+ * <property name="defaultColumns" value="version, created_date"/>
+ * <property name="returningColumns" value="last_modified_date"/>
+ * <property name="versionColumns" value="version, lock_version"/>
+ * </plugin>
+ */
+public class SqlReturningPlugin extends PluginAdapter {
+
+    /**
+     * プロパティ名
+     */
+    private static final String PROPERTY_AUTOINCREMENT_TYPE = "autoIncrementType";
+    private static final String PROPERTY_DEFAULT_COLUMNS = "defaultColumns";
+    private static final String PROPERTY_RETURNING_COLUMNS = "returningColumns";
+    private static final String PROPERTY_VERSION_COLUMNS = "versionColumns";
+    private static final String PROPERTY_MAX_VERSION_NUM = "maxVersionNum";
+
+    private final List<String> autoIncrementTypeList = new ArrayList<>();
+    private final List<String> defaultColumnList = new ArrayList<>();
+    private final List<String> returningColumnList = new ArrayList<>();
+    private final List<String> versionColumnList = new ArrayList<>();
+    private String maxVersionNum = "99999999";
+
+    @Override
+    public boolean validate(List<String> warnings) {
+
+        autoIncrementTypeList.addAll(PluginUtil.parseAutoIncrementType(
+                properties.getProperty(PROPERTY_AUTOINCREMENT_TYPE)));
+        defaultColumnList.addAll(parseColumns(properties.getProperty(PROPERTY_DEFAULT_COLUMNS)));
+        returningColumnList.addAll(parseColumns(properties.getProperty(PROPERTY_RETURNING_COLUMNS)));
+        versionColumnList.addAll(parseColumns(properties.getProperty(PROPERTY_VERSION_COLUMNS)));
+
+        String num = properties.getProperty(PROPERTY_MAX_VERSION_NUM);
+        if (num != null) {
+            maxVersionNum = num;
+        }
+
+        return true;
+    }
+
+    private List<String> parseColumns(String columns) {
+        List<String> list = new ArrayList<>();
+        if (columns != null) {
+            StringTokenizer st = new StringTokenizer(columns, ", ", false);
+            while (st.hasMoreTokens()) {
+                list.add(st.nextToken());
+            }
+        }
+        return list;
+    }
+
+    private boolean contains(List<String> columnList, IntrospectedColumn column) {
+        return columnList.stream().anyMatch(c -> c.equalsIgnoreCase(column.getActualColumnName()));
+    }
+
+    /**
+     * 指定されたカラムがテーブルに存在するか確認し、最初に見つかった主キー以外のカラムを返す。
+     *
+     * @param introspectedTable introspectedTable
+     * @return 更新番号のカラム(見つからない場合は null)
+     */
+    private IntrospectedColumn findVersionColumn(IntrospectedTable introspectedTable) {
+        for (String colName : versionColumnList) {
+            for (IntrospectedColumn col : introspectedTable.getNonPrimaryKeyColumns()) {
+                if (col.getActualColumnName().equals(colName)) {
+                    return col;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 登録時にDBで値を決めるカラム(AutoIncrement項目、defaultColumns)
+     */
+    private boolean isGeneratedOnInsert(IntrospectedColumn column) {
+        return PluginUtil.isAutoIncrement(column, autoIncrementTypeList)
+                || contains(defaultColumnList, column);
+    }
+
+    /**
+     * 登録対象のカラム(DBで値を決めるカラム、GeneratedAlways項目を除く)
+     */
+    private List<IntrospectedColumn> getInsertColumns(IntrospectedTable introspectedTable) {
+        return ListUtilities.removeGeneratedAlwaysColumns(introspectedTable.getAllColumns()).stream()
+                .filter(c -> !isGeneratedOnInsert(c))
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * 登録後にモデルに書き戻すカラム
+     */
+    private List<IntrospectedColumn> getInsertReturningColumns(IntrospectedTable introspectedTable) {
+        return introspectedTable.getAllColumns().stream()
+                .filter(c -> isGeneratedOnInsert(c) || c.isGeneratedAlways() || contains(returningColumnList, c))
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * 更新対象のカラム(主キー、GeneratedAlways項目を除く)
+     */
+    private List<IntrospectedColumn> getUpdateColumns(IntrospectedTable introspectedTable) {
+        return ListUtilities.removeGeneratedAlwaysColumns(introspectedTable.getNonPrimaryKeyColumns());
+    }
+
+    /**
+     * 更新後にモデルに書き戻すカラム(更新番号、returningColumns)
+     */
+    private List<IntrospectedColumn> getUpdateReturningColumns(IntrospectedTable introspectedTable) {
+        IntrospectedColumn versionColumn = findVersionColumn(introspectedTable);
+        return introspectedTable.getNonPrimaryKeyColumns().stream()
+                .filter(c -> c == versionColumn || contains(returningColumnList, c))
+                .collect(Collectors.toList());
+    }
+
+    private boolean isInsertTarget(IntrospectedTable introspectedTable) {
+        return !getInsertColumns(introspectedTable).isEmpty()
+                && !getInsertReturningColumns(introspectedTable).isEmpty();
+    }
+
+    private boolean isUpdateTarget(IntrospectedTable introspectedTable) {
+        return introspectedTable.hasPrimaryKeyColumns()
+                && !getUpdateColumns(introspectedTable).isEmpty()
+                && !getUpdateReturningColumns(introspectedTable).isEmpty();
+    }
+
+    private void addMethod(Interface interfaze, IntrospectedTable introspectedTable, String name) {
+        Method method = new Method(name);
+        method.setReturnType(FullyQualifiedJavaType.getIntInstance());
+        method.setVisibility(JavaVisibility.PUBLIC);
+        method.setAbstract(true);
+        method.addParameter(new Parameter(introspectedTable.getRules().calculateAllFieldsClass(), "row"));
+        context.getCommentGenerator().addGeneralMethodComment(method, introspectedTable);
+        interfaze.addMethod(method);
+    }
+
+    @Override
+    public boolean clientGenerated(Interface interfaze, IntrospectedTable introspectedTable) {
+
+        if (isInsertTarget(introspectedTable)) {
+            addMethod(interfaze, introspectedTable, "insertReturning");
+        }
+        if (isUpdateTarget(introspectedTable)) {
+            addMethod(interfaze, introspectedTable, "updateByPrimaryKeyReturning");
+            if (findVersionColumn(introspectedTable) != null) {
+                addMethod(interfaze, introspectedTable, "updateByPrimaryKeyAndVersionReturning");
+            }
+        }
+        interfaze.addImportedType(introspectedTable.getRules().calculateAllFieldsClass());
+
+        return true;
+    }
+
+    /**
+     * useGeneratedKeys で RETURNING の結果をモデルに書き戻すSQLを作成する
+     *
+     * @param name              要素名(insert, update)
+     * @param id                id
+     * @param introspectedTable introspectedTable
+     * @param returningColumns  書き戻すカラム
+     * @return SQLの要素
+     */
+    private XmlElement createReturningElement(String name, String id, IntrospectedTable introspectedTable,
+                                              List<IntrospectedColumn> returningColumns) {
+        XmlElement xmlElement = new XmlElement(name);
+        xmlElement.addAttribute(new Attribute("id", id));
+        xmlElement.addAttribute(new Attribute("parameterType",
+                introspectedTable.getRules().calculateAllFieldsClass().getFullyQualifiedName()));
+        xmlElement.addAttribute(new Attribute("useGeneratedKeys", "true"));
+        xmlElement.addAttribute(new Attribute("keyProperty", returningColumns.stream()
+                .map(IntrospectedColumn::getJavaProperty)
+                .collect(Collectors.joining(","))));
+        xmlElement.addAttribute(new Attribute("keyColumn", returningColumns.stream()
+                .map(IntrospectedColumn::getActualColumnName)
+                .collect(Collectors.joining(","))));
+        context.getCommentGenerator().addComment(xmlElement);
+        return xmlElement;
+    }
+
+    private XmlElement createInsertElement(IntrospectedTable introspectedTable) {
+        List<IntrospectedColumn> columns = getInsertColumns(introspectedTable);
+
+        XmlElement xmlElement = createReturningElement("insert", "insertReturning", introspectedTable,
+                getInsertReturningColumns(introspectedTable));
+
+        // insert into table (a, b) values (#{a}, #{b})
+        xmlElement.addElement(new TextElement("insert into "
+                + introspectedTable.getFullyQualifiedTableNameAtRuntime() + " ("
+                + columns.stream()
+                .map(MyBatis3FormattingUtilities::getEscapedColumnName)
+                .collect(Collectors.joining(", ")) + ")"));
+        xmlElement.addElement(new TextElement("values (" + columns.stream()
+                .map(c -> MyBatis3FormattingUtilities.getParameterClause(c))
+                .collect(Collectors.joining(", ")) + ")"));
+        return xmlElement;
+    }
+
+    private XmlElement createUpdateElement(IntrospectedTable introspectedTable, String id, boolean checkVersion) {
+        IntrospectedColumn versionColumn = findVersionColumn(introspectedTable);
+
+        XmlElement xmlElement = createReturningElement("update", id, introspectedTable,
+                getUpdateReturningColumns(introspectedTable));
+
+        // set a = #{a}, version = case when version = max then 1 else version + 1 end
+        xmlElement.addElement(new TextElement("update " + introspectedTable.getFullyQualifiedTableNameAtRuntime()));
+        xmlElement.addElement(new TextElement("set " + getUpdateColumns(introspectedTable).stream()
+                .map(c -> {
+                    String name = MyBatis3FormattingUtilities.getEscapedColumnName(c);
+                    if (c == versionColumn) {
+                        return name + " = case when " + name + " = " + maxVersionNum
+                                + " then 1 else " + name + " + 1 end";
+                    }
+                    return name + " = " + MyBatis3FormattingUtilities.getParameterClause(c);
+                })
+                .collect(Collectors.joining(", "))));
+
+        // where pk = #{pk} (and version = #{version})
+        List<IntrospectedColumn> whereColumns = new ArrayList<>(introspectedTable.getPrimaryKeyColumns());
+        if (checkVersion) {
+            whereColumns.add(versionColumn);
+        }
+        xmlElement.addElement(new TextElement("where " + whereColumns.stream()
+                .map(c -> MyBatis3FormattingUtilities.getEscapedColumnName(c)
+                        + " = " + MyBatis3FormattingUtilities.getParameterClause(c))
+                .collect(Collectors.joining(" and "))));
+        return xmlElement;
+    }
+
+    @Override
+    public boolean sqlMapDocumentGenerated(Document document, IntrospectedTable introspectedTable) {
+
+        List<XmlElement> addElementList = new ArrayList<>();
+        if (isInsertTarget(introspectedTable)) {
+            addElementList.add(createInsertElement(introspectedTable));
+        }
+        if (isUpdateTarget(introspectedTable)) {
+            addElementList.add(createUpdateElement(introspectedTable, "updateByPrimaryKeyReturning", false));
+            if (findVersionColumn(introspectedTable) != null) {
+                addElementList.add(createUpdateElement(introspectedTable, "updateByPrimaryKeyAndVersionReturning", true));
+            }
+        }
+
+        // XMLに新規メソッド用のSQLを追加
+        document.getRootElement().getElements().addAll(addElementList);
+
+        return true;
+    }
+}
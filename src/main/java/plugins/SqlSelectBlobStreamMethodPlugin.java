@@ -0,0 +1,416 @@
+package plugins;
+
+import org.mybatis.generator.api.GeneratedJavaFile;
+import org.mybatis.generator.api.IntrospectedColumn;
+import org.mybatis.generator.api.IntrospectedTable;
+import org.mybatis.generator.api.PluginAdapter;
+import org.mybatis.generator.api.dom.java.*;
+import org.mybatis.generator.api.dom.xml.*;
+import org.mybatis.generator.codegen.mybatis3.MyBatis3FormattingUtilities;
+import org.mybatis.generator.config.PropertyRegistry;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static plugins.CreateGenericInterfacePlugin.capitalize;
+
+/**
+ * BLOB項目を1項目ずつ InputStream、Reader で取得するメソッドを追加する
+ * <p>
+ * defaultModelType="conditional" の場合、BLOB項目(text、bytea等)は ModelWithBLOBs に分かれる。
+ * 一覧は selectByExample(BLOB項目なし)で取得し、BLOB項目は必要になった時に1項目だけ取得する。
+ * bytea等のバイナリは InputStream、text等の文字列は Reader で返す。
+ *
+ * <pre>
+ * {@code InputStream selectField15ByPrimaryKey(Key key);}            -- 主キーがあるテーブルのみ
+ * {@code List<Reader> selectField14ByExample(ModelExample example);}
+ * </pre>
+ * 上記はデフォルトメソッドで、SQLは selectXxxValueByPrimaryKey、selectXxxValueByExample(戻り値は StreamValue)で実行する。
+ * resultMap の type を InputStream、Reader にすると、MyBatisは result に指定した typeHandler ではなく
+ * 標準の TypeHandler を使うため、値を StreamValue のプロパティに詰めて返す。
+ * <p>
+ * MyBatis標準の BlobInputStreamTypeHandler、ClobReaderTypeHandler は getBlob、getClob を使うため、
+ * Postgresの bytea、text では利用できない。
+ * getBinaryStream、getCharacterStream で取得するTypeHandler(InputStreamTypeHandler、ReaderTypeHandler)を作成する。
+ * ただしDBから逐次読み込むわけではなく、値は全てメモリ上に読み込まれる。
+ * (pgjdbcの bytea、text は行の取得時に全て読み込み、それを InputStream、Reader で包んで返す。CallableStatement は getBytes で取得する)
+ * 読み込む量を減らせるのは、一覧で BLOB項目を取得せず、必要な1行の1項目だけを取得する点のみ。
+ * <p>
+ * (プロパティ)
+ * typeHandlerPackage: TypeHandlerの出力先パッケージ(デフォルト Mapperインタフェースと同じパッケージ)
+ * (StreamValue は Mapperインタフェースと同じパッケージに作成する)
+ *
+ * @code <plugin type="plugins.SqlSelectBlobStreamMethodPlugin">
+ * <property name="typeHandlerPackage" value="com.example.typehandler"/>
+ * </plugin>
+ */
+public class SqlSelectBlobStreamMethodPlugin extends PluginAdapter {
+
+    /**
+     * プロパティ名
+     */
+    private static final String PROPERTY_TYPE_HANDLER_PACKAGE = "typeHandlerPackage";
+
+    private static final String INPUT_STREAM_TYPE_HANDLER = "InputStreamTypeHandler";
+    private static final String READER_TYPE_HANDLER = "ReaderTypeHandler";
+    private static final String STREAM_VALUE = "StreamValue";
+
+    private String typeHandlerPackage;
+
+    /**
+     * 利用したTypeHandler
+     */
+    private boolean useInputStream;
+    private boolean useReader;
+    private boolean useStreamValue;
+
+    @Override
+    public boolean validate(List<String> warnings) {
+        if (context.getJavaClientGeneratorConfiguration() == null) {
+            warnings.add("javaClientGenerator is required for plugin " + this.getClass().getSimpleName());
+            return false;
+        }
+        typeHandlerPackage = properties.getProperty(PROPERTY_TYPE_HANDLER_PACKAGE,
+                context.getJavaClientGeneratorConfiguration().getTargetPackage());
+        return true;
+    }
+
+    /**
+     * 対象のBLOB項目(Javaの型が byte[] または String)
+     */
+    private List<IntrospectedColumn> getStreamColumns(IntrospectedTable introspectedTable) {
+        return introspectedTable.getBLOBColumns().stream()
+                .filter(c -> isBinary(c) || isCharacter(c))
+                .collect(Collectors.toList());
+    }
+
+    private boolean isBinary(IntrospectedColumn column) {
+        return "byte[]".equals(column.getFullyQualifiedJavaType().getFullyQualifiedName());
+    }
+
+    private boolean isCharacter(IntrospectedColumn column) {
+        return column.getFullyQualifiedJavaType().equals(FullyQualifiedJavaType.getStringInstance());
+    }
+
+    /**
+     * 戻り値の型(InputStream または Reader)
+     */
+    private FullyQualifiedJavaType getStreamType(IntrospectedColumn column) {
+        return new FullyQualifiedJavaType(isBinary(column) ? "java.io.InputStream" : "java.io.Reader");
+    }
+
+    private String getStreamValueType() {
+        return context.getJavaClientGeneratorConfiguration().getTargetPackage() + "." + STREAM_VALUE;
+    }
+
+    /**
+     * StreamValue<InputStream> または StreamValue<Reader>
+     */
+    private FullyQualifiedJavaType getStreamValueType(IntrospectedColumn column) {
+        FullyQualifiedJavaType type = new FullyQualifiedJavaType(getStreamValueType());
+        type.addTypeArgument(getStreamType(column));
+        return type;
+    }
+
+    /**
+     * メソッドの引数名をカンマ区切りにする(デフォルトメソッドから呼び出す時に使う)
+     */
+    private String getArguments(Method method) {
+        return method.getParameters().stream()
+                .map(Parameter::getName)
+                .collect(Collectors.joining(", "));
+    }
+
+    @Override
+    public boolean clientGenerated(Interface interfaze, IntrospectedTable introspectedTable) {
+
+        List<IntrospectedColumn> columns = getStreamColumns(introspectedTable);
+        if (columns.isEmpty()) {
+            return true;
+        }
+
+        for (IntrospectedColumn column : columns) {
+            FullyQualifiedJavaType streamType = getStreamType(column);
+            FullyQualifiedJavaType valueType = getStreamValueType(column);
+            String property = capitalize(column.getJavaProperty());
+            interfaze.addImportedType(streamType);
+            interfaze.addImportedType(new FullyQualifiedJavaType(getStreamValueType()));
+
+            // StreamValue<InputStream> selectXxxValueByPrimaryKey(Key key);(selectByPrimaryKeyと同じ引数)
+            // default InputStream selectXxxByPrimaryKey(Key key)
+            if (introspectedTable.getRules().generateSelectByPrimaryKey()) {
+                Method method = new Method("select" + property + "ValueByPrimaryKey");
+                method.setReturnType(valueType);
+                method.setVisibility(JavaVisibility.PUBLIC);
+                method.setAbstract(true);
+                PluginUtil.addPrimaryKeyParameters(method, interfaze, introspectedTable);
+                context.getCommentGenerator().addGeneralMethodComment(method, introspectedTable);
+                interfaze.addMethod(method);
+
+                Method unwrap = new Method("select" + property + "ByPrimaryKey");
+                unwrap.setReturnType(streamType);
+                unwrap.setVisibility(JavaVisibility.PUBLIC);
+                unwrap.setDefault(true);
+                PluginUtil.addPrimaryKeyParameters(unwrap, interfaze, introspectedTable);
+                context.getCommentGenerator().addGeneralMethodComment(unwrap, introspectedTable);
+                unwrap.addBodyLine(valueType.getShortName() + " value = " + method.getName() + "(" + getArguments(method) + ");");
+                unwrap.addBodyLine("return value == null ? null : value.getValue();");
+                interfaze.addMethod(unwrap);
+            }
+
+            // List<StreamValue<InputStream>> selectXxxValueByExample(ModelExample example);
+            // default List<InputStream> selectXxxByExample(ModelExample example)
+            if (introspectedTable.getRules().generateSelectByExampleWithBLOBs()) {
+                FullyQualifiedJavaType exampleType = new FullyQualifiedJavaType(introspectedTable.getExampleType());
+                FullyQualifiedJavaType valueListType = FullyQualifiedJavaType.getNewListInstance();
+                valueListType.addTypeArgument(valueType);
+                Method method = new Method("select" + property + "ValueByExample");
+                method.setReturnType(valueListType);
+                method.setVisibility(JavaVisibility.PUBLIC);
+                method.setAbstract(true);
+                method.addParameter(new Parameter(exampleType, "example"));
+                context.getCommentGenerator().addGeneralMethodComment(method, introspectedTable);
+                interfaze.addMethod(method);
+
+                FullyQualifiedJavaType listType = FullyQualifiedJavaType.getNewListInstance();
+                listType.addTypeArgument(streamType);
+                Method unwrap = new Method("select" + property + "ByExample");
+                unwrap.setReturnType(listType);
+                unwrap.setVisibility(JavaVisibility.PUBLIC);
+                unwrap.setDefault(true);
+                unwrap.addParameter(new Parameter(exampleType, "example"));
+                context.getCommentGenerator().addGeneralMethodComment(unwrap, introspectedTable);
+                unwrap.addBodyLine(listType.getShortName() + " list = new ArrayList<>();");
+                unwrap.addBodyLine("for (" + valueType.getShortName() + " value : " + method.getName() + "(example)) {");
+                unwrap.addBodyLine("list.add(value == null ? null : value.getValue());");
+                unwrap.addBodyLine("}");
+                unwrap.addBodyLine("return list;");
+                interfaze.addMethod(unwrap);
+
+                interfaze.addImportedType(exampleType);
+                interfaze.addImportedType(FullyQualifiedJavaType.getNewListInstance());
+                interfaze.addImportedType(FullyQualifiedJavaType.getNewArrayListInstance());
+            }
+        }
+
+        return true;
+    }
+
+    @Override
+    public boolean sqlMapDocumentGenerated(Document document, IntrospectedTable introspectedTable) {
+
+        List<IntrospectedColumn> columns = getStreamColumns(introspectedTable);
+        if (columns.isEmpty()) {
+            return true;
+        }
+        useStreamValue = true;
+
+        List<XmlElement> addElementList = new ArrayList<>();
+
+        for (IntrospectedColumn column : columns) {
+            String property = capitalize(column.getJavaProperty());
+            String resultMapId = property + "StreamResultMap";
+            String typeHandler;
+            if (isBinary(column)) {
+                typeHandler = INPUT_STREAM_TYPE_HANDLER;
+                useInputStream = true;
+            } else {
+                typeHandler = READER_TYPE_HANDLER;
+                useReader = true;
+            }
+
+            // <resultMap type="StreamValue"><result column="x" property="value" typeHandler="..."/></resultMap>
+            // (resultMap の type を InputStream、Reader にすると、MyBatisは result の typeHandler を使わずに
+            //  標準の BlobInputStreamTypeHandler、ClobReaderTypeHandler で取得するため、StreamValue に詰める)
+            XmlElement resultMap = new XmlElement("resultMap");
+            resultMap.addAttribute(new Attribute("id", resultMapId));
+            resultMap.addAttribute(new Attribute("type", getStreamValueType()));
+            context.getCommentGenerator().addComment(resultMap);
+            XmlElement result = new XmlElement("result");
+            result.addAttribute(new Attribute("column", MyBatis3FormattingUtilities.getRenamedColumnNameForResultMap(column)));
+            result.addAttribute(new Attribute("jdbcType", column.getJdbcTypeName()));
+            result.addAttribute(new Attribute("property", "value"));
+            result.addAttribute(new Attribute("javaType", getStreamType(column).getFullyQualifiedName()));
+            result.addAttribute(new Attribute("typeHandler", typeHandlerPackage + "." + typeHandler));
+            resultMap.addElement(result);
+            addElementList.add(resultMap);
+
+            String select = "select " + MyBatis3FormattingUtilities.getSelectListPhrase(column);
+
+            // select x from table where pk = #{pk}
+            if (introspectedTable.getRules().generateSelectByPrimaryKey()) {
+                XmlElement xmlElement = new XmlElement("select");
+                xmlElement.addAttribute(new Attribute("id", "select" + property + "ValueByPrimaryKey"));
+                xmlElement.addAttribute(new Attribute("parameterType", PluginUtil.getPrimaryKeyParameterType(introspectedTable)));
+                xmlElement.addAttribute(new Attribute("resultMap", resultMapId));
+                context.getCommentGenerator().addComment(xmlElement);
+                xmlElement.addElement(new TextElement(select));
+                xmlElement.addElement(new TextElement("from " + introspectedTable.getAliasedFullyQualifiedTableNameAtRuntime()));
+                xmlElement.addElement(new TextElement(PluginUtil.getPrimaryKeyWhereClause(introspectedTable)));
+                addElementList.add(xmlElement);
+            }
+
+            // select x from table <include Example_Where_Clause> order by ${orderByClause}
+            if (introspectedTable.getRules().generateSelectByExampleWithBLOBs()) {
+                XmlElement xmlElement = new XmlElement("select");
+                xmlElement.addAttribute(new Attribute("id", "select" + property + "ValueByExample"));
+                xmlElement.addAttribute(new Attribute("parameterType", introspectedTable.getExampleType()));
+                xmlElement.addAttribute(new Attribute("resultMap", resultMapId));
+                context.getCommentGenerator().addComment(xmlElement);
+                xmlElement.addElement(new TextElement(select));
+                xmlElement.addElement(new TextElement("from " + introspectedTable.getAliasedFullyQualifiedTableNameAtRuntime()));
+                PluginUtil.addExampleWhereElements(xmlElement, introspectedTable);
+                addElementList.add(xmlElement);
+            }
+        }
+
+        // XMLに新規メソッド用のSQLを追加
+        document.getRootElement().getElements().addAll(addElementList);
+
+        return true;
+    }
+
+    @Override
+    public List<GeneratedJavaFile> contextGenerateAdditionalJavaFiles() {
+
+        List<GeneratedJavaFile> answer = new ArrayList<>();
+        if (useStreamValue) {
+            answer.add(createStreamValue());
+        }
+        if (useInputStream) {
+            answer.add(createTypeHandler(INPUT_STREAM_TYPE_HANDLER, "java.io.InputStream",
+                    "ps.setBinaryStream(i, parameter);",
+                    "getBinaryStream",
+                    new String[]{
+                            "byte[] bytes = cs.getBytes(columnIndex);",
+                            "return bytes == null ? null : new ByteArrayInputStream(bytes);"},
+                    "java.io.ByteArrayInputStream"));
+        }
+        if (useReader) {
+            answer.add(createTypeHandler(READER_TYPE_HANDLER, "java.io.Reader",
+                    "ps.setCharacterStream(i, parameter);",
+                    "getCharacterStream",
+                    new String[]{"return cs.getCharacterStream(columnIndex);"},
+                    null));
+        }
+        return answer;
+    }
+
+    /**
+     * 1項目の値を保持するクラス(StreamValue<T>)を作成する
+     *
+     * @return StreamValueのJavaファイル
+     */
+    private GeneratedJavaFile createStreamValue() {
+
+        TopLevelClass topLevelClass = new TopLevelClass(getStreamValueType() + "<T>");
+        topLevelClass.setVisibility(JavaVisibility.PUBLIC);
+        context.getCommentGenerator().addJavaFileComment(topLevelClass);
+
+        Field field = new Field("value", new FullyQualifiedJavaType("T"));
+        field.setVisibility(JavaVisibility.PRIVATE);
+        topLevelClass.addField(field);
+
+        Method getter = new Method("getValue");
+        getter.setVisibility(JavaVisibility.PUBLIC);
+        getter.setReturnType(new FullyQualifiedJavaType("T"));
+        getter.addBodyLine("return value;");
+        topLevelClass.addMethod(getter);
+
+        Method setter = new Method("setValue");
+        setter.setVisibility(JavaVisibility.PUBLIC);
+        setter.addParameter(new Parameter(new FullyQualifiedJavaType("T"), "value"));
+        setter.addBodyLine("this.value = value;");
+        topLevelClass.addMethod(setter);
+
+        return new GeneratedJavaFile(topLevelClass,
+                context.getJavaClientGeneratorConfiguration().getTargetProject(),
+                context.getProperty(PropertyRegistry.CONTEXT_JAVA_FILE_ENCODING),
+                context.getJavaFormatter());
+    }
+
+    /**
+     * ResultSetから getBinaryStream、getCharacterStream で取得するTypeHandlerを作成する
+     * (返すストリームはドライバがメモリ上に読み込んだ値を包んだもの)
+     *
+     * @param name            クラス名
+     * @param javaType        InputStream または Reader
+     * @param setLine         PreparedStatementへの設定
+     * @param getMethod       ResultSetの取得メソッド
+     * @param callableLines   CallableStatementからの取得
+     * @param callableImport  CallableStatementからの取得で利用するクラス
+     * @return TypeHandlerのJavaファイル
+     */
+    private GeneratedJavaFile createTypeHandler(String name, String javaType, String setLine, String getMethod,
+                                                String[] callableLines, String callableImport) {
+
+        FullyQualifiedJavaType streamType = new FullyQualifiedJavaType(javaType);
+        FullyQualifiedJavaType superType = new FullyQualifiedJavaType("org.apache.ibatis.type.BaseTypeHandler");
+        superType.addTypeArgument(streamType);
+        FullyQualifiedJavaType sqlException = new FullyQualifiedJavaType("java.sql.SQLException");
+
+        TopLevelClass topLevelClass = new TopLevelClass(typeHandlerPackage + "." + name);
+        topLevelClass.setVisibility(JavaVisibility.PUBLIC);
+        topLevelClass.setSuperClass(superType);
+        context.getCommentGenerator().addJavaFileComment(topLevelClass);
+        topLevelClass.addImportedType(streamType);
+        topLevelClass.addImportedType(superType);
+        topLevelClass.addImportedType("org.apache.ibatis.type.JdbcType");
+        topLevelClass.addImportedType("java.sql.CallableStatement");
+        topLevelClass.addImportedType("java.sql.PreparedStatement");
+        topLevelClass.addImportedType("java.sql.ResultSet");
+        topLevelClass.addImportedType(sqlException);
+        if (callableImport != null) {
+            topLevelClass.addImportedType(callableImport);
+        }
+
+        Method set = new Method("setNonNullParameter");
+        set.addAnnotation("@Override");
+        set.setVisibility(JavaVisibility.PUBLIC);
+        set.addParameter(new Parameter(new FullyQualifiedJavaType("java.sql.PreparedStatement"), "ps"));
+        set.addParameter(new Parameter(FullyQualifiedJavaType.getIntInstance(), "i"));
+        set.addParameter(new Parameter(streamType, "parameter"));
+        set.addParameter(new Parameter(new FullyQualifiedJavaType("org.apache.ibatis.type.JdbcType"), "jdbcType"));
+        set.addException(sqlException);
+        set.addBodyLine(setLine);
+        topLevelClass.addMethod(set);
+
+        Method getByName = new Method("getNullableResult");
+        getByName.addAnnotation("@Override");
+        getByName.setVisibility(JavaVisibility.PUBLIC);
+        getByName.setReturnType(streamType);
+        getByName.addParameter(new Parameter(new FullyQualifiedJavaType("java.sql.ResultSet"), "rs"));
+        getByName.addParameter(new Parameter(FullyQualifiedJavaType.getStringInstance(), "columnName"));
+        getByName.addException(sqlException);
+        getByName.addBodyLine("return rs." + getMethod + "(columnName);");
+        topLevelClass.addMethod(getByName);
+
+        Method getByIndex = new Method("getNullableResult");
+        getByIndex.addAnnotation("@Override");
+        getByIndex.setVisibility(JavaVisibility.PUBLIC);
+        getByIndex.setReturnType(streamType);
+        getByIndex.addParameter(new Parameter(new FullyQualifiedJavaType("java.sql.ResultSet"), "rs"));
+        getByIndex.addParameter(new Parameter(FullyQualifiedJavaType.getIntInstance(), "columnIndex"));
+        getByIndex.addException(sqlException);
+        getByIndex.addBodyLine("return rs." + getMethod + "(columnIndex);");
+        topLevelClass.addMethod(getByIndex);
+
+        Method getCallable = new Method("getNullableResult");
+        getCallable.addAnnotation("@Override");
+        getCallable.setVisibility(JavaVisibility.PUBLIC);
+        getCallable.setReturnType(streamType);
+        getCallable.addParameter(new Parameter(new FullyQualifiedJavaType("java.sql.CallableStatement"), "cs"));
+        getCallable.addParameter(new Parameter(FullyQualifiedJavaType.getIntInstance(), "columnIndex"));
+        getCallable.addException(sqlException);
+        for (String line : callableLines) {
+            getCallable.addBodyLine(line);
+        }
+        topLevelClass.addMethod(getCallable);
+
+        return new GeneratedJavaFile(topLevelClass,
+                context.getJavaClientGeneratorConfiguration().getTargetProject(),
+                context.getProperty(PropertyRegistry.CONTEXT_JAVA_FILE_ENCODING),
+                context.getJavaFormatter());
+    }
+}
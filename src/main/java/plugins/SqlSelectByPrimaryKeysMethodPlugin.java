@@ -0,0 +1,195 @@
+package plugins;
+
+import org.mybatis.generator.api.IntrospectedColumn;
+import org.mybatis.generator.api.IntrospectedTable;
+import org.mybatis.generator.api.PluginAdapter;
+import org.mybatis.generator.api.dom.java.*;
+import org.mybatis.generator.api.dom.xml.*;
+import org.mybatis.generator.codegen.mybatis3.MyBatis3FormattingUtilities;
+import org.mybatis.generator.internal.util.JavaBeansUtil;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.mybatis.generator.internal.util.StringUtility.isTrue;
+
+/**
+ * 主キーのリストでまとめて取得するメソッドを追加する(Postgres)
+ * <p>
+ * 主キーを配列1個(複合主キーの場合はカラム毎に1個)でバインドするため、件数によらずSQLが同じになり、
+ * PreparedStatementが再利用される。主キーがあるテーブルのみ対象。
+ * (複合主キーでPrimaryKeyクラスを作らない場合(defaultModelType="flat" 等)は対象外)
+ *
+ * <pre>
+ * {@code List<Model> selectByPrimaryKeyArray(@Param("keys") Key[] keys);}
+ * {@code default List<Model> selectByPrimaryKeys(Collection<Key> keys);}
+ * {@code default Map<Key, Model> selectMapByPrimaryKeys(Collection<Key> keys);}
+ * </pre>
+ * <pre>
+ * {@code
+ * -- 単一主キー
+ * where pk = any(#{keys}::varchar[])
+ * -- 複合主キー
+ * where (pk1, pk2) in (select * from unnest(#{pk1}::varchar[], #{pk2}::int8[]))
+ * }
+ * </pre>
+ * <p>
+ * 配列のバインドには MyBatis(3.5.5以上)の ArrayTypeHandler を利用する。
+ * selectMapByPrimaryKeys は主キーのgetterの値(複合主キーの場合はgetterの値を設定したPrimaryKeyクラス)をキーにする。
+ * (複合主キーの場合はPrimaryKeyクラスに equals、hashCode が必要。EqualsHashCodePlugin等)
+ * <p>
+ * (プロパティ)
+ * mapMethod: selectMapByPrimaryKeys を追加するか(デフォルト true)
+ */
+public class SqlSelectByPrimaryKeysMethodPlugin extends PluginAdapter {
+
+    /**
+     * プロパティ名
+     */
+    private static final String PROPERTY_MAP_METHOD = "mapMethod";
+
+    private boolean mapMethod;
+
+    @Override
+    public boolean validate(List<String> warnings) {
+        mapMethod = isTrue(properties.getProperty(PROPERTY_MAP_METHOD, "true"));
+        return true;
+    }
+
+    @Override
+    public boolean clientGenerated(Interface interfaze, IntrospectedTable introspectedTable) {
+
+        // 主キーなし、主キーの型がない場合処理しない
+        if (!PluginUtil.hasKeyType(introspectedTable, getClass().getSimpleName())) {
+            return true;
+        }
+
+        FullyQualifiedJavaType keyType = PluginUtil.getKeyType(introspectedTable);
+        FullyQualifiedJavaType recordType = introspectedTable.getRules().calculateAllFieldsClass();
+        FullyQualifiedJavaType listType = FullyQualifiedJavaType.getNewListInstance();
+        listType.addTypeArgument(recordType);
+        FullyQualifiedJavaType collectionType = new FullyQualifiedJavaType("java.util.Collection");
+        collectionType.addTypeArgument(keyType);
+
+        // List<Model> selectByPrimaryKeyArray(@Param("keys") Key[] keys);
+        Method arrayMethod = new Method("selectByPrimaryKeyArray");
+        arrayMethod.setReturnType(listType);
+        arrayMethod.setVisibility(JavaVisibility.PUBLIC);
+        arrayMethod.setAbstract(true);
+        PluginUtil.addPrimaryKeyArrayParameters(arrayMethod, introspectedTable);
+        context.getCommentGenerator().addGeneralMethodComment(arrayMethod, introspectedTable);
+        // 配列の型(Type[])は短い名前で出力されるため、主キーの型をインポートする
+        introspectedTable.getPrimaryKeyColumns().forEach(c -> interfaze.addImportedType(c.getFullyQualifiedJavaType()));
+
+        // default List<Model> selectByPrimaryKeys(Collection<Key> keys) { 配列に詰め替えて selectByPrimaryKeyArray }
+        Method listMethod = new Method("selectByPrimaryKeys");
+        listMethod.setReturnType(listType);
+        listMethod.setVisibility(JavaVisibility.PUBLIC);
+        listMethod.setDefault(true);
+        listMethod.addParameter(new Parameter(collectionType, "keys"));
+        listMethod.addBodyLine("if (keys.isEmpty()) {");
+        listMethod.addBodyLine("return new ArrayList<>();");
+        listMethod.addBodyLine("}");
+        PluginUtil.addPrimaryKeyArrayBodyLines(listMethod, introspectedTable);
+        listMethod.addBodyLine("return selectByPrimaryKeyArray(" + PluginUtil.getPrimaryKeyArrayArguments(introspectedTable) + ");");
+        context.getCommentGenerator().addGeneralMethodComment(listMethod, introspectedTable);
+
+        interfaze.addImportedType(keyType);
+        interfaze.addImportedType(recordType);
+        interfaze.addImportedType(collectionType);
+        interfaze.addImportedType(FullyQualifiedJavaType.getNewListInstance());
+        interfaze.addImportedType(FullyQualifiedJavaType.getNewArrayListInstance());
+        interfaze.addImportedType(new FullyQualifiedJavaType("org.apache.ibatis.annotations.Param"));
+        interfaze.addMethod(arrayMethod);
+        interfaze.addMethod(listMethod);
+
+        if (mapMethod) {
+            // default Map<Key, Model> selectMapByPrimaryKeys(Collection<Key> keys)
+            FullyQualifiedJavaType mapType = new FullyQualifiedJavaType("java.util.Map");
+            mapType.addTypeArgument(keyType);
+            mapType.addTypeArgument(recordType);
+            Method selectMapMethod = new Method("selectMapByPrimaryKeys");
+            selectMapMethod.setReturnType(mapType);
+            selectMapMethod.setVisibility(JavaVisibility.PUBLIC);
+            selectMapMethod.setDefault(true);
+            selectMapMethod.addParameter(new Parameter(collectionType, "keys"));
+            selectMapMethod.addBodyLine(listType.getShortName() + " rows = selectByPrimaryKeys(keys);");
+            selectMapMethod.addBodyLine(mapType.getShortName() + " map = new LinkedHashMap<>(rows.size() * 4 / 3 + 1);");
+            selectMapMethod.addBodyLine("for (" + recordType.getShortName() + " row : rows) {");
+            addMapPutBodyLines(selectMapMethod, introspectedTable, keyType);
+            selectMapMethod.addBodyLine("}");
+            selectMapMethod.addBodyLine("return map;");
+            context.getCommentGenerator().addGeneralMethodComment(selectMapMethod, introspectedTable);
+
+            interfaze.addImportedType(mapType);
+            interfaze.addImportedType(new FullyQualifiedJavaType("java.util.LinkedHashMap"));
+            interfaze.addMethod(selectMapMethod);
+        }
+
+        return true;
+    }
+
+    /**
+     * 行の主キーをキーにして map に追加する処理を追加する
+     * (単一主キーは getter の値、複合主キーは getter の値を設定したPrimaryKeyクラス)
+     *
+     * @param method            method
+     * @param introspectedTable introspectedTable
+     * @param keyType           主キーの型
+     */
+    private void addMapPutBodyLines(Method method, IntrospectedTable introspectedTable, FullyQualifiedJavaType keyType) {
+        List<IntrospectedColumn> pkColumns = introspectedTable.getPrimaryKeyColumns();
+        if (!introspectedTable.getRules().generatePrimaryKeyClass()) {
+            IntrospectedColumn pk = pkColumns.get(0);
+            method.addBodyLine("map.put(row." + JavaBeansUtil.getGetterMethodName(pk.getJavaProperty(),
+                    pk.getFullyQualifiedJavaType()) + "(), row);");
+            return;
+        }
+        method.addBodyLine(keyType.getShortName() + " key = new " + keyType.getShortName() + "();");
+        for (IntrospectedColumn pk : pkColumns) {
+            method.addBodyLine("key." + JavaBeansUtil.getSetterMethodName(pk.getJavaProperty()) + "(row."
+                    + JavaBeansUtil.getGetterMethodName(pk.getJavaProperty(), pk.getFullyQualifiedJavaType()) + "());");
+        }
+        method.addBodyLine("map.put(key, row);");
+    }
+
+    @Override
+    public boolean sqlMapDocumentGenerated(Document document, IntrospectedTable introspectedTable) {
+
+        if (!PluginUtil.hasKeyType(introspectedTable)) {
+            return true;
+        }
+
+        List<XmlElement> addElementList = new ArrayList<>();
+
+        boolean withBLOBs = introspectedTable.getRules().generateResultMapWithBLOBs();
+
+        // XMLのタグ情報
+        XmlElement xmlElement = new XmlElement("select");
+        xmlElement.addAttribute(new Attribute("id", "selectByPrimaryKeyArray"));
+        xmlElement.addAttribute(new Attribute("parameterType", "map"));
+        xmlElement.addAttribute(new Attribute("resultMap",
+                withBLOBs ? introspectedTable.getResultMapWithBLOBsId() : introspectedTable.getBaseResultMapId()));
+        context.getCommentGenerator().addComment(xmlElement);
+
+        xmlElement.addElement(new TextElement("select"));
+        xmlElement.addElement(PluginUtil.getBaseColumnListElement(introspectedTable));
+        if (withBLOBs) {
+            xmlElement.addElement(new TextElement(","));
+            XmlElement include = new XmlElement("include");
+            include.addAttribute(new Attribute("refid", introspectedTable.getBlobColumnListId()));
+            xmlElement.addElement(include);
+        }
+        xmlElement.addElement(new TextElement("from " + introspectedTable.getAliasedFullyQualifiedTableNameAtRuntime()));
+
+        xmlElement.addElement(new TextElement("where "
+                + PluginUtil.getPrimaryKeyArrayCondition(introspectedTable, MyBatis3FormattingUtilities::getAliasedEscapedColumnName)));
+
+        addElementList.add(xmlElement);
+
+        // XMLに新規メソッド用のSQLを追加
+        document.getRootElement().getElements().addAll(addElementList);
+
+        return true;
+    }
+}
@@ -0,0 +1,158 @@
+package plugins;
+
+import org.mybatis.generator.api.IntrospectedTable;
+import org.mybatis.generator.api.PluginAdapter;
+import org.mybatis.generator.api.dom.java.*;
+import org.mybatis.generator.api.dom.xml.Attribute;
+import org.mybatis.generator.api.dom.xml.Document;
+import org.mybatis.generator.api.dom.xml.XmlElement;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * selectByExample を1件ずつ読み込むメソッドを追加する
+ * <p>
+ * selectByExample は全件をListに読み込むため、大きなテーブルではヒープを圧迫する。
+ * fetchSize と resultSetType="FORWARD_ONLY" を指定したSQLで、Cursor または ResultHandler で1件ずつ処理する。
+ * (pgjdbcはautoCommit=falseかつfetchSize指定時のみ、サーバから分割して読み込む)
+ *
+ * <pre>
+ * {@code Cursor<Model> selectCursorByExample(ModelExample example);}
+ * {@code void scanByExample(ModelExample example, ResultHandler<Model> handler);}
+ * {@code Cursor<ModelWithBLOBs> selectCursorByExampleWithBLOBs(ModelExample example);}
+ * {@code void scanByExampleWithBLOBs(ModelExample example, ResultHandler<ModelWithBLOBs> handler);}
+ * </pre>
+ * <p>
+ * (プロパティ)
+ * fetchSize: 1回に読み込む件数(デフォルト 1000)
+ * テーブル毎に変更する場合は table 要素に fetchSize プロパティを指定する。
+ *
+ * @code <table tableName="nokey_with_blob">
+ * <property name="fetchSize" value="200"/>
+ * </table>
+ */
+public class SqlSelectCursorMethodPlugin extends PluginAdapter {
+
+    /**
+     * プロパティ名
+     */
+    private static final String PROPERTY_FETCH_SIZE = "fetchSize";
+
+    private static final String DEFAULT_FETCH_SIZE = "1000";
+
+    /**
+     * SQLMapper格納場所
+     */
+    private final List<XmlElement> addElementList = new ArrayList<>();
+
+    private String fetchSize;
+
+    @Override
+    public boolean validate(List<String> warnings) {
+        fetchSize = properties.getProperty(PROPERTY_FETCH_SIZE, DEFAULT_FETCH_SIZE);
+        return true;
+    }
+
+    /**
+     * テーブル毎の fetchSize(table要素のプロパティ優先)
+     */
+    private String getFetchSize(IntrospectedTable introspectedTable) {
+        String tableFetchSize = introspectedTable.getTableConfigurationProperty(PROPERTY_FETCH_SIZE);
+        return tableFetchSize != null ? tableFetchSize : fetchSize;
+    }
+
+    /**
+     * selectByExample を元に Cursor 版と ResultHandler 版のメソッドを追加する
+     *
+     * @param method    selectByExample(WithBLOBs)
+     * @param interfaze interfaze
+     * @param suffix    メソッド名の末尾("" または "WithBLOBs")
+     */
+    private void addMethodClient(Method method, Interface interfaze, IntrospectedTable introspectedTable, String suffix) {
+
+        // List<Model> -> Model
+        FullyQualifiedJavaType recordType = method.getReturnType()
+                .map(t -> t.getTypeArguments().get(0))
+                .orElseThrow(IllegalStateException::new);
+
+        // Cursor<Model> selectCursorByExample(ModelExample example);
+        FullyQualifiedJavaType cursorType = new FullyQualifiedJavaType("org.apache.ibatis.cursor.Cursor");
+        cursorType.addTypeArgument(recordType);
+        Method cursorMethod = new Method("selectCursorByExample" + suffix);
+        cursorMethod.setReturnType(cursorType);
+        cursorMethod.setVisibility(JavaVisibility.PUBLIC);
+        cursorMethod.setAbstract(true);
+        method.getParameters().forEach(cursorMethod::addParameter);
+        context.getCommentGenerator().addGeneralMethodComment(cursorMethod, introspectedTable);
+
+        // void scanByExample(ModelExample example, ResultHandler<Model> handler);
+        FullyQualifiedJavaType handlerType = new FullyQualifiedJavaType("org.apache.ibatis.session.ResultHandler");
+        handlerType.addTypeArgument(recordType);
+        Method scanMethod = new Method("scanByExample" + suffix);
+        scanMethod.setVisibility(JavaVisibility.PUBLIC);
+        scanMethod.setAbstract(true);
+        method.getParameters().forEach(scanMethod::addParameter);
+        scanMethod.addParameter(new Parameter(handlerType, "handler"));
+        context.getCommentGenerator().addGeneralMethodComment(scanMethod, introspectedTable);
+
+        interfaze.addImportedType(new FullyQualifiedJavaType("org.apache.ibatis.cursor.Cursor"));
+        interfaze.addImportedType(new FullyQualifiedJavaType("org.apache.ibatis.session.ResultHandler"));
+        interfaze.addMethod(cursorMethod);
+        interfaze.addMethod(scanMethod);
+    }
+
+    @Override
+    public boolean clientSelectByExampleWithoutBLOBsMethodGenerated(Method method, Interface interfaze,
+                                                                   IntrospectedTable introspectedTable) {
+        addMethodClient(method, interfaze, introspectedTable, "");
+        return true;
+    }
+
+    @Override
+    public boolean clientSelectByExampleWithBLOBsMethodGenerated(Method method, Interface interfaze,
+                                                                IntrospectedTable introspectedTable) {
+        addMethodClient(method, interfaze, introspectedTable, "WithBLOBs");
+        return true;
+    }
+
+    /**
+     * selectByExample を元に fetchSize、resultSetType を指定したSQLを登録する
+     *
+     * @param element selectByExample(WithBLOBs)
+     * @param suffix  IDの末尾("" または "WithBLOBs")
+     */
+    private void addMethodSqlMap(XmlElement element, IntrospectedTable introspectedTable, String suffix) {
+        for (String id : new String[]{"selectCursorByExample" + suffix, "scanByExample" + suffix}) {
+            XmlElement addElement = new XmlElement(element);
+            addElement.getAttributes().remove(0);
+            addElement.getAttributes().add(0, new Attribute("id", id));
+            addElement.addAttribute(new Attribute("fetchSize", getFetchSize(introspectedTable)));
+            addElement.addAttribute(new Attribute("resultSetType", "FORWARD_ONLY"));
+            addElementList.add(addElement);
+        }
+    }
+
+    @Override
+    public boolean sqlMapSelectByExampleWithoutBLOBsElementGenerated(XmlElement element,
+                                                                    IntrospectedTable introspectedTable) {
+        addMethodSqlMap(element, introspectedTable, "");
+        return true;
+    }
+
+    @Override
+    public boolean sqlMapSelectByExampleWithBLOBsElementGenerated(XmlElement element,
+                                                                 IntrospectedTable introspectedTable) {
+        addMethodSqlMap(element, introspectedTable, "WithBLOBs");
+        return true;
+    }
+
+    @Override
+    public boolean sqlMapDocumentGenerated(Document document, IntrospectedTable introspectedTable) {
+
+        // SQLに新規メソッド用のSQLを追加
+        document.getRootElement().getElements().addAll(addElementList);
+        addElementList.clear();
+        return true;
+    }
+}
@@ -0,0 +1,155 @@
+package plugins;
+
+import org.mybatis.generator.api.IntrospectedColumn;
+import org.mybatis.generator.api.IntrospectedTable;
+import org.mybatis.generator.api.PluginAdapter;
+import org.mybatis.generator.api.dom.java.*;
+import org.mybatis.generator.api.dom.xml.*;
+import org.mybatis.generator.codegen.mybatis3.MyBatis3FormattingUtilities;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * キーセット方式のページングメソッドを追加する(Postgres)
+ * <p>
+ * RowBoundsPluginはクライアント側で読み飛ばすため、後ろのページほど遅くなる。
+ * 前ページの最後の主キーより後ろを主キー順に limit 件取得することで、何ページ目でも一定の速度で取得できる。
+ * 主キーがあるテーブルのみ対象。
+ * (複合主キーでPrimaryKeyクラスを作らない場合(defaultModelType="flat" 等)は lastKey の型がないため対象外。警告を出力する)
+ *
+ * <pre>
+ * {@code List<Model> selectPageAfter(@Param("lastKey") Key lastKey, @Param("limit") int limit, @Param("example") ModelExample example);}
+ * </pre>
+ * <pre>
+ * {@code
+ * select ... from table
+ * where (pk1, pk2) > (#{lastKey.pk1}, #{lastKey.pk2})   -- lastKey が null の場合は先頭ページ
+ *   and (example の条件)                                -- example が null の場合は条件なし
+ * order by pk1, pk2
+ * limit #{limit}
+ * }
+ * </pre>
+ * <p>
+ * lastKeyは単一主キーの場合は主キーの値、複合主キーの場合はPrimaryKeyクラス。
+ * ModelExtendsPrimaryKeyInterfacePluginを併用すると、前ページの最後の行の getPrimaryKey() をそのまま渡せる。
+ * 並び順は主キー順固定のため、exampleの orderByClause、distinct は無視する。
+ */
+public class SqlSelectPageAfterMethodPlugin extends PluginAdapter {
+
+    @Override
+    public boolean validate(List<String> warnings) {
+        return true;
+    }
+
+    @Override
+    public boolean clientGenerated(Interface interfaze, IntrospectedTable introspectedTable) {
+
+        // 主キーなし、主キーの型がない場合処理しない
+        if (!PluginUtil.hasKeyType(introspectedTable, getClass().getSimpleName())) {
+            return true;
+        }
+
+        FullyQualifiedJavaType keyType = PluginUtil.getKeyType(introspectedTable);
+        FullyQualifiedJavaType exampleType = new FullyQualifiedJavaType(introspectedTable.getExampleType());
+        FullyQualifiedJavaType returnType = FullyQualifiedJavaType.getNewListInstance();
+        returnType.addTypeArgument(PluginUtil.getRecordType(introspectedTable));
+
+        // メソッド名を指定
+        Method method = new Method("selectPageAfter");
+        // 戻り値の型を指定
+        method.setReturnType(returnType);
+        method.setVisibility(JavaVisibility.PUBLIC);
+        method.setAbstract(true);
+
+        Parameter lastKey = new Parameter(keyType, "lastKey");
+        lastKey.addAnnotation("@Param(\"lastKey\")");
+        method.addParameter(lastKey);
+        Parameter limit = new Parameter(FullyQualifiedJavaType.getIntInstance(), "limit");
+        limit.addAnnotation("@Param(\"limit\")");
+        method.addParameter(limit);
+        Parameter example = new Parameter(exampleType, "example");
+        example.addAnnotation("@Param(\"example\")");
+        method.addParameter(example);
+
+        // Javadocコメントを追加
+        context.getCommentGenerator().addGeneralMethodComment(method, introspectedTable);
+
+        // メソッドの追加
+        interfaze.addImportedType(keyType);
+        interfaze.addImportedType(exampleType);
+        interfaze.addImportedType(PluginUtil.getRecordType(introspectedTable));
+        interfaze.addImportedType(FullyQualifiedJavaType.getNewListInstance());
+        interfaze.addImportedType(new FullyQualifiedJavaType("org.apache.ibatis.annotations.Param"));
+        interfaze.addMethod(method);
+
+        return true;
+    }
+
+    @Override
+    public boolean sqlMapDocumentGenerated(Document document, IntrospectedTable introspectedTable) {
+
+        if (!PluginUtil.hasKeyType(introspectedTable)) {
+            return true;
+        }
+
+        List<XmlElement> addElementList = new ArrayList<>();
+
+        // XMLのタグ情報
+        XmlElement xmlElement = new XmlElement("select");
+        xmlElement.addAttribute(new Attribute("id", "selectPageAfter"));
+        xmlElement.addAttribute(new Attribute("parameterType", "map"));
+        xmlElement.addAttribute(new Attribute("resultMap", introspectedTable.getBaseResultMapId()));
+        context.getCommentGenerator().addComment(xmlElement);
+
+        xmlElement.addElement(new TextElement("select"));
+        xmlElement.addElement(PluginUtil.getBaseColumnListElement(introspectedTable));
+        xmlElement.addElement(new TextElement("from " + introspectedTable.getAliasedFullyQualifiedTableNameAtRuntime()));
+
+        XmlElement where = new XmlElement("where");
+
+        // (pk1, pk2) > (#{lastKey.pk1}, #{lastKey.pk2})
+        List<IntrospectedColumn> pkColumns = introspectedTable.getPrimaryKeyColumns();
+        String keyPrefix = introspectedTable.getRules().generatePrimaryKeyClass() ? "lastKey." : null;
+        XmlElement ifLastKey = new XmlElement("if");
+        ifLastKey.addAttribute(new Attribute("test", "lastKey != null"));
+        if (keyPrefix == null) {
+            IntrospectedColumn pk = pkColumns.get(0);
+            ifLastKey.addElement(new TextElement(MyBatis3FormattingUtilities.getAliasedEscapedColumnName(pk)
+                    + " &gt; #{lastKey,jdbcType=" + pk.getJdbcTypeName() + "}"));
+        } else {
+            ifLastKey.addElement(new TextElement("("
+                    + pkColumns.stream()
+                    .map(MyBatis3FormattingUtilities::getAliasedEscapedColumnName)
+                    .collect(Collectors.joining(", "))
+                    + ") &gt; ("
+                    + pkColumns.stream()
+                    .map(c -> MyBatis3FormattingUtilities.getParameterClause(c, keyPrefix))
+                    .collect(Collectors.joining(", "))
+                    + ")"));
+        }
+        where.addElement(ifLastKey);
+
+        XmlElement ifExample = new XmlElement("if");
+        ifExample.addAttribute(new Attribute("test", "example != null"));
+        XmlElement exampleClause = PluginUtil.createExampleCriteriaElement(document, introspectedTable);
+        if (exampleClause != null) {
+            ifExample.addElement(exampleClause);
+            where.addElement(ifExample);
+        }
+        xmlElement.addElement(where);
+
+        xmlElement.addElement(new TextElement("order by " + pkColumns.stream()
+                .map(MyBatis3FormattingUtilities::getAliasedEscapedColumnName)
+                .collect(Collectors.joining(", "))));
+        xmlElement.addElement(new TextElement("limit #{limit,jdbcType=INTEGER}"));
+
+        addElementList.add(xmlElement);
+
+        // XMLに新規メソッド用のSQLを追加
+        document.getRootElement().getElements().addAll(addElementList);
+
+        return true;
+    }
+}
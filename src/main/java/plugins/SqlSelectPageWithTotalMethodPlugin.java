@@ -0,0 +1,245 @@
+package plugins;
+
+import org.mybatis.generator.api.GeneratedJavaFile;
+import org.mybatis.generator.api.IntrospectedTable;
+import org.mybatis.generator.api.PluginAdapter;
+import org.mybatis.generator.api.dom.java.*;
+import org.mybatis.generator.api.dom.xml.*;
+import org.mybatis.generator.config.PropertyRegistry;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 1ページ分の行と全体の件数を1回のSQLで取得するメソッドを追加する(Postgres)
+ * <p>
+ * countByExample と selectByExample を続けて実行すると、同じ条件を2回評価する。
+ * count(*) over () で limit, offset を適用する前の件数を各行に付けて返し、resultMap で Page に詰め替える。
+ * Exampleの limit, offset を使う。(SqlLimitOffsetPluginと同じプロパティを追加する。併用も可)
+ *
+ * <pre>
+ * {@code Page<Model> selectPageWithTotalOrNullByExample(ModelExample example);}       -- SQL(該当する行が無い場合は null)
+ * {@code default Page<Model> selectPageWithTotalByExample(ModelExample example);}  -- 該当する行が無い場合は空の Page
+ * </pre>
+ * <pre>
+ * {@code
+ * <resultMap id="PageWithTotalResultMap" type="Page">
+ *   <id column="total_count" jdbcType="BIGINT" property="total" />
+ *   <collection property="rows" resultMap="PageRowResultMap" />
+ * </resultMap>
+ * <resultMap extends="BaseResultMap" id="PageRowResultMap" type="Model">
+ *   <id column="page_row_number" jdbcType="BIGINT" />
+ * </resultMap>
+ *
+ * select count(*) over () as total_count, row_number() over () as page_row_number, ...
+ * from table
+ * where ...
+ * order by ${orderByClause}
+ * limit #{limit} offset #{offset}
+ * }
+ * </pre>
+ * <p>
+ * page_row_number は主キーなし、同じ値の行が Page.rows で1行にまとめられない様にするための列。
+ * 該当する行が無い場合(offset が全体の件数以上の場合を含む)は件数 0、行なしの Page を返す。
+ * (offset が全体の件数以上の場合は全体の件数が分からないため、件数が必要な場合は countByExample を使う)
+ * selectPageWithTotalOrNullByExample は SQL を定義するためのメソッドのため、selectPageWithTotalByExample を使うこと。
+ * 件数は行単位で数えるため、exampleの distinct は無視する。
+ * Page クラスは Mapper と同じパッケージに作成する。
+ */
+public class SqlSelectPageWithTotalMethodPlugin extends PluginAdapter {
+
+    private static final String PAGE = "Page";
+    private static final String PAGE_RESULT_MAP = "PageWithTotalResultMap";
+    private static final String PAGE_ROW_RESULT_MAP = "PageRowResultMap";
+    private static final String SELECT_OR_NULL = "selectPageWithTotalOrNullByExample";
+
+    @Override
+    public boolean validate(List<String> warnings) {
+        if (context.getJavaClientGeneratorConfiguration() == null) {
+            warnings.add("javaClientGenerator is required for plugin " + this.getClass().getSimpleName());
+            return false;
+        }
+        return true;
+    }
+
+    private String getPageType() {
+        return context.getJavaClientGeneratorConfiguration().getTargetPackage() + "." + PAGE;
+    }
+
+    private boolean isTarget(IntrospectedTable introspectedTable) {
+        return introspectedTable.getRules().generateSelectByExampleWithoutBLOBs()
+                && introspectedTable.getRules().generateBaseResultMap();
+    }
+
+    @Override
+    public boolean modelExampleClassGenerated(TopLevelClass topLevelClass, IntrospectedTable introspectedTable) {
+        SqlLimitOffsetPlugin.addLimitOffsetProperties(topLevelClass);
+        return true;
+    }
+
+    @Override
+    public boolean clientGenerated(Interface interfaze, IntrospectedTable introspectedTable) {
+
+        if (!isTarget(introspectedTable)) {
+            return true;
+        }
+
+        FullyQualifiedJavaType recordType = PluginUtil.getRecordType(introspectedTable);
+        FullyQualifiedJavaType exampleType = new FullyQualifiedJavaType(introspectedTable.getExampleType());
+        FullyQualifiedJavaType pageType = new FullyQualifiedJavaType(getPageType());
+        FullyQualifiedJavaType returnType = new FullyQualifiedJavaType(getPageType());
+        returnType.addTypeArgument(recordType);
+
+        // メソッド名を指定(該当する行が無い場合は null)
+        Method method = new Method(SELECT_OR_NULL);
+        // 戻り値の型を指定
+        method.setReturnType(returnType);
+        method.setVisibility(JavaVisibility.PUBLIC);
+        method.setAbstract(true);
+        method.addParameter(new Parameter(exampleType, "example"));
+
+        // Javadocコメントを追加
+        context.getCommentGenerator().addGeneralMethodComment(method, introspectedTable);
+
+        // default Page<Model> selectPageWithTotalByExample(ModelExample example) { null の場合は空の Page }
+        Method pageMethod = new Method("selectPageWithTotalByExample");
+        pageMethod.setReturnType(returnType);
+        pageMethod.setVisibility(JavaVisibility.PUBLIC);
+        pageMethod.setDefault(true);
+        pageMethod.addParameter(new Parameter(exampleType, "example"));
+        pageMethod.addBodyLine(returnType.getShortName() + " page = " + SELECT_OR_NULL + "(example);");
+        pageMethod.addBodyLine("return page != null ? page : new " + PAGE + "<>();");
+        context.getCommentGenerator().addGeneralMethodComment(pageMethod, introspectedTable);
+
+        // メソッドの追加
+        interfaze.addImportedType(pageType);
+        interfaze.addImportedType(recordType);
+        interfaze.addImportedType(exampleType);
+        interfaze.addMethod(method);
+        interfaze.addMethod(pageMethod);
+
+        return true;
+    }
+
+    @Override
+    public boolean sqlMapDocumentGenerated(Document document, IntrospectedTable introspectedTable) {
+
+        if (!isTarget(introspectedTable)) {
+            return true;
+        }
+
+        List<XmlElement> addElementList = new ArrayList<>();
+
+        // 1ページ分の行と件数を Page に詰め替える resultMap
+        XmlElement pageResultMap = new XmlElement("resultMap");
+        pageResultMap.addAttribute(new Attribute("id", PAGE_RESULT_MAP));
+        pageResultMap.addAttribute(new Attribute("type", getPageType()));
+        context.getCommentGenerator().addComment(pageResultMap);
+        XmlElement total = new XmlElement("id");
+        total.addAttribute(new Attribute("column", "total_count"));
+        total.addAttribute(new Attribute("jdbcType", "BIGINT"));
+        total.addAttribute(new Attribute("property", "total"));
+        pageResultMap.addElement(total);
+        XmlElement rows = new XmlElement("collection");
+        rows.addAttribute(new Attribute("property", "rows"));
+        rows.addAttribute(new Attribute("resultMap", PAGE_ROW_RESULT_MAP));
+        pageResultMap.addElement(rows);
+        addElementList.add(pageResultMap);
+
+        // 行番号で1行ずつ区別する resultMap
+        XmlElement rowResultMap = new XmlElement("resultMap");
+        rowResultMap.addAttribute(new Attribute("extends", introspectedTable.getBaseResultMapId()));
+        rowResultMap.addAttribute(new Attribute("id", PAGE_ROW_RESULT_MAP));
+        rowResultMap.addAttribute(new Attribute("type",
+                PluginUtil.getRecordType(introspectedTable).getFullyQualifiedName()));
+        context.getCommentGenerator().addComment(rowResultMap);
+        XmlElement rowNumber = new XmlElement("id");
+        rowNumber.addAttribute(new Attribute("column", "page_row_number"));
+        rowNumber.addAttribute(new Attribute("jdbcType", "BIGINT"));
+        rowResultMap.addElement(rowNumber);
+        addElementList.add(rowResultMap);
+
+        // XMLのタグ情報
+        XmlElement xmlElement = new XmlElement("select");
+        xmlElement.addAttribute(new Attribute("id", SELECT_OR_NULL));
+        xmlElement.addAttribute(new Attribute("parameterType", introspectedTable.getExampleType()));
+        xmlElement.addAttribute(new Attribute("resultMap", PAGE_RESULT_MAP));
+        context.getCommentGenerator().addComment(xmlElement);
+
+        xmlElement.addElement(new TextElement("select count(*) over () as total_count, row_number() over () as page_row_number,"));
+        xmlElement.addElement(PluginUtil.getBaseColumnListElement(introspectedTable));
+        xmlElement.addElement(new TextElement("from " + introspectedTable.getAliasedFullyQualifiedTableNameAtRuntime()));
+
+        XmlElement ifExample = new XmlElement("if");
+        ifExample.addAttribute(new Attribute("test", "_parameter != null"));
+        XmlElement include = new XmlElement("include");
+        include.addAttribute(new Attribute("refid", introspectedTable.getExampleWhereClauseId()));
+        ifExample.addElement(include);
+        xmlElement.addElement(ifExample);
+
+        XmlElement ifOrderBy = new XmlElement("if");
+        ifOrderBy.addAttribute(new Attribute("test", "orderByClause != null"));
+        ifOrderBy.addElement(new TextElement("order by ${orderByClause}"));
+        xmlElement.addElement(ifOrderBy);
+        SqlLimitOffsetPlugin.addLimitOffsetElements(xmlElement, "");
+
+        addElementList.add(xmlElement);
+
+        // XMLに新規メソッド用のSQLを追加
+        document.getRootElement().getElements().addAll(addElementList);
+
+        return true;
+    }
+
+    @Override
+    public List<GeneratedJavaFile> contextGenerateAdditionalJavaFiles() {
+
+        List<GeneratedJavaFile> answer = new ArrayList<>();
+
+        // public class Page<T> { long total; List<T> rows; }
+        TopLevelClass topLevelClass = new TopLevelClass(getPageType() + "<T>");
+        topLevelClass.setVisibility(JavaVisibility.PUBLIC);
+        context.getCommentGenerator().addJavaFileComment(topLevelClass);
+        topLevelClass.addImportedType("java.util.ArrayList");
+        topLevelClass.addImportedType("java.util.List");
+
+        Field totalField = new Field("total", new FullyQualifiedJavaType("long"));
+        totalField.setVisibility(JavaVisibility.PRIVATE);
+        topLevelClass.addField(totalField);
+
+        Field rowsField = new Field("rows", new FullyQualifiedJavaType("List<T>"));
+        rowsField.setVisibility(JavaVisibility.PRIVATE);
+        rowsField.setInitializationString("new ArrayList<>()");
+        topLevelClass.addField(rowsField);
+
+        Method getTotal = new Method("getTotal");
+        getTotal.setVisibility(JavaVisibility.PUBLIC);
+        getTotal.setReturnType(new FullyQualifiedJavaType("long"));
+        getTotal.addBodyLine("return total;");
+        topLevelClass.addMethod(getTotal);
+
+        Method setTotal = new Method("setTotal");
+        setTotal.setVisibility(JavaVisibility.PUBLIC);
+        setTotal.addParameter(new Parameter(new FullyQualifiedJavaType("long"), "total"));
+        setTotal.addBodyLine("this.total = total;");
+        topLevelClass.addMethod(setTotal);
+
+        Method getRows = new Method("getRows");
+        getRows.setVisibility(JavaVisibility.PUBLIC);
+        getRows.setReturnType(new FullyQualifiedJavaType("List<T>"));
+        getRows.addBodyLine("return rows;");
+        topLevelClass.addMethod(getRows);
+
+        Method setRows = new Method("setRows");
+        setRows.setVisibility(JavaVisibility.PUBLIC);
+        setRows.addParameter(new Parameter(new FullyQualifiedJavaType("List<T>"), "rows"));
+        setRows.addBodyLine("this.rows = rows;");
+        topLevelClass.addMethod(setRows);
+
+        answer.add(new GeneratedJavaFile(topLevelClass,
+                context.getJavaClientGeneratorConfiguration().getTargetProject(),
+                context.getProperty(PropertyRegistry.CONTEXT_JAVA_FILE_ENCODING),
+                context.getJavaFormatter()));
+        return answer;
+    }
+}
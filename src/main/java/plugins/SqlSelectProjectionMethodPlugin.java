@@ -0,0 +1,262 @@
+package plugins;
+
+import org.mybatis.generator.api.GeneratedJavaFile;
+import org.mybatis.generator.api.IntrospectedColumn;
+import org.mybatis.generator.api.IntrospectedTable;
+import org.mybatis.generator.api.PluginAdapter;
+import org.mybatis.generator.api.dom.java.*;
+import org.mybatis.generator.api.dom.xml.*;
+import org.mybatis.generator.codegen.mybatis3.MyBatis3FormattingUtilities;
+import org.mybatis.generator.config.PropertyRegistry;
+import org.mybatis.generator.internal.util.JavaBeansUtil;
+
+import java.util.*;
+import java.util.stream.Collectors;
+
+import static plugins.CreateGenericInterfacePlugin.capitalize;
+
+/**
+ * 指定したカラムだけを取得するメソッドを追加する
+ * <p>
+ * Base_Column_List は BLOB以外の全カラムを取得するため、一覧画面等で数項目しか使わない場合も全項目を転送、生成する。
+ * プロパティで名前付きのカラムの組(projection.名前)を指定し、組毎に以下を作成する。
+ *
+ * <pre>
+ * {@code <sql id="Summary_Column_List">}                      -- カラム一覧
+ * {@code <resultMap id="SummaryResultMap">}
+ * {@code public class ModelSummary}                          -- 指定したカラムだけを持つDTO(Modelと同じパッケージ)
+ * {@code List<ModelSummary> selectSummaryByExample(ModelExample example);}
+ * {@code ModelSummary selectSummaryByPrimaryKey(Key key);}   -- 主キーがあるテーブルのみ
+ * </pre>
+ * <p>
+ * 指定したカラムが全て存在するテーブルのみ対象。テーブル毎に指定する場合は table 要素に同じ名前のプロパティを指定する。
+ * (同じ名前の組はテーブルの指定を優先)
+ * <p>
+ * (プロパティ)
+ * projection.名前: カラム名(カンマ区切り)
+ *
+ * @code <plugin type="plugins.SqlSelectProjectionMethodPlugin">
+ * <property name="projection.summary" value="field1, field12, version"/>
+ * </plugin>
+ */
+public class SqlSelectProjectionMethodPlugin extends PluginAdapter {
+
+    /**
+     * プロパティ名の接頭辞
+     */
+    private static final String PROPERTY_PREFIX = "projection.";
+
+    /**
+     * 名前 -> カラム名のリスト
+     */
+    private final Map<String, List<String>> projectionMap = new LinkedHashMap<>();
+
+    @Override
+    public boolean validate(List<String> warnings) {
+        projectionMap.putAll(parseProjections(properties));
+        return true;
+    }
+
+    /**
+     * projection.名前 のプロパティを分解する
+     *
+     * @param props プロパティ
+     * @return 名前 -> カラム名のリスト
+     */
+    private Map<String, List<String>> parseProjections(Properties props) {
+        Map<String, List<String>> map = new TreeMap<>();
+        for (String key : props.stringPropertyNames()) {
+            if (!key.startsWith(PROPERTY_PREFIX) || key.length() == PROPERTY_PREFIX.length()) {
+                continue;
+            }
+            List<String> columns = new ArrayList<>();
+            StringTokenizer st = new StringTokenizer(props.getProperty(key), ", ", false);
+            while (st.hasMoreTokens()) {
+                columns.add(st.nextToken());
+            }
+            if (!columns.isEmpty()) {
+                map.put(key.substring(PROPERTY_PREFIX.length()), columns);
+            }
+        }
+        return map;
+    }
+
+    /**
+     * テーブルで利用するカラムの組(全カラムが存在するもの)
+     *
+     * @param introspectedTable introspectedTable
+     * @return 名前 -> カラムのリスト
+     */
+    private Map<String, List<IntrospectedColumn>> getProjections(IntrospectedTable introspectedTable) {
+        Map<String, List<String>> map = new LinkedHashMap<>(projectionMap);
+        map.putAll(parseProjections(introspectedTable.getTableConfiguration().getProperties()));
+
+        Map<String, List<IntrospectedColumn>> answer = new LinkedHashMap<>();
+        for (Map.Entry<String, List<String>> entry : map.entrySet()) {
+            List<IntrospectedColumn> columns = new ArrayList<>();
+            for (String columnName : entry.getValue()) {
+                introspectedTable.getColumn(columnName).ifPresent(columns::add);
+            }
+            if (columns.size() == entry.getValue().size()) {
+                answer.put(capitalize(entry.getKey()), columns);
+            }
+        }
+        return answer;
+    }
+
+    /**
+     * DTOの型(Modelと同じパッケージ、Model名 + 組の名前)
+     */
+    private FullyQualifiedJavaType getDtoType(IntrospectedTable introspectedTable, String name) {
+        String packageName = new FullyQualifiedJavaType(introspectedTable.getBaseRecordType()).getPackageName();
+        return new FullyQualifiedJavaType(packageName + "."
+                + introspectedTable.getFullyQualifiedTable().getDomainObjectName() + name);
+    }
+
+    @Override
+    public List<GeneratedJavaFile> contextGenerateAdditionalJavaFiles(IntrospectedTable introspectedTable) {
+
+        List<GeneratedJavaFile> answer = new ArrayList<>();
+
+        for (Map.Entry<String, List<IntrospectedColumn>> entry : getProjections(introspectedTable).entrySet()) {
+            TopLevelClass topLevelClass = new TopLevelClass(getDtoType(introspectedTable, entry.getKey()));
+            topLevelClass.setVisibility(JavaVisibility.PUBLIC);
+            context.getCommentGenerator().addJavaFileComment(topLevelClass);
+            context.getCommentGenerator().addModelClassComment(topLevelClass, introspectedTable);
+
+            for (IntrospectedColumn column : entry.getValue()) {
+                topLevelClass.addImportedType(column.getFullyQualifiedJavaType());
+                topLevelClass.addField(JavaBeansUtil.getJavaBeansField(column, context, introspectedTable));
+                topLevelClass.addMethod(JavaBeansUtil.getJavaBeansGetter(column, context, introspectedTable));
+                topLevelClass.addMethod(JavaBeansUtil.getJavaBeansSetter(column, context, introspectedTable));
+            }
+
+            answer.add(new GeneratedJavaFile(topLevelClass,
+                    context.getJavaModelGeneratorConfiguration().getTargetProject(),
+                    context.getProperty(PropertyRegistry.CONTEXT_JAVA_FILE_ENCODING),
+                    context.getJavaFormatter()));
+        }
+
+        return answer;
+    }
+
+    @Override
+    public boolean clientGenerated(Interface interfaze, IntrospectedTable introspectedTable) {
+
+        for (Map.Entry<String, List<IntrospectedColumn>> entry : getProjections(introspectedTable).entrySet()) {
+            String name = entry.getKey();
+            FullyQualifiedJavaType dtoType = getDtoType(introspectedTable, name);
+            interfaze.addImportedType(dtoType);
+
+            // List<ModelSummary> selectSummaryByExample(ModelExample example);
+            if (introspectedTable.getRules().generateSelectByExampleWithoutBLOBs()) {
+                FullyQualifiedJavaType exampleType = new FullyQualifiedJavaType(introspectedTable.getExampleType());
+                FullyQualifiedJavaType listType = FullyQualifiedJavaType.getNewListInstance();
+                listType.addTypeArgument(dtoType);
+                Method method = new Method("select" + name + "ByExample");
+                method.setReturnType(listType);
+                method.setVisibility(JavaVisibility.PUBLIC);
+                method.setAbstract(true);
+                method.addParameter(new Parameter(exampleType, "example"));
+                context.getCommentGenerator().addGeneralMethodComment(method, introspectedTable);
+                interfaze.addImportedType(exampleType);
+                interfaze.addImportedType(FullyQualifiedJavaType.getNewListInstance());
+                interfaze.addMethod(method);
+            }
+
+            // ModelSummary selectSummaryByPrimaryKey(Key key);
+            if (introspectedTable.getRules().generateSelectByPrimaryKey()) {
+                Method method = new Method("select" + name + "ByPrimaryKey");
+                method.setReturnType(dtoType);
+                method.setVisibility(JavaVisibility.PUBLIC);
+                method.setAbstract(true);
+                PluginUtil.addPrimaryKeyParameters(method, interfaze, introspectedTable);
+                context.getCommentGenerator().addGeneralMethodComment(method, introspectedTable);
+                interfaze.addMethod(method);
+            }
+        }
+
+        return true;
+    }
+
+    @Override
+    public boolean sqlMapDocumentGenerated(Document document, IntrospectedTable introspectedTable) {
+
+        List<XmlElement> addElementList = new ArrayList<>();
+
+        for (Map.Entry<String, List<IntrospectedColumn>> entry : getProjections(introspectedTable).entrySet()) {
+            String name = entry.getKey();
+            List<IntrospectedColumn> columns = entry.getValue();
+            String columnListId = name + "_Column_List";
+            String resultMapId = name + "ResultMap";
+
+            // <sql id="Summary_Column_List">
+            XmlElement sql = new XmlElement("sql");
+            sql.addAttribute(new Attribute("id", columnListId));
+            context.getCommentGenerator().addComment(sql);
+            sql.addElement(new TextElement(columns.stream()
+                    .map(MyBatis3FormattingUtilities::getSelectListPhrase)
+                    .collect(Collectors.joining(", "))));
+            addElementList.add(sql);
+
+            // <resultMap id="SummaryResultMap" type="ModelSummary">
+            XmlElement resultMap = new XmlElement("resultMap");
+            resultMap.addAttribute(new Attribute("id", resultMapId));
+            resultMap.addAttribute(new Attribute("type", getDtoType(introspectedTable, name).getFullyQualifiedName()));
+            context.getCommentGenerator().addComment(resultMap);
+            for (IntrospectedColumn column : columns) {
+                boolean isPrimaryKey = introspectedTable.getPrimaryKeyColumns().contains(column);
+                XmlElement result = new XmlElement(isPrimaryKey ? "id" : "result");
+                result.addAttribute(new Attribute("column", MyBatis3FormattingUtilities.getRenamedColumnNameForResultMap(column)));
+                result.addAttribute(new Attribute("jdbcType", column.getJdbcTypeName()));
+                result.addAttribute(new Attribute("property", column.getJavaProperty()));
+                if (column.getTypeHandler() != null) {
+                    result.addAttribute(new Attribute("typeHandler", column.getTypeHandler()));
+                }
+                resultMap.addElement(result);
+            }
+            addElementList.add(resultMap);
+
+            XmlElement include = new XmlElement("include");
+            include.addAttribute(new Attribute("refid", columnListId));
+
+            // select <if distinct> <include Summary_Column_List> from table <include Example_Where_Clause> order by
+            if (introspectedTable.getRules().generateSelectByExampleWithoutBLOBs()) {
+                XmlElement xmlElement = new XmlElement("select");
+                xmlElement.addAttribute(new Attribute("id", "select" + name + "ByExample"));
+                xmlElement.addAttribute(new Attribute("parameterType", introspectedTable.getExampleType()));
+                xmlElement.addAttribute(new Attribute("resultMap", resultMapId));
+                context.getCommentGenerator().addComment(xmlElement);
+                xmlElement.addElement(new TextElement("select"));
+                XmlElement ifDistinct = new XmlElement("if");
+                ifDistinct.addAttribute(new Attribute("test", "distinct"));
+                ifDistinct.addElement(new TextElement("distinct"));
+                xmlElement.addElement(ifDistinct);
+                xmlElement.addElement(include);
+                xmlElement.addElement(new TextElement("from " + introspectedTable.getAliasedFullyQualifiedTableNameAtRuntime()));
+                PluginUtil.addExampleWhereElements(xmlElement, introspectedTable);
+                addElementList.add(xmlElement);
+            }
+
+            // select <include Summary_Column_List> from table where pk = #{pk}
+            if (introspectedTable.getRules().generateSelectByPrimaryKey()) {
+                XmlElement xmlElement = new XmlElement("select");
+                xmlElement.addAttribute(new Attribute("id", "select" + name + "ByPrimaryKey"));
+                xmlElement.addAttribute(new Attribute("parameterType",
+                        PluginUtil.getPrimaryKeyParameterType(introspectedTable)));
+                xmlElement.addAttribute(new Attribute("resultMap", resultMapId));
+                context.getCommentGenerator().addComment(xmlElement);
+                xmlElement.addElement(new TextElement("select"));
+                xmlElement.addElement(new XmlElement(include));
+                xmlElement.addElement(new TextElement("from " + introspectedTable.getAliasedFullyQualifiedTableNameAtRuntime()));
+                xmlElement.addElement(new TextElement(PluginUtil.getPrimaryKeyWhereClause(introspectedTable)));
+                addElementList.add(xmlElement);
+            }
+        }
+
+        // XMLに新規メソッド用のSQLを追加
+        document.getRootElement().getElements().addAll(addElementList);
+
+        return true;
+    }
+}
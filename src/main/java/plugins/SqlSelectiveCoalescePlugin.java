@@ -0,0 +1,168 @@
+package plugins;
+
+import org.mybatis.generator.api.IntrospectedColumn;
+import org.mybatis.generator.api.IntrospectedTable;
+import org.mybatis.generator.api.PluginAdapter;
+import org.mybatis.generator.api.dom.xml.TextElement;
+import org.mybatis.generator.api.dom.xml.VisitableElement;
+import org.mybatis.generator.api.dom.xml.XmlElement;
+import org.mybatis.generator.codegen.mybatis3.ListUtilities;
+
+import java.util.List;
+import java.util.ListIterator;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Selective系のSQLを、パラメータの null 有無に関係なく常に同じSQL文になる様に書き換える
+ * <p>
+ * updateByPrimaryKeySelective 等はカラム毎に if test="x != null" を使うため、null の組み合わせ毎に異なるSQL文になる。
+ * (カラム数 n のテーブルで最大 2^n 種類)
+ * pgjdbc のサーバーサイドのプリペアドステートメント(prepareThreshold)が再利用されず、カラム毎の OGNL の評価も毎回発生する。
+ * このプラグインは if を外し、null の場合は現在の値(update)、カラムのデフォルト値(insert)を使う COALESCE に書き換える。
+ * <p>
+ * 他のプラグイン(SqlUpdateExcludeColumnPlugin、SqlUpdateVersionPlusOnePlugin)が書き換えた行はそのまま残す。
+ * (SqlUpdateExcludeColumnPlugin は if を外した行も除外するため、プラグインの順番に関係なく除外したカラムは更新しない)
+ * null に更新することはできなくなる。(null に更新する場合は updateByPrimaryKey を使う)
+ *
+ * <pre>
+ * {@code
+ * update table
+ * <set>
+ *   a = coalesce(#{a,jdbcType=VARCHAR}, a),
+ *   b = coalesce(#{b,jdbcType=INTEGER}, b),
+ * </set>
+ * where pk = #{pk}
+ *
+ * insert into table (id, a, b)
+ * values (coalesce(#{id,jdbcType=INTEGER}, nextval('table_id_seq'::regclass)), #{a,jdbcType=VARCHAR}, coalesce(#{b,jdbcType=INTEGER}, 0))
+ * }
+ * </pre>
+ * 対象: updateByPrimaryKeySelective、updateByExampleSelective、insertSelective
+ */
+public class SqlSelectiveCoalescePlugin extends PluginAdapter {
+
+    /**
+     * ex) a = #{a,jdbcType=VARCHAR},   a = #{row.a,jdbcType=VARCHAR},
+     */
+    private static final Pattern SET_PATTERN = Pattern.compile("^\\s*(\\S+) = (#\\{[^}]+\\}),?\\s*$");
+
+    @Override
+    public boolean validate(List<String> warnings) {
+        return true;
+    }
+
+    /**
+     * if 要素の中の文字列を取得する(コメントは除く)
+     *
+     * @param element if 要素
+     * @return 文字列(見つからない場合は null)
+     */
+    private String getIfContent(XmlElement element) {
+        for (VisitableElement e : element.getElements()) {
+            if (e instanceof TextElement && !((TextElement) e).getContent().trim().startsWith("<!--")) {
+                return ((TextElement) e).getContent().trim();
+            }
+        }
+        return null;
+    }
+
+    private XmlElement findChild(XmlElement element, String name) {
+        for (VisitableElement e : element.getElements()) {
+            if (e instanceof XmlElement && name.equals(((XmlElement) e).getName())) {
+                return (XmlElement) e;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * set 要素の if を外し、x = coalesce(#{x}, x) に書き換える
+     */
+    private void rewriteSet(XmlElement element) {
+        XmlElement set = findChild(element, "set");
+        if (set == null) {
+            return;
+        }
+        ListIterator<VisitableElement> it = set.getElements().listIterator();
+        while (it.hasNext()) {
+            VisitableElement e = it.next();
+            if (!(e instanceof XmlElement) || !"if".equals(((XmlElement) e).getName())) {
+                continue;
+            }
+            String content = getIfContent((XmlElement) e);
+            if (content == null) {
+                continue;
+            }
+            Matcher m = SET_PATTERN.matcher(content);
+            if (m.matches()) {
+                // a = coalesce(#{a,jdbcType=VARCHAR}, a),
+                it.set(new TextElement(m.group(1) + " = coalesce(" + m.group(2) + ", " + m.group(1) + "),"));
+            } else {
+                // 他のプラグインが書き換えた行(created_by = created_by, 等)
+                it.set(new TextElement(content.endsWith(",") ? content : content + ","));
+            }
+        }
+    }
+
+    @Override
+    public boolean sqlMapUpdateByPrimaryKeySelectiveElementGenerated(XmlElement element, IntrospectedTable introspectedTable) {
+        rewriteSet(element);
+        return true;
+    }
+
+    @Override
+    public boolean sqlMapUpdateByExampleSelectiveElementGenerated(XmlElement element, IntrospectedTable introspectedTable) {
+        rewriteSet(element);
+        return true;
+    }
+
+    @Override
+    public boolean sqlMapInsertSelectiveElementGenerated(XmlElement element, IntrospectedTable introspectedTable) {
+
+        // insertSelective と同じ順番のカラム(trim の子要素と1対1)
+        List<IntrospectedColumn> columns =
+                ListUtilities.removeIdentityAndGeneratedAlwaysColumns(introspectedTable.getAllColumns());
+
+        XmlElement columnsTrim = null;
+        XmlElement valuesTrim = null;
+        for (VisitableElement e : element.getElements()) {
+            if (e instanceof XmlElement && "trim".equals(((XmlElement) e).getName())) {
+                if (columnsTrim == null) {
+                    columnsTrim = (XmlElement) e;
+                } else {
+                    valuesTrim = (XmlElement) e;
+                }
+            }
+        }
+        if (columnsTrim == null || valuesTrim == null
+                || columnsTrim.getElements().size() != columns.size()
+                || valuesTrim.getElements().size() != columns.size()) {
+            return true;
+        }
+
+        for (int i = 0; i < columns.size(); i++) {
+            VisitableElement columnElement = columnsTrim.getElements().get(i);
+            VisitableElement valueElement = valuesTrim.getElements().get(i);
+            if (!(columnElement instanceof XmlElement) || !(valueElement instanceof XmlElement)) {
+                continue;
+            }
+            String columnContent = getIfContent((XmlElement) columnElement);
+            String valueContent = getIfContent((XmlElement) valueElement);
+            if (columnContent == null || valueContent == null) {
+                continue;
+            }
+            columnsTrim.getElements().set(i, new TextElement(columnContent));
+
+            // coalesce(#{a,jdbcType=INTEGER}, デフォルト値),  (デフォルト値がない場合は #{a,jdbcType=INTEGER},)
+            String defaultValue = columns.get(i).getDefaultValue();
+            String param = valueContent.endsWith(",") ? valueContent.substring(0, valueContent.length() - 1) : valueContent;
+            if (defaultValue != null && !defaultValue.trim().isEmpty()) {
+                valuesTrim.getElements().set(i, new TextElement("coalesce(" + param + ", " + PluginUtil.escapeXml(defaultValue.trim()) + "),"));
+            } else {
+                valuesTrim.getElements().set(i, new TextElement(param + ","));
+            }
+        }
+        return true;
+    }
+}
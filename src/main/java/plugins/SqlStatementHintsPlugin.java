@@ -0,0 +1,133 @@
+package plugins;
+
+import org.mybatis.generator.api.IntrospectedTable;
+import org.mybatis.generator.api.PluginAdapter;
+import org.mybatis.generator.api.dom.xml.Attribute;
+import org.mybatis.generator.api.dom.xml.Document;
+import org.mybatis.generator.api.dom.xml.VisitableElement;
+import org.mybatis.generator.api.dom.xml.XmlElement;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * SQL要素に fetchSize, timeout, resultSetType を設定する
+ * <p>
+ * pgjdbc は fetchSize を指定しないと検索結果を全件メモリに読み込む。(自動コミットが無効な場合のみ fetchSize 件ずつ取得する)
+ * プロパティ名は「属性名.SQLのid.テーブル名」または「属性名.テーブル名」で、SQLのidとテーブル名にはパターン(* は任意の文字列、? は任意の1文字)を指定できる。
+ * 複数のルールに一致する場合は、SQLのidを指定したルール &gt; テーブル名のパターンが長いルールの順に優先する。
+ * <p>
+ * fetchSize, resultSetType は select、timeout は select, insert, update, delete に設定する。(既に指定されている要素は変更しない)
+ * 他のプラグインが追加した要素も対象にするため、このプラグインは Sql*MethodPlugin より後に指定すること。
+ *
+ * <pre>
+ * {@code
+ * <select id="selectByExample" fetchSize="1000" timeout="30" ...>
+ * }
+ * </pre>
+ * <p>
+ * (プロパティ)
+ * fetchSize.SQLのid.テーブル名: 1回に取得する行数
+ * timeout.SQLのid.テーブル名: タイムアウト(秒)
+ * resultSetType.SQLのid.テーブル名: FORWARD_ONLY | SCROLL_SENSITIVE | SCROLL_INSENSITIVE | DEFAULT
+ *
+ * @code <plugin type="plugins.SqlStatementHintsPlugin">
+ * <property name="fetchSize.selectByExample*.nokey_*" value="1000"/>
+ * <property name="timeout.*" value="30"/>
+ * </plugin>
+ */
+public class SqlStatementHintsPlugin extends PluginAdapter {
+
+    /**
+     * 設定する属性名
+     */
+    private static final List<String> SELECT_ATTRIBUTES = Arrays.asList("fetchSize", "timeout", "resultSetType");
+    private static final List<String> UPDATE_ATTRIBUTES = Arrays.asList("timeout");
+
+    @Override
+    public boolean validate(List<String> warnings) {
+        return true;
+    }
+
+    /**
+     * SQLのidとテーブル名に一致するルールの値を取得する
+     *
+     * @param attribute 属性名
+     * @param id        SQLのid
+     * @param tableName テーブル名
+     * @return 値(一致するルールがない場合は null)
+     */
+    private String findRule(String attribute, String id, String tableName) {
+        String prefix = attribute + ".";
+        String found = null;
+        int foundScore = -1;
+        for (String key : properties.stringPropertyNames()) {
+            if (!key.startsWith(prefix)) {
+                continue;
+            }
+            String rule = key.substring(prefix.length());
+            String tablePattern = rule;
+            int score = 0;
+            int dot = rule.indexOf('.');
+            if (dot >= 0) {
+                // SQLのid.テーブル名
+                if (!PluginUtil.matchesPattern(rule.substring(0, dot), id)) {
+                    continue;
+                }
+                tablePattern = rule.substring(dot + 1);
+                score = 10000;
+            }
+            if (!PluginUtil.matchesPattern(tablePattern, tableName)) {
+                continue;
+            }
+            score += tablePattern.length();
+            if (score > foundScore || (score == foundScore && key.compareTo(found) < 0)) {
+                found = key;
+                foundScore = score;
+            }
+        }
+        return found == null ? null : properties.getProperty(found).trim();
+    }
+
+    private void addAttributes(XmlElement element, List<String> attributes, String tableName) {
+        String id = element.getAttributes().stream()
+                .filter(a -> "id".equals(a.getName()))
+                .map(Attribute::getValue)
+                .findFirst()
+                .orElse("");
+        for (String attribute : attributes) {
+            if (element.getAttributes().stream().anyMatch(a -> attribute.equals(a.getName()))) {
+                continue;
+            }
+            String value = findRule(attribute, id, tableName);
+            if (value != null) {
+                element.addAttribute(new Attribute(attribute, value));
+            }
+        }
+    }
+
+    @Override
+    public boolean sqlMapDocumentGenerated(Document document, IntrospectedTable introspectedTable) {
+
+        String tableName = introspectedTable.getFullyQualifiedTable().getIntrospectedTableName();
+        for (VisitableElement e : document.getRootElement().getElements()) {
+            if (!(e instanceof XmlElement)) {
+                continue;
+            }
+            XmlElement element = (XmlElement) e;
+            switch (element.getName()) {
+                case "select":
+                    addAttributes(element, SELECT_ATTRIBUTES, tableName);
+                    break;
+                case "insert":
+                case "update":
+                case "delete":
+                    addAttributes(element, UPDATE_ATTRIBUTES, tableName);
+                    break;
+                default:
+                    break;
+            }
+        }
+        return true;
+    }
+}
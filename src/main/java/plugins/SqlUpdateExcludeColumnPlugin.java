@@ -35,6 +35,10 @@ import java.util.*;
  *      created_by = #{createdBy,jdbcType=VARCHAR},
  *  </if>
  *
+ * 4. Selective(SqlSelectiveCoalescePluginで if を外した場合)
+ * update set
+ *  created_by = coalesce(#{createdBy,jdbcType=VARCHAR}, created_by),
+ *
  */
 public class SqlUpdateExcludeColumnPlugin extends PluginAdapter {
 
@@ -143,7 +147,7 @@ public class SqlUpdateExcludeColumnPlugin extends PluginAdapter {
                 XmlElement xe = (XmlElement) ve;
                 if ("set".equals(xe.getName())){
 
-                    Iterator<VisitableElement> it = xe.getElements().iterator();
+                    ListIterator<VisitableElement> it = xe.getElements().listIterator();
                     while(it.hasNext()) {
                         VisitableElement ve2 = it.next();
                         if (ve2 instanceof XmlElement) {
@@ -156,6 +160,12 @@ public class SqlUpdateExcludeColumnPlugin extends PluginAdapter {
                                     }
                                 }
                             }
+                        } else if (ve2 instanceof TextElement) {
+                            // SqlSelectiveCoalescePlugin で if を外した行(created_by = coalesce(#{createdBy,jdbcType=VARCHAR}, created_by),)
+                            String s = getTarget(((TextElement) ve2).getContent());
+                            if (s != null) {
+                                it.set(new TextElement(s));
+                            }
                         }
                     }
                 }
@@ -3,13 +3,15 @@ package plugins;
 import org.mybatis.generator.api.IntrospectedColumn;
 import org.mybatis.generator.api.IntrospectedTable;
 import org.mybatis.generator.api.PluginAdapter;
-import org.mybatis.generator.api.dom.java.Interface;
-import org.mybatis.generator.api.dom.java.Method;
-import org.mybatis.generator.api.dom.xml.TextElement;
-import org.mybatis.generator.api.dom.xml.VisitableElement;
-import org.mybatis.generator.api.dom.xml.XmlElement;
+import org.mybatis.generator.api.dom.java.*;
+import org.mybatis.generator.api.dom.xml.*;
+import org.mybatis.generator.codegen.mybatis3.ListUtilities;
+import org.mybatis.generator.codegen.mybatis3.MyBatis3FormattingUtilities;
 
 import java.util.*;
+import java.util.stream.Collectors;
+
+import static org.mybatis.generator.internal.util.StringUtility.isTrue;
 
 /**
  * 楽観的排他制御用の更新番号項目をUpdate時に +1 するSQLに書き換える
@@ -17,6 +19,34 @@ import java.util.*;
  * パラメータに指定されたカラム名が存在する場合にSQL文を修正する
  * パラメータには複数のカラム名が指定できるが、最初に見つかったカラムを利用する。
  * 指定するカラムは+1できる数値型を指定すること。(最終更新日等の日時型の場合は別のプラグイン)
+ * <p>
+ * updateBatch に true を指定すると、複数行を1回のSQLで更新するメソッドも追加する。(Postgres、主キーがあるテーブルのみ)
+ * (複合主キーでPrimaryKeyクラスを作らない場合(defaultModelType="flat" 等)は戻り値の Key の型がないため対象外)
+ * 更新番号が一致した行だけを更新し、更新できた行の主キーを返す。(更新番号が主キーに含まれる場合は追加しない)
+ *
+ * <pre>
+ * {@code List<Key> updateBatchByPrimaryKeyChunk(@Param("rows") List<Model> rows);}
+ * {@code default List<Key> updateBatchByPrimaryKey(List<Model> rows);}
+ * </pre>
+ * <pre>
+ * {@code
+ * update table as tgt
+ * set a = src.a, version = case when tgt.version = 99999999 then 1 else tgt.version + 1 end
+ * from (values (#{row.pk}::varchar, #{row.a}::varchar, #{row.version}::int8), (...)) as src (pk, a, version)
+ * where tgt.pk = src.pk and tgt.version = src.version
+ * returning tgt.pk
+ * }
+ * </pre>
+ * RETURNING の結果を受け取るため、SQLは select(flushCache="true")で定義している。
+ * Spring等のトランザクション管理を使わない場合、SqlSession.commit(true) でコミットすること。
+ * <p>
+ * (プロパティ)
+ * versionColumns: 更新番号のカラム名
+ * maxVersionNum: 更新番号の最大値、超えると1に戻す(デフォルト 99999999)
+ * excludeTable: 対象外のテーブル名(カンマ区切り)
+ * updateBatch: updateBatchByPrimaryKey を追加するか(デフォルト false)
+ * maxParameters: 1回のSQLのバインド変数の上限(SqlInsertBatchMethodPluginと同じ、デフォルト 32767 pgjdbcの上限)
+ * batchSize: 1回のSQLで更新する最大件数(デフォルト 1000、バインド変数が maxParameters を超えない件数に制限する)
  *
  * @code <plugin type="plugins.SqlUpdateVersionPlusOnePlugin">
  * <property name="versionColumns" value="version, lock_version"/>
@@ -31,6 +61,12 @@ public class SqlUpdateVersionPlusOnePlugin extends PluginAdapter {
     private static final String PROPERTY_MAX_VERSION_NUM = "maxVersionNum";
 
     private static final String PROPERTY_EXCLUDE_TABLE = "excludeTable";
+    private static final String PROPERTY_UPDATE_BATCH = "updateBatch";
+    private static final String PROPERTY_MAX_PARAMETERS = "maxParameters";
+    private static final String PROPERTY_BATCH_SIZE = "batchSize";
+
+    private static final int DEFAULT_MAX_PARAMETERS = 32767;
+    private static final int DEFAULT_BATCH_SIZE = 1000;
 
     /**
      * バージョンカラムのリスト
@@ -53,6 +89,9 @@ public class SqlUpdateVersionPlusOnePlugin extends PluginAdapter {
     private String versionColName;
     private String maxVersionNum = "99999999";
     private IntrospectedColumn versionColumn;
+    private boolean updateBatch;
+    private int maxParameters = DEFAULT_MAX_PARAMETERS;
+    private int batchSize = DEFAULT_BATCH_SIZE;
 
     @Override
     public boolean validate(List<String> warnings) {
@@ -76,6 +115,22 @@ public class SqlUpdateVersionPlusOnePlugin extends PluginAdapter {
             excludeTableList = Arrays.asList(s.split(","));
         }
 
+        updateBatch = isTrue(properties.getProperty(PROPERTY_UPDATE_BATCH));
+
+        String size = properties.getProperty(PROPERTY_BATCH_SIZE);
+        if (size != null) {
+            batchSize = Integer.parseInt(size.trim());
+        }
+        String max = properties.getProperty(PROPERTY_MAX_PARAMETERS);
+        if (max != null) {
+            maxParameters = Integer.parseInt(max.trim());
+        }
+        if (maxParameters <= 0 || batchSize <= 0) {
+            warnings.add("Property maxParameters and batchSize must be positive for plugin "
+                    + this.getClass().getSimpleName());
+            return false;
+        }
+
         return true;
     }
 
@@ -92,11 +147,20 @@ public class SqlUpdateVersionPlusOnePlugin extends PluginAdapter {
      * @return バージョン管理用のカラム名
      */
     private void findVersionColumn(IntrospectedTable introspectedTable, List<String> columnList) {
-        versionColumn = null;
-        versionColName = null;
+        versionColumn = getVersionColumn(introspectedTable, columnList);
+        versionColName = versionColumn == null ? null : versionColumn.getActualColumnName();
+    }
 
+    /**
+     * 指定されたカラムがテーブルに存在するか確認し、最初に見つかったものを返す。(フィールドは変更しない)
+     *
+     * @param introspectedTable introspectedTable
+     * @param columnList        バージョン管理用のカラム名
+     * @return バージョン管理用のカラム(見つからない場合は null)
+     */
+    private IntrospectedColumn getVersionColumn(IntrospectedTable introspectedTable, List<String> columnList) {
         if (!isTarget(introspectedTable)) {
-            return;
+            return null;
         }
 
         List<IntrospectedColumn> list = new ArrayList<>();
@@ -106,12 +170,11 @@ public class SqlUpdateVersionPlusOnePlugin extends PluginAdapter {
         for (IntrospectedColumn col : list) {
             for (String colName : columnList) {
                 if (col.getActualColumnName().equals(colName)) {
-                    versionColumn = col;
-                    versionColName = col.getActualColumnName();
-                    return;
+                    return col;
                 }
             }
         }
+        return null;
     }
 
     @Override
@@ -213,6 +276,153 @@ public class SqlUpdateVersionPlusOnePlugin extends PluginAdapter {
         }
         return true;
     }
+
+    /**
+     * updateBatchByPrimaryKey の更新番号のカラムを取得する
+     *
+     * @param introspectedTable introspectedTable
+     * @return 更新番号のカラム(updateBatch が false、主キーの型がない、主キー以外の更新番号のカラムがない場合は null)
+     */
+    private IntrospectedColumn getBatchVersionColumn(IntrospectedTable introspectedTable) {
+        if (!updateBatch || !PluginUtil.hasKeyType(introspectedTable)) {
+            return null;
+        }
+        IntrospectedColumn column = getVersionColumn(introspectedTable, this.columnList);
+        if (column == null || introspectedTable.getPrimaryKeyColumns().contains(column)) {
+            return null;
+        }
+        return column;
+    }
+
+    /**
+     * updateBatchByPrimaryKey で VALUES に渡すカラム(主キー、更新対象のカラム)
+     */
+    private List<IntrospectedColumn> getBatchColumns(IntrospectedTable introspectedTable) {
+        List<IntrospectedColumn> columns = new ArrayList<>(introspectedTable.getPrimaryKeyColumns());
+        columns.addAll(ListUtilities.removeGeneratedAlwaysColumns(introspectedTable.getNonPrimaryKeyColumns()));
+        return columns;
+    }
+
+    @Override
+    public boolean clientGenerated(Interface interfaze, IntrospectedTable introspectedTable) {
+
+        if (updateBatch && introspectedTable.hasPrimaryKeyColumns()) {
+            // 主キーの型がない場合は警告を出力する
+            PluginUtil.hasKeyType(introspectedTable, getClass().getSimpleName());
+        }
+        if (getBatchVersionColumn(introspectedTable) == null) {
+            return true;
+        }
+
+        // バインド変数の上限を超えない件数
+        int chunkSize = Math.max(1, Math.min(batchSize, maxParameters / getBatchColumns(introspectedTable).size()));
+
+        FullyQualifiedJavaType keyType = PluginUtil.getKeyType(introspectedTable);
+        FullyQualifiedJavaType parameterType = introspectedTable.getRules().calculateAllFieldsClass();
+        FullyQualifiedJavaType listType = FullyQualifiedJavaType.getNewListInstance();
+        listType.addTypeArgument(parameterType);
+        FullyQualifiedJavaType keyListType = FullyQualifiedJavaType.getNewListInstance();
+        keyListType.addTypeArgument(keyType);
+
+        // List<Key> updateBatchByPrimaryKeyChunk(@Param("rows") List<Model> rows);
+        Method chunkMethod = new Method("updateBatchByPrimaryKeyChunk");
+        chunkMethod.setReturnType(keyListType);
+        chunkMethod.setVisibility(JavaVisibility.PUBLIC);
+        chunkMethod.setAbstract(true);
+        Parameter rows = new Parameter(listType, "rows");
+        rows.addAnnotation("@Param(\"rows\")");
+        chunkMethod.addParameter(rows);
+        context.getCommentGenerator().addGeneralMethodComment(chunkMethod, introspectedTable);
+
+        // default List<Key> updateBatchByPrimaryKey(List<Model> rows) { chunkSize件ごとに updateBatchByPrimaryKeyChunk }
+        Method batchMethod = new Method("updateBatchByPrimaryKey");
+        batchMethod.setReturnType(keyListType);
+        batchMethod.setVisibility(JavaVisibility.PUBLIC);
+        batchMethod.setDefault(true);
+        batchMethod.addParameter(new Parameter(listType, "rows"));
+        batchMethod.addBodyLine(keyListType.getShortName() + " keys = new ArrayList<>(rows.size());");
+        batchMethod.addBodyLine("for (int i = 0; i < rows.size(); i += " + chunkSize + ") {");
+        batchMethod.addBodyLine("keys.addAll(updateBatchByPrimaryKeyChunk(rows.subList(i, Math.min(i + " + chunkSize + ", rows.size()))));");
+        batchMethod.addBodyLine("}");
+        batchMethod.addBodyLine("return keys;");
+        context.getCommentGenerator().addGeneralMethodComment(batchMethod, introspectedTable);
+
+        interfaze.addImportedType(keyType);
+        interfaze.addImportedType(parameterType);
+        interfaze.addImportedType(FullyQualifiedJavaType.getNewListInstance());
+        interfaze.addImportedType(FullyQualifiedJavaType.getNewArrayListInstance());
+        interfaze.addImportedType(new FullyQualifiedJavaType("org.apache.ibatis.annotations.Param"));
+        interfaze.addMethod(chunkMethod);
+        interfaze.addMethod(batchMethod);
+
+        return true;
+    }
+
+    @Override
+    public boolean sqlMapDocumentGenerated(Document document, IntrospectedTable introspectedTable) {
+
+        IntrospectedColumn versionColumn = getBatchVersionColumn(introspectedTable);
+        if (versionColumn == null) {
+            return true;
+        }
+
+        List<IntrospectedColumn> columns = getBatchColumns(introspectedTable);
+        String version = MyBatis3FormattingUtilities.getEscapedColumnName(versionColumn);
+
+        // XMLのタグ情報(RETURNINGで更新した主キーを返すため select で定義する)
+        XmlElement xmlElement = new XmlElement("select");
+        xmlElement.addAttribute(new Attribute("id", "updateBatchByPrimaryKeyChunk"));
+        xmlElement.addAttribute(new Attribute("parameterType", "map"));
+        xmlElement.addAttribute(new Attribute("resultType",
+                PluginUtil.getKeyType(introspectedTable).getFullyQualifiedName()));
+        xmlElement.addAttribute(new Attribute("flushCache", "true"));
+        context.getCommentGenerator().addComment(xmlElement);
+
+        xmlElement.addElement(new TextElement("update " + introspectedTable.getFullyQualifiedTableNameAtRuntime() + " as tgt"));
+
+        // set a = src.a, version = case when tgt.version = max then 1 else tgt.version + 1 end
+        xmlElement.addElement(new TextElement("set " + columns.stream()
+                .filter(c -> !introspectedTable.getPrimaryKeyColumns().contains(c))
+                .map(c -> {
+                    String name = MyBatis3FormattingUtilities.getEscapedColumnName(c);
+                    if (c == versionColumn) {
+                        return name + " = case when tgt." + name + " = " + maxVersionNum
+                                + " then 1 else tgt." + name + " + 1 end";
+                    }
+                    return name + " = src." + name;
+                })
+                .collect(Collectors.joining(", "))));
+
+        // from (values (#{row.a}::type, #{row.b}::type), (...)) as src (a, b)
+        // nullだけの列が text と推論されない様に、型をキャストする
+        xmlElement.addElement(new TextElement("from (values"));
+        XmlElement foreach = new XmlElement("foreach");
+        foreach.addAttribute(new Attribute("collection", "rows"));
+        foreach.addAttribute(new Attribute("item", "row"));
+        foreach.addAttribute(new Attribute("separator", ","));
+        foreach.addElement(new TextElement("(" + columns.stream()
+                .map(c -> MyBatis3FormattingUtilities.getParameterClause(c, "row.")
+                        + "::" + PluginUtil.getPostgresTypeName(c))
+                .collect(Collectors.joining(", ")) + ")"));
+        xmlElement.addElement(foreach);
+        xmlElement.addElement(new TextElement(") as src (" + columns.stream()
+                .map(MyBatis3FormattingUtilities::getEscapedColumnName)
+                .collect(Collectors.joining(", ")) + ")"));
+
+        // where tgt.pk = src.pk and tgt.version = src.version
+        List<IntrospectedColumn> whereColumns = new ArrayList<>(introspectedTable.getPrimaryKeyColumns());
+        whereColumns.add(versionColumn);
+        xmlElement.addElement(new TextElement("where " + whereColumns.stream()
+                .map(MyBatis3FormattingUtilities::getEscapedColumnName)
+                .map(c -> "tgt." + c + " = src." + c)
+                .collect(Collectors.joining(" and "))));
+        xmlElement.addElement(new TextElement(PluginUtil.getReturningPrimaryKeyClause(introspectedTable)));
+
+        // XMLに新規メソッド用のSQLを追加
+        document.getRootElement().getElements().add(xmlElement);
+
+        return true;
+    }
 //
 //    @Override
 //    public boolean sqlMapInsertElementGenerated(XmlElement element, IntrospectedTable introspectedTable) {
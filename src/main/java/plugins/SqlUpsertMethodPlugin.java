@@ -0,0 +1,287 @@
+package plugins;
+
+import org.mybatis.generator.api.IntrospectedColumn;
+import org.mybatis.generator.api.IntrospectedTable;
+import org.mybatis.generator.api.PluginAdapter;
+import org.mybatis.generator.api.dom.java.*;
+import org.mybatis.generator.api.dom.xml.*;
+import org.mybatis.generator.codegen.mybatis3.ListUtilities;
+import org.mybatis.generator.codegen.mybatis3.MyBatis3FormattingUtilities;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.StringTokenizer;
+import java.util.stream.Collectors;
+
+/**
+ * Upsertメソッドを追加する(Postgres9.5以上、INSERT ... ON CONFLICT)
+ * <p>
+ * MERGEが使えないPostgres14以前向け。主キーがあるテーブルのみ対象。
+ *
+ * <pre>
+ * {@code int upsert(Model row);}
+ * {@code int upsertBatchChunk(@Param("rows") List<Model> rows);}
+ * {@code default int upsertBatch(List<Model> rows);}
+ * {@code int insertIgnore(Model row);}
+ * {@code int insertIgnoreBatchChunk(@Param("rows") List<Model> rows);}
+ * {@code default int insertIgnoreBatch(List<Model> rows);}
+ * </pre>
+ * <pre>
+ * {@code
+ * insert into table as tgt (a, b, version) values (...)
+ * on conflict (a) do update set b = excluded.b,
+ *   version = case when tgt.version = 99999999 then 1 else tgt.version + 1 end
+ *
+ * insert into table as tgt (a, b, version) values (...)
+ * on conflict (a) do nothing
+ * }
+ * </pre>
+ * 同じ主キーが1回のSQLに複数含まれるとupsertBatchはエラーになるため、呼び出し側で重複を除くこと。
+ * <p>
+ * (プロパティ)
+ * versionColumns: 更新時に+1する更新番号のカラム名(SqlUpdateVersionPlusOnePluginと同じ指定、複数指定時は最初に見つかったもの)
+ * maxVersionNum: 更新番号の最大値(超えたら1に戻す、デフォルト 99999999)
+ * maxParameters: 1回のSQLのバインド変数の上限(SqlInsertBatchMethodPluginと同じ、デフォルト 32767 pgjdbcの上限)
+ * batchSize: upsertBatch、insertIgnoreBatchの1回のSQLで処理する件数(デフォルト 1000、バインド変数が maxParameters を超えない件数に制限する)
+ *
+ * @code <plugin type="plugins.SqlUpsertMethodPlugin">
+ * <property name="versionColumns" value="version"/>
+ * <property name="maxVersionNum" value="99999999"/>
+ * <property name="batchSize" value="1000"/>
+ * </plugin>
+ */
+public class SqlUpsertMethodPlugin extends PluginAdapter {
+
+    /**
+     * プロパティ名
+     */
+    private static final String PROPERTY_VERSION_COLUMNS = "versionColumns";
+    private static final String PROPERTY_MAX_VERSION_NUM = "maxVersionNum";
+    private static final String PROPERTY_MAX_PARAMETERS = "maxParameters";
+    private static final String PROPERTY_BATCH_SIZE = "batchSize";
+
+    private static final int DEFAULT_MAX_PARAMETERS = 32767;
+    private static final int DEFAULT_BATCH_SIZE = 1000;
+
+    /**
+     * バージョンカラムのリスト
+     */
+    private final List<String> columnList = new ArrayList<>();
+
+    private String maxVersionNum = "99999999";
+    private int maxParameters = DEFAULT_MAX_PARAMETERS;
+    private int batchSize = DEFAULT_BATCH_SIZE;
+
+    @Override
+    public boolean validate(List<String> warnings) {
+
+        String columns = properties.getProperty(PROPERTY_VERSION_COLUMNS);
+        if (columns != null) {
+            StringTokenizer st = new StringTokenizer(columns, ", ", false);
+            while (st.hasMoreTokens()) {
+                columnList.add(st.nextToken());
+            }
+        }
+
+        String num = properties.getProperty(PROPERTY_MAX_VERSION_NUM);
+        if (num != null) {
+            maxVersionNum = num;
+        }
+
+        String size = properties.getProperty(PROPERTY_BATCH_SIZE);
+        if (size != null) {
+            batchSize = Integer.parseInt(size.trim());
+        }
+        String max = properties.getProperty(PROPERTY_MAX_PARAMETERS);
+        if (max != null) {
+            maxParameters = Integer.parseInt(max.trim());
+        }
+        if (maxParameters <= 0 || batchSize <= 0) {
+            warnings.add("Property maxParameters and batchSize must be positive for plugin "
+                    + this.getClass().getSimpleName());
+            return false;
+        }
+
+        return true;
+    }
+
+    /**
+     * 指定されたカラムがテーブルに存在するか確認し、最初に見つかったものを返す。(主キーは対象外)
+     *
+     * @param introspectedTable introspectedTable
+     * @return バージョン管理用のカラム、存在しない場合はnull
+     */
+    private IntrospectedColumn findVersionColumn(IntrospectedTable introspectedTable) {
+        for (String colName : columnList) {
+            for (IntrospectedColumn col : introspectedTable.getNonPrimaryKeyColumns()) {
+                if (col.getActualColumnName().equals(colName)) {
+                    return col;
+                }
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public boolean clientGenerated(Interface interfaze, IntrospectedTable introspectedTable) {
+
+        // 主キーなしの場合、ON CONFLICTの対象が無いため処理しない
+        if (!introspectedTable.hasPrimaryKeyColumns()) {
+            return true;
+        }
+
+        FullyQualifiedJavaType parameterType = introspectedTable.getRules().calculateAllFieldsClass();
+        FullyQualifiedJavaType listType = FullyQualifiedJavaType.getNewListInstance();
+        listType.addTypeArgument(parameterType);
+
+        interfaze.addImportedType(parameterType);
+        interfaze.addImportedType(FullyQualifiedJavaType.getNewListInstance());
+        interfaze.addImportedType(new FullyQualifiedJavaType("org.apache.ibatis.annotations.Param"));
+
+        addMethods(interfaze, introspectedTable, "upsert", parameterType, listType);
+        addMethods(interfaze, introspectedTable, "insertIgnore", parameterType, listType);
+
+        return true;
+    }
+
+    /**
+     * 1件用、分割単位の複数件用、分割して呼び出すdefaultメソッドを追加する
+     */
+    private void addMethods(Interface interfaze, IntrospectedTable introspectedTable, String name,
+                            FullyQualifiedJavaType parameterType, FullyQualifiedJavaType listType) {
+
+        // int upsert(Model row);
+        Method method = new Method(name);
+        method.setReturnType(FullyQualifiedJavaType.getIntInstance());
+        method.setVisibility(JavaVisibility.PUBLIC);
+        method.setAbstract(true);
+        method.addParameter(new Parameter(parameterType, "row")); //$NON-NLS-1$
+        context.getCommentGenerator().addGeneralMethodComment(method, introspectedTable);
+        interfaze.addMethod(method);
+
+        // int upsertBatchChunk(@Param("rows") List<Model> rows);
+        Method chunkMethod = new Method(name + "BatchChunk");
+        chunkMethod.setReturnType(FullyQualifiedJavaType.getIntInstance());
+        chunkMethod.setVisibility(JavaVisibility.PUBLIC);
+        chunkMethod.setAbstract(true);
+        Parameter rows = new Parameter(listType, "rows");
+        rows.addAnnotation("@Param(\"rows\")");
+        chunkMethod.addParameter(rows);
+        context.getCommentGenerator().addGeneralMethodComment(chunkMethod, introspectedTable);
+        interfaze.addMethod(chunkMethod);
+
+        // バインド変数の上限を超えない件数(1行あたり登録するカラム数)
+        int columnCount = ListUtilities.removeIdentityAndGeneratedAlwaysColumns(introspectedTable.getAllColumns()).size();
+        int chunkSize = Math.max(1, Math.min(batchSize, maxParameters / columnCount));
+
+        // default int upsertBatch(List<Model> rows) { chunkSize件ごとに upsertBatchChunk }
+        Method batchMethod = new Method(name + "Batch");
+        batchMethod.setReturnType(FullyQualifiedJavaType.getIntInstance());
+        batchMethod.setVisibility(JavaVisibility.PUBLIC);
+        batchMethod.setDefault(true);
+        batchMethod.addParameter(new Parameter(listType, "rows"));
+        batchMethod.addBodyLine("int count = 0;");
+        batchMethod.addBodyLine("for (int i = 0; i < rows.size(); i += " + chunkSize + ") {");
+        batchMethod.addBodyLine("count += " + chunkMethod.getName()
+                + "(rows.subList(i, Math.min(i + " + chunkSize + ", rows.size())));");
+        batchMethod.addBodyLine("}");
+        batchMethod.addBodyLine("return count;");
+        context.getCommentGenerator().addGeneralMethodComment(batchMethod, introspectedTable);
+        interfaze.addMethod(batchMethod);
+    }
+
+    @Override
+    public boolean sqlMapDocumentGenerated(Document document, IntrospectedTable introspectedTable) {
+
+        if (!introspectedTable.hasPrimaryKeyColumns()) {
+            return true;
+        }
+
+        List<XmlElement> addElementList = new ArrayList<>();
+
+        addElementList.add(createElement(introspectedTable, "upsert", false, true));
+        addElementList.add(createElement(introspectedTable, "upsertBatchChunk", true, true));
+        addElementList.add(createElement(introspectedTable, "insertIgnore", false, false));
+        addElementList.add(createElement(introspectedTable, "insertIgnoreBatchChunk", true, false));
+
+        // XMLに新規メソッド用のSQLを追加
+        document.getRootElement().getElements().addAll(addElementList);
+
+        return true;
+    }
+
+    /**
+     * INSERT ... ON CONFLICT のSQLを作成
+     *
+     * @param introspectedTable introspectedTable
+     * @param id                SQLのID
+     * @param isBatch           true:複数件(foreach), false:1件
+     * @param isUpdate          true:do update, false:do nothing
+     * @return SQL
+     */
+    private XmlElement createElement(IntrospectedTable introspectedTable, String id, boolean isBatch, boolean isUpdate) {
+
+        List<IntrospectedColumn> insertColumns =
+                ListUtilities.removeIdentityAndGeneratedAlwaysColumns(introspectedTable.getAllColumns());
+
+        XmlElement xmlElement = new XmlElement("insert");
+        xmlElement.addAttribute(new Attribute("id", id));
+        xmlElement.addAttribute(new Attribute("parameterType",
+                isBatch ? "map" : introspectedTable.getRules().calculateAllFieldsClass().getFullyQualifiedName()));
+
+        context.getCommentGenerator().addComment(xmlElement);
+
+        xmlElement.addElement(new TextElement("insert into "
+                + introspectedTable.getFullyQualifiedTableNameAtRuntime() + " as tgt ("
+                + insertColumns.stream()
+                .map(MyBatis3FormattingUtilities::getEscapedColumnName)
+                .collect(Collectors.joining(", ")) + ")"));
+
+        String prefix = isBatch ? "row." : null;
+        String values = "(" + insertColumns.stream()
+                .map(c -> MyBatis3FormattingUtilities.getParameterClause(c, prefix))
+                .collect(Collectors.joining(", ")) + ")";
+
+        if (isBatch) {
+            xmlElement.addElement(new TextElement("values"));
+            XmlElement foreach = new XmlElement("foreach");
+            foreach.addAttribute(new Attribute("collection", "rows"));
+            foreach.addAttribute(new Attribute("item", "row"));
+            foreach.addAttribute(new Attribute("separator", ","));
+            foreach.addElement(new TextElement(values));
+            xmlElement.addElement(foreach);
+        } else {
+            xmlElement.addElement(new TextElement("values " + values));
+        }
+
+        String conflictTarget = introspectedTable.getPrimaryKeyColumns().stream()
+                .map(MyBatis3FormattingUtilities::getEscapedColumnName)
+                .collect(Collectors.joining(", "));
+
+        List<String> setClauses = new ArrayList<>();
+        if (isUpdate) {
+            IntrospectedColumn versionColumn = findVersionColumn(introspectedTable);
+            for (IntrospectedColumn column : ListUtilities.removeGeneratedAlwaysColumns(introspectedTable.getNonPrimaryKeyColumns())) {
+                String name = MyBatis3FormattingUtilities.getEscapedColumnName(column);
+                if (column == versionColumn) {
+                    // version = case when tgt.version = 99999999 then 1 else tgt.version + 1 end
+                    setClauses.add(name + " = case when tgt." + name + " = " + maxVersionNum
+                            + " then 1 else tgt." + name + " + 1 end");
+                } else {
+                    setClauses.add(name + " = excluded." + name);
+                }
+            }
+        }
+
+        if (setClauses.isEmpty()) {
+            xmlElement.addElement(new TextElement("on conflict (" + conflictTarget + ") do nothing"));
+        } else {
+            xmlElement.addElement(new TextElement("on conflict (" + conflictTarget + ") do update set"));
+            for (int i = 0; i < setClauses.size(); i++) {
+                xmlElement.addElement(new TextElement("  " + setClauses.get(i) + (i + 1 < setClauses.size() ? "," : "")));
+            }
+        }
+
+        return xmlElement;
+    }
+}